@@ -0,0 +1,156 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.index.change.ChangeIndexer;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reindexes changes whose combined check state was updated.
+ *
+ * <p>If a reindex delay is configured ({@code plugin.checks.reindexDelay}), changes are not
+ * reindexed right away. Instead the reindex is scheduled after the delay on the {@code
+ * ChecksChangeReindex} work queue and runs on the index executor of the change indexer. Further
+ * reindex requests for the same change that arrive while a reindex is pending are dropped, since
+ * the pending reindex reads the change when it runs and hence covers them. This avoids
+ * back-to-back reindexes of the same change while a CI system posts many checks in a short time.
+ *
+ * <p>If no delay is configured, changes are reindexed synchronously.
+ */
+@Singleton
+public class ChangeReindexScheduler implements LifecycleListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  @Singleton
+  static class Metrics {
+    // Pair of metric and manual counter, to work around the fact that metric classes have no
+    // getters.
+    private final Counter0 savedReindexes;
+    private final AtomicLong savedReindexCount = new AtomicLong();
+
+    @Inject
+    Metrics(MetricMaker metricMaker) {
+      savedReindexes =
+          metricMaker.newCounter(
+              "checks/change_reindexes_saved",
+              new Description(
+                      "Number of change reindexes that were saved because a reindex of the same"
+                          + " change was already pending")
+                  .setRate()
+                  .setUnit("reindexes"));
+    }
+
+    void recordSavedReindex() {
+      savedReindexes.increment();
+      savedReindexCount.incrementAndGet();
+    }
+
+    long getSavedReindexCount() {
+      return savedReindexCount.get();
+    }
+  }
+
+  private final ChangeIndexer changeIndexer;
+  private final Metrics metrics;
+  private final long delayMillis;
+  private final ScheduledExecutorService scheduler;
+  private final ConcurrentMap<Change.Id, Project.NameKey> pendingReindexes =
+      new ConcurrentHashMap<>();
+
+  @Inject
+  ChangeReindexScheduler(
+      ChangeIndexer changeIndexer,
+      Metrics metrics,
+      WorkQueue workQueue,
+      PluginConfigFactory pluginConfigFactory,
+      @PluginName String pluginName) {
+    this.changeIndexer = changeIndexer;
+    this.metrics = metrics;
+    this.delayMillis =
+        ConfigUtil.getTimeUnit(
+            pluginConfigFactory.getFromGerritConfig(pluginName).getString("reindexDelay"),
+            0,
+            MILLISECONDS);
+    this.scheduler = workQueue.createQueue(1, "ChecksChangeReindex");
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    scheduler.shutdownNow();
+    // Don't lose reindexes that were still waiting for their delay.
+    pendingReindexes.forEach(changeIndexer::indexAsync);
+    pendingReindexes.clear();
+  }
+
+  /**
+   * Reindexes a change, either right away or after the configured delay.
+   *
+   * @param project the project that contains the change
+   * @param changeId the ID of the change
+   */
+  public void reindex(Project.NameKey project, Change.Id changeId) {
+    if (delayMillis <= 0) {
+      changeIndexer.index(project, changeId);
+      return;
+    }
+
+    if (pendingReindexes.putIfAbsent(changeId, project) != null) {
+      metrics.recordSavedReindex();
+      return;
+    }
+    scheduler.schedule(() -> runReindex(changeId), delayMillis, MILLISECONDS);
+  }
+
+  private void runReindex(Change.Id changeId) {
+    // Remove the change before reindexing it, so that updates which happen while the reindex is
+    // running schedule another reindex.
+    Project.NameKey project = pendingReindexes.remove(changeId);
+    if (project == null) {
+      return;
+    }
+    try {
+      changeIndexer.indexAsync(project, changeId);
+    } catch (RuntimeException e) {
+      logger.atWarning().withCause(e).log("Cannot reindex change %s", changeId);
+    }
+  }
+
+  @VisibleForTesting
+  public long getSavedReindexCount() {
+    return metrics.getSavedReindexCount();
+  }
+}
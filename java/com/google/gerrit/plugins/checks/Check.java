@@ -37,8 +37,19 @@ public abstract class Check {
   /** State that this check is in. */
   public abstract CheckState state();
 
-  /** Short message explaining the check state. */
-  public abstract Optional<String> message();
+  /**
+   * Short message explaining the check state.
+   *
+   * <p>If the message is stored separately from the check, it's loaded on the first call.
+   *
+   * @throws com.google.gerrit.exceptions.StorageException if the message can't be loaded
+   */
+  public Optional<String> message() {
+    return messageSource().map(CheckMessage::get);
+  }
+
+  /** Source of the message, which may load the message lazily. */
+  public abstract Optional<CheckMessage> messageSource();
 
   /** Fully qualified URL to detailed result on the Checker's service. */
   public abstract Optional<String> url();
@@ -67,7 +78,11 @@ public abstract class Check {
 
     public abstract Builder setState(CheckState state);
 
-    public abstract Builder setMessage(String message);
+    public Builder setMessage(String message) {
+      return setMessageSource(CheckMessage.of(message));
+    }
+
+    public abstract Builder setMessageSource(CheckMessage messageSource);
 
     public abstract Builder setUrl(String url);
 
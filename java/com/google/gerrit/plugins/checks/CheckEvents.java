@@ -0,0 +1,169 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.gerrit.plugins.checks;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Publishes updates of checks to subscribers that are interested in the checks of a change.
+ *
+ * <p>Subscriptions are held in memory, i.e. only updates of checks that are done on this server are
+ * published to the subscribers on this server.
+ *
+ * <p>Publishing only enqueues the updated check, so that writers of checks don't pay for the
+ * subscribers. Formatting the check and checking whether the subscriber may still see the change
+ * is left to the subscriber. Each subscriber has a bounded queue of updates. If a subscriber
+ * doesn't consume its updates fast enough, the subscription is marked as overflowed and the
+ * subscriber is expected to close it and to reload all checks.
+ *
+ * <p>Every subscriber occupies a thread of the HTTP server for as long as it is subscribed.
+ * Subscriptions are hence disabled by default, and the configured maximum number of subscriptions
+ * is capped to half of {@code httpd.maxThreads}, so that streams can't starve other requests.
+ */
+@Singleton
+public class CheckEvents {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final int DEFAULT_MAX_SUBSCRIPTIONS = 0;
+  private static final int DEFAULT_HTTPD_MAX_THREADS = 25;
+  private static final int QUEUE_CAPACITY = 100;
+
+  private final int maxSubscriptions;
+  private final ConcurrentMap<Change.Id, Set<Subscription>> subscriptionsByChange =
+      new ConcurrentHashMap<>();
+  private final AtomicInteger subscriptionCount = new AtomicInteger();
+
+  @Inject
+  CheckEvents(
+      PluginConfigFactory pluginConfigFactory,
+      @PluginName String pluginName,
+      @GerritServerConfig Config cfg) {
+    int configuredMaxSubscriptions =
+        pluginConfigFactory
+            .getFromGerritConfig(pluginName)
+            .getInt("maxCheckEventStreams", DEFAULT_MAX_SUBSCRIPTIONS);
+    int maxThreads = cfg.getInt("httpd", null, "maxThreads", DEFAULT_HTTPD_MAX_THREADS);
+    this.maxSubscriptions = Math.min(configuredMaxSubscriptions, maxThreads / 2);
+    if (maxSubscriptions < configuredMaxSubscriptions) {
+      logger.atWarning().log(
+          "plugin.%s.maxCheckEventStreams = %d exceeds half of httpd.maxThreads = %d, using %d",
+          pluginName, configuredMaxSubscriptions, maxThreads, maxSubscriptions);
+    }
+  }
+
+  /**
+   * Subscribes to the updates of the checks of a change.
+   *
+   * @param changeId the ID of the change
+   * @return the subscription, {@link Optional#empty()} if the maximum number of subscriptions has
+   *     been reached
+   */
+  public Optional<Subscription> subscribe(Change.Id changeId) {
+    if (subscriptionCount.incrementAndGet() > maxSubscriptions) {
+      subscriptionCount.decrementAndGet();
+      return Optional.empty();
+    }
+    Subscription subscription = new Subscription(changeId);
+    subscriptionsByChange.compute(
+        changeId,
+        (id, subscriptions) -> {
+          if (subscriptions == null) {
+            subscriptions = ConcurrentHashMap.newKeySet();
+          }
+          subscriptions.add(subscription);
+          return subscriptions;
+        });
+    return Optional.of(subscription);
+  }
+
+  /**
+   * Publishes an updated check to all subscribers of its change.
+   *
+   * <p>This only enqueues the check for the subscribers and never blocks.
+   *
+   * @param check the created or updated check
+   */
+  public void publish(Check check) {
+    Set<Subscription> subscriptions =
+        subscriptionsByChange.get(check.key().patchSet().changeId());
+    if (subscriptions != null) {
+      subscriptions.forEach(s -> s.offer(check));
+    }
+  }
+
+  /** Subscription to the updates of the checks of a change. */
+  public class Subscription implements AutoCloseable {
+    private final Change.Id changeId;
+    private final BlockingQueue<Check> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private volatile boolean overflowed;
+
+    private Subscription(Change.Id changeId) {
+      this.changeId = changeId;
+    }
+
+    private void offer(Check check) {
+      if (!queue.offer(check)) {
+        overflowed = true;
+      }
+    }
+
+    /**
+     * Returns the next updated check, waiting up to the specified time for an update.
+     *
+     * @return the next updated check, {@code null} if no update was published in time
+     */
+    @Nullable
+    public Check poll(long timeout, TimeUnit unit) throws InterruptedException {
+      return queue.poll(timeout, unit);
+    }
+
+    /**
+     * Whether updates have been dropped because they were not consumed fast enough.
+     *
+     * <p>Once a subscription is overflowed the subscriber has missed updates and should reload all
+     * checks.
+     */
+    public boolean isOverflowed() {
+      return overflowed;
+    }
+
+    @Override
+    public void close() {
+      subscriptionsByChange.computeIfPresent(
+          changeId,
+          (id, subscriptions) -> {
+            if (subscriptions.remove(this)) {
+              subscriptionCount.decrementAndGet();
+            }
+            return subscriptions.isEmpty() ? null : subscriptions;
+          });
+    }
+  }
+}
@@ -14,15 +14,25 @@
 
 package com.google.gerrit.plugins.checks;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.plugins.checks.api.CheckInfo;
 import com.google.gerrit.plugins.checks.api.CheckSubmitImpactInfo;
+import com.google.gerrit.server.query.change.ChangeData;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.assistedinject.Assisted;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 
 /** Formats a {@link Check} as JSON. */
@@ -53,16 +63,80 @@ public class CheckJson {
 
   private final Checkers checkers;
   private final Checks checks;
+  private final ChangeData.Factory changeDataFactory;
   private final ImmutableSet<ListChecksOption> options;
 
   @Inject
-  CheckJson(Checkers checkers, Checks checks, @Assisted Iterable<ListChecksOption> options) {
+  CheckJson(
+      Checkers checkers,
+      Checks checks,
+      ChangeData.Factory changeDataFactory,
+      @Assisted Iterable<ListChecksOption> options) {
     this.checkers = checkers;
     this.checks = checks;
+    this.changeDataFactory = changeDataFactory;
     this.options = ImmutableSet.copyOf(options);
   }
 
   public CheckInfo format(Check check) throws IOException {
+    CheckInfo info = formatWithoutCheckerFields(check);
+    if (options.contains(ListChecksOption.CHECKER)) {
+      CheckerUuid checkerUuid = check.key().checkerUuid();
+      try {
+        Optional<Checker> checker = checkers.getChecker(checkerUuid);
+        if (checker.isPresent()) {
+          populateCheckerFields(checker.get(), info, changeData(check));
+        }
+      } catch (ConfigInvalidException e) {
+        logger.atWarning().withCause(e).log("skipping invalid checker %s", checkerUuid);
+      }
+    }
+    return info;
+  }
+
+  /**
+   * Formats multiple checks.
+   *
+   * <p>This is more efficient than formatting the checks one by one if the checker fields should be
+   * populated, since all checkers are loaded at once and the submit impact of all checkers on a
+   * change is computed against the same change data.
+   *
+   * @param checksToFormat the checks to format
+   * @return the formatted checks, in the same order as the given checks
+   * @throws IOException if the checkers couldn't be loaded
+   */
+  public ImmutableList<CheckInfo> format(List<Check> checksToFormat) throws IOException {
+    if (!options.contains(ListChecksOption.CHECKER)) {
+      return checksToFormat.stream()
+          .map(this::formatWithoutCheckerFields)
+          .collect(toImmutableList());
+    }
+
+    ImmutableMap<CheckerUuid, Checker> checkersByUuid =
+        checkers.getCheckers(
+            checksToFormat.stream().map(c -> c.key().checkerUuid()).collect(toImmutableSet()));
+    Map<Change.Id, ChangeData> changeDataById = new HashMap<>();
+    ImmutableList.Builder<CheckInfo> result =
+        ImmutableList.builderWithExpectedSize(checksToFormat.size());
+    for (Check check : checksToFormat) {
+      CheckInfo info = formatWithoutCheckerFields(check);
+      Checker checker = checkersByUuid.get(check.key().checkerUuid());
+      if (checker != null) {
+        ChangeData changeData =
+            changeDataById.computeIfAbsent(
+                check.key().patchSet().changeId(), changeId -> changeData(check));
+        populateCheckerFields(checker, info, changeData);
+      }
+      result.add(info);
+    }
+    return result.build();
+  }
+
+  private ChangeData changeData(Check check) {
+    return changeDataFactory.create(check.key().repository(), check.key().patchSet().changeId());
+  }
+
+  private CheckInfo formatWithoutCheckerFields(Check check) {
     CheckInfo info = new CheckInfo();
     info.checkerUuid = check.key().checkerUuid().get();
     info.changeNumber = check.key().patchSet().changeId().get();
@@ -77,31 +151,15 @@ public class CheckJson {
 
     info.created = check.created();
     info.updated = check.updated();
-
-    if (options.contains(ListChecksOption.CHECKER)) {
-      populateCheckerFields(check.key().checkerUuid(), info, check.key().patchSet().changeId());
-    }
     return info;
   }
 
-  private void populateCheckerFields(CheckerUuid checkerUuid, CheckInfo info, Change.Id changeId)
-      throws IOException {
-
-    try {
-      checkers
-          .getChecker(checkerUuid)
-          .ifPresent(
-              checker -> {
-                info.checkerName = checker.getName();
-                info.checkerStatus = checker.getStatus();
-                info.blocking = checker.getBlockingConditions();
-                info.submitImpact = new CheckSubmitImpactInfo();
-                info.submitImpact.required =
-                    checks.isRequiredForSubmit(checker, changeId) ? true : null;
-                info.checkerDescription = checker.getDescription().orElse(null);
-              });
-    } catch (ConfigInvalidException e) {
-      logger.atWarning().withCause(e).log("skipping invalid checker %s", checkerUuid);
-    }
+  private void populateCheckerFields(Checker checker, CheckInfo info, ChangeData changeData) {
+    info.checkerName = checker.getName();
+    info.checkerStatus = checker.getStatus();
+    info.blocking = checker.getBlockingConditions();
+    info.submitImpact = new CheckSubmitImpactInfo();
+    info.submitImpact.required = checks.isRequiredForSubmit(checker, changeData) ? true : null;
+    info.checkerDescription = checker.getDescription().orElse(null);
   }
 }
@@ -0,0 +1,48 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * Message of a check.
+ *
+ * <p>The message is either held in memory or, if the storage layer keeps it separately from the
+ * check, loaded from storage on first access. Implementations must implement {@code equals} and
+ * {@code hashCode} without loading the message.
+ */
+public abstract class CheckMessage {
+  /** Creates a message that is held in memory. */
+  public static CheckMessage of(String message) {
+    return new AutoValue_CheckMessage_InMemory(message);
+  }
+
+  /**
+   * Returns the message, loading it from storage if necessary.
+   *
+   * @throws com.google.gerrit.exceptions.StorageException if the message can't be loaded
+   */
+  public abstract String get();
+
+  @AutoValue
+  abstract static class InMemory extends CheckMessage {
+    abstract String message();
+
+    @Override
+    public String get() {
+      return message();
+    }
+  }
+}
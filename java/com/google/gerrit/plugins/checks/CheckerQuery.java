@@ -22,21 +22,31 @@ import static com.google.gerrit.index.query.QueryParser.FIELD_NAME;
 import static com.google.gerrit.index.query.QueryParser.NOT;
 import static com.google.gerrit.index.query.QueryParser.OR;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MINUTES;
 
+import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.Multimaps;
 import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.index.query.IndexPredicate;
 import com.google.gerrit.index.query.Predicate;
 import com.google.gerrit.index.query.QueryParseException;
 import com.google.gerrit.index.query.QueryParser;
 import com.google.gerrit.server.AnonymousUser;
+import com.google.gerrit.server.config.PluginConfigFactory;
 import com.google.gerrit.server.index.change.ChangeField;
 import com.google.gerrit.server.query.change.ChangeData;
 import com.google.gerrit.server.query.change.ChangePredicates;
@@ -47,6 +57,7 @@ import com.google.gerrit.server.update.RetryHelper;
 import com.google.gerrit.server.update.RetryableAction.ActionType;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
+import com.google.inject.Singleton;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -55,11 +66,15 @@ import org.antlr.runtime.tree.Tree;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 
 /**
- * Utility for validating and executing relevancy queries for checkers.
+ * Service for validating and executing relevancy queries for checkers.
  *
- * <p>Instances are not threadsafe and should not be reused across requests. However, they may be
- * reused within a single request.
+ * <p>This class is threadsafe. Checker queries don't depend on the calling user, hence the
+ * predicates that they are compiled to are cached by repository and query and shared by all
+ * requests (see {@code plugin.checks.checkerQueryCacheSize}). Only the execution of index queries
+ * depends on the calling user, since the results are filtered by visibility, so a new {@link
+ * ChangeQueryProcessor} is used for every index query.
  */
+@Singleton
 public class CheckerQuery {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
@@ -166,24 +181,76 @@ public class CheckerQuery {
     return node.getChild(0);
   }
 
+  /**
+   * Whether the predicate of a query depends on the time at which the query was compiled.
+   *
+   * <p>The {@code age} operator is compiled to a predicate with a fixed cut-off time, hence its
+   * predicate must not be reused.
+   */
+  private static boolean isTimeDependent(String query) {
+    try {
+      return usesOperator(QueryParser.parse(query), "age");
+    } catch (QueryParseException e) {
+      return true;
+    }
+  }
+
+  private static boolean usesOperator(Tree node, String operator) {
+    if (node.getType() == FIELD_NAME && node.getText().equals(operator)) {
+      return true;
+    }
+    for (int i = 0; i < node.getChildCount(); i++) {
+      if (usesOperator(node.getChild(i), operator)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @AutoValue
+  abstract static class CompiledQueryKey {
+    static CompiledQueryKey create(Project.NameKey repository, String query) {
+      return new AutoValue_CheckerQuery_CompiledQueryKey(repository, query);
+    }
+
+    abstract Project.NameKey repository();
+
+    abstract String query();
+  }
+
   private final RetryHelper retryHelper;
+  private final Provider<AnonymousUser> anonymousUserProvider;
+  private final Provider<ChangeQueryBuilder> queryBuilderProvider;
   private final Provider<ChangeQueryProcessor> changeQueryProcessorProvider;
-  private final ChangeQueryBuilder queryBuilder;
+  private final CheckerQueryMetrics metrics;
+  /**
+   * Compiled predicates of checker queries. An empty value marks a query whose predicate must not
+   * be reused, see {@link #isTimeDependent(String)}.
+   */
+  @Nullable private final Cache<CompiledQueryKey, Optional<Predicate<ChangeData>>> compiledQueries;
 
   @Inject
   CheckerQuery(
       RetryHelper retryHelper,
+      CheckerQueryMetrics metrics,
+      PluginConfigFactory pluginConfigFactory,
+      @PluginName String pluginName,
       Provider<AnonymousUser> anonymousUserProvider,
       Provider<ChangeQueryBuilder> queryBuilderProvider,
       Provider<ChangeQueryProcessor> changeQueryProcessorProvider) {
     this.retryHelper = retryHelper;
+    this.metrics = metrics;
+    this.anonymousUserProvider = anonymousUserProvider;
+    this.queryBuilderProvider = queryBuilderProvider;
     this.changeQueryProcessorProvider = changeQueryProcessorProvider;
-    // The user passed to the ChangeQueryBuilder just controls how it parses "self". Anonymous means
-    // "self" is disallowed, which is correct for checker queries, since the results should not
-    // depend on the calling user. However, note that results are still filtered by visibility, but
-    // visibility is controlled by ChangeQueryProcessor, which always uses the current user and
-    // can't be overridden.
-    this.queryBuilder = queryBuilderProvider.get().asUser(anonymousUserProvider.get());
+    int cacheSize =
+        pluginConfigFactory.getFromGerritConfig(pluginName).getInt("checkerQueryCacheSize", 1000);
+    // Entries expire so that accounts and groups which are referenced by name in a query are
+    // eventually resolved again.
+    this.compiledQueries =
+        cacheSize > 0
+            ? CacheBuilder.newBuilder().maximumSize(cacheSize).expireAfterWrite(10, MINUTES).build()
+            : null;
   }
 
   public boolean isCheckerRelevant(Checker checker, ChangeData cd) throws StorageException {
@@ -201,7 +268,12 @@ public class CheckerQuery {
       return false;
     }
 
-    return predicate.asMatchable().match(cd);
+    long start = System.nanoTime();
+    try {
+      return predicate.asMatchable().match(cd);
+    } finally {
+      metrics.recordRelevance(checker, System.nanoTime() - start);
+    }
   }
 
   /**
@@ -236,22 +308,71 @@ public class CheckerQuery {
     return query;
   }
 
+  /**
+   * Returns the changes that match the queries of the given checkers.
+   *
+   * <p>Checkers that have the same repository and the same query match the same changes. Hence the
+   * checkers are grouped by repository and query, and a single index query is executed per group,
+   * the result of which is shared by the checkers of the group. This matters for schemes that have
+   * many checkers with the same query in the same repository. Since the index query of a group is
+   * exactly the query of its checkers, the result for each checker is the same as if the checker
+   * was queried on its own, including the limit of the query.
+   *
+   * @param checkers the checkers, all from the same scheme.
+   * @return the matching changes, one list per checker in the order of the given checkers.
+   *     Checkers of the same group get the same list instance.
+   * @throws ConfigInvalidException if the query of any of the checkers is invalid.
+   */
   public ImmutableList<ImmutableList<ChangeData>> queryMatchingChanges(List<Checker> checkers)
       throws ConfigInvalidException {
+    if (checkers.isEmpty()) {
+      return ImmutableList.of();
+    }
+
+    ListMultimap<CompiledQueryKey, Integer> checkerIndicesByQuery =
+        MultimapBuilder.linkedHashKeys().arrayListValues().build();
+    for (int i = 0; i < checkers.size(); i++) {
+      Checker checker = checkers.get(i);
+      checkerIndicesByQuery.put(
+          CompiledQueryKey.create(checker.getRepository(), checker.getQuery().orElse("")), i);
+    }
 
+    List<List<Checker>> checkerGroups = new ArrayList<>();
+    List<Predicate<ChangeData>> groupPredicates = new ArrayList<>();
+    for (List<Integer> checkerIndices : Multimaps.asMap(checkerIndicesByQuery).values()) {
+      checkerGroups.add(Lists.transform(checkerIndices, checkers::get));
+      Checker checker = checkers.get(checkerIndices.get(0));
+      groupPredicates.add(
+          createQueryPredicate(checker.getUuid(), checker.getRepository(), checker.getQuery()));
+    }
+
+    ImmutableList<ImmutableList<ChangeData>> groupResults;
+    long start = System.nanoTime();
     try {
-      List<Predicate<ChangeData>> predicateList = new ArrayList<>();
-      for (Checker checker : checkers) {
-        predicateList.add(
-            createQueryPredicate(checker.getUuid(), checker.getRepository(), checker.getQuery()));
-      }
-      return executeIndexQueryWithRetry("queryMatchingChangesForCheckers", qp -> {}, predicateList);
+      groupResults =
+          executeIndexQueryWithRetry("queryMatchingChangesForCheckers", qp -> {}, groupPredicates);
     } catch (QueryParseException e) {
       throw new ConfigInvalidException(
           String.format(
               "A checker in scheme %s has an invalid query (%s)",
               checkers.get(0).getUuid().scheme(), e.getMessage()));
+    } finally {
+      metrics.recordIndexQuery(
+          checkers.get(0).getUuid().scheme(), checkerGroups, System.nanoTime() - start);
     }
+
+    List<ImmutableList<ChangeData>> results = new ArrayList<>(checkers.size());
+    for (int i = 0; i < checkers.size(); i++) {
+      results.add(null);
+    }
+    int groupIndex = 0;
+    for (List<Integer> checkerIndices : Multimaps.asMap(checkerIndicesByQuery).values()) {
+      ImmutableList<ChangeData> groupResult = groupResults.get(groupIndex++);
+      for (int checkerIndex : checkerIndices) {
+        results.set(checkerIndex, groupResult);
+      }
+    }
+    return ImmutableList.copyOf(results);
   }
 
   public ImmutableList<ChangeData> queryMatchingChanges(Checker checker)
@@ -266,23 +387,59 @@ public class CheckerQuery {
       Optional<String> optionalQuery,
       Consumer<ChangeQueryProcessor> queryProcessorSetup)
       throws ConfigInvalidException, StorageException {
+    Predicate<ChangeData> predicate = createQueryPredicate(checkerUuid, repository, optionalQuery);
+    long start = System.nanoTime();
     try {
       return executeIndexQueryWithRetry(
-          "queryMatchingChangesForChecker",
-          queryProcessorSetup,
-          createQueryPredicate(checkerUuid, repository, optionalQuery));
+          "queryMatchingChangesForChecker", queryProcessorSetup, predicate);
     } catch (QueryParseException e) {
       throw invalidQueryException(checkerUuid, optionalQuery, e);
+    } finally {
+      metrics.recordIndexQuery(checkerUuid, optionalQuery, System.nanoTime() - start);
     }
   }
 
   private Predicate<ChangeData> createQueryPredicate(
       CheckerUuid checkerUuid, Project.NameKey repository, Optional<String> optionalQuery)
       throws ConfigInvalidException {
+    if (compiledQueries == null || !optionalQuery.isPresent()) {
+      return compileQueryPredicate(checkerUuid, repository, optionalQuery);
+    }
+
+    // Concurrent requests that miss the cache may compile the same query more than once, which is
+    // harmless since the compiled predicates are equivalent.
+    CompiledQueryKey key = CompiledQueryKey.create(repository, optionalQuery.get());
+    Optional<Predicate<ChangeData>> cachedPredicate = compiledQueries.getIfPresent(key);
+    if (cachedPredicate != null && cachedPredicate.isPresent()) {
+      return cachedPredicate.get();
+    }
+
+    Predicate<ChangeData> predicate = compileQueryPredicate(checkerUuid, repository, optionalQuery);
+    if (cachedPredicate == null) {
+      // Whether the query is time dependent is decided once, an empty value marks the query as not
+      // cacheable so that it isn't parsed again to find out.
+      compiledQueries.put(
+          key, isTimeDependent(optionalQuery.get()) ? Optional.empty() : Optional.of(predicate));
+    }
+    return predicate;
+  }
+
+  private Predicate<ChangeData> compileQueryPredicate(
+      CheckerUuid checkerUuid, Project.NameKey repository, Optional<String> optionalQuery)
+      throws ConfigInvalidException {
     Predicate<ChangeData> predicate = ChangePredicates.project(Project.nameKey(repository.get()));
 
     if (optionalQuery.isPresent()) {
       String query = optionalQuery.get();
+      metrics.recordCompilation();
+      // ChangeQueryBuilder is not threadsafe, hence a new one is used for every compilation. The
+      // user passed to the ChangeQueryBuilder just controls how it parses "self". Anonymous means
+      // "self" is disallowed, which is correct for checker queries, since the results should not
+      // depend on the calling user. However, note that results are still filtered by visibility,
+      // but visibility is controlled by ChangeQueryProcessor, which always uses the current user
+      // and can't be overridden.
+      ChangeQueryBuilder queryBuilder =
+          queryBuilderProvider.get().asUser(anonymousUserProvider.get());
       Predicate<ChangeData> predicateForQuery;
       try {
         predicateForQuery = queryBuilder.parse(query);
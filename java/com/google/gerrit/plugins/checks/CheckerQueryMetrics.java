@@ -0,0 +1,203 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.stream.Collectors.joining;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.AtomicLongMap;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer2;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.logging.PluginMetadata;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of the evaluation of checker queries.
+ *
+ * <p>Evaluations that take longer than {@code plugin.checks.slowCheckerQueryThreshold} are logged
+ * together with the checker and its query, so that checkers with expensive queries can be found.
+ */
+@Singleton
+public class CheckerQueryMetrics {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /**
+   * Value of the {@code checker_uuid} field for index queries that match the queries of multiple
+   * checkers of a scheme at once.
+   */
+  static final String ALL_CHECKERS = "all";
+
+  // Pairs of metric and manual counters, to work around the fact that metric classes have no
+  // getters.
+  private final Timer2<String, String> relevanceLatency;
+  private final AtomicLongMap<String> relevanceCount;
+  private final Timer2<String, String> indexQueryLatency;
+  private final AtomicLongMap<String> indexQueryCount;
+  private final Counter0 compilations;
+  private final AtomicLong compilationCount;
+  private final long slowQueryThresholdNanos;
+
+  @Inject
+  CheckerQueryMetrics(
+      @PluginName String pluginName,
+      MetricMaker metricMaker,
+      PluginConfigFactory pluginConfigFactory) {
+    relevanceLatency =
+        metricMaker.newTimer(
+            "checks/checker_relevance_latency",
+            new Description(
+                    "Latency for evaluating whether a checker is relevant for a change in memory")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS),
+            checkerUuidField(pluginName),
+            schemeField(pluginName));
+    relevanceCount = AtomicLongMap.create();
+    indexQueryLatency =
+        metricMaker.newTimer(
+            "checks/checker_index_query_latency",
+            new Description("Latency for querying the changes that match the query of a checker")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS),
+            checkerUuidField(pluginName),
+            schemeField(pluginName));
+    indexQueryCount = AtomicLongMap.create();
+    compilations =
+        metricMaker.newCounter(
+            "checks/checker_query_compilations",
+            new Description("Number of checker queries that were compiled into predicates")
+                .setRate()
+                .setUnit("queries"));
+    compilationCount = new AtomicLong();
+    slowQueryThresholdNanos =
+        ConfigUtil.getTimeUnit(
+            pluginConfigFactory
+                .getFromGerritConfig(pluginName)
+                .getString("slowCheckerQueryThreshold"),
+            0,
+            NANOSECONDS);
+  }
+
+  private static Field<String> checkerUuidField(String pluginName) {
+    return Field.ofString(
+            "checker_uuid",
+            (metadataBuilder, fieldValue) ->
+                metadataBuilder
+                    .pluginName(pluginName)
+                    .addPluginMetadata(PluginMetadata.create("checkerUuid", fieldValue)))
+        .description(
+            "UUID of the checker whose query was evaluated, \"" + ALL_CHECKERS + "\" if the"
+                + " queries of multiple checkers were evaluated at once")
+        .build();
+  }
+
+  private static Field<String> schemeField(String pluginName) {
+    return Field.ofString(
+            "scheme",
+            (metadataBuilder, fieldValue) ->
+                metadataBuilder
+                    .pluginName(pluginName)
+                    .addPluginMetadata(PluginMetadata.create("scheme", fieldValue)))
+        .description("scheme of the checker whose query was evaluated")
+        .build();
+  }
+
+  void recordRelevance(Checker checker, long nanos) {
+    relevanceLatency.record(
+        checker.getUuid().get(), checker.getUuid().scheme(), nanos, NANOSECONDS);
+    relevanceCount.incrementAndGet(checker.getUuid().get());
+    if (isSlow(nanos)) {
+      logger.atWarning().log(
+          "slow checker query: evaluating the query of checker %s in memory took %d ms: %s",
+          checker.getUuid(), NANOSECONDS.toMillis(nanos), checker.getQuery().orElse(""));
+    }
+  }
+
+  void recordIndexQuery(CheckerUuid checkerUuid, Optional<String> query, long nanos) {
+    indexQueryLatency.record(checkerUuid.get(), checkerUuid.scheme(), nanos, NANOSECONDS);
+    indexQueryCount.incrementAndGet(checkerUuid.get());
+    if (isSlow(nanos)) {
+      logger.atWarning().log(
+          "slow checker query: querying the changes of checker %s took %d ms: %s",
+          checkerUuid, NANOSECONDS.toMillis(nanos), query.orElse(""));
+    }
+  }
+
+  /**
+   * Records an index query that matched the queries of multiple checkers of a scheme at once.
+   *
+   * <p>The queries of all groups are executed together, so their latency can't be attributed to a
+   * single group. Hence, if the index query is slow, each group is logged with the UUIDs of its
+   * checkers and its query.
+   *
+   * @param scheme the scheme of the checkers
+   * @param checkerGroups the checkers grouped by repository and query, one index query per group
+   * @param nanos the latency of the index query
+   */
+  void recordIndexQuery(String scheme, List<List<Checker>> checkerGroups, long nanos) {
+    indexQueryLatency.record(ALL_CHECKERS, scheme, nanos, NANOSECONDS);
+    indexQueryCount.incrementAndGet(ALL_CHECKERS);
+    if (isSlow(nanos)) {
+      for (List<Checker> checkerGroup : checkerGroups) {
+        Checker checker = checkerGroup.get(0);
+        logger.atWarning().log(
+            "slow checker query: querying the changes of %d queries of scheme %s took %d ms,"
+                + " including the query of checkers %s in %s: %s",
+            checkerGroups.size(),
+            scheme,
+            NANOSECONDS.toMillis(nanos),
+            checkerGroup.stream().map(c -> c.getUuid().get()).collect(joining(", ")),
+            checker.getRepository(),
+            checker.getQuery().orElse(""));
+      }
+    }
+  }
+
+  void recordCompilation() {
+    compilations.increment();
+    compilationCount.incrementAndGet();
+  }
+
+  private boolean isSlow(long nanos) {
+    return slowQueryThresholdNanos > 0 && nanos >= slowQueryThresholdNanos;
+  }
+
+  @VisibleForTesting
+  public long getRelevanceCount(CheckerUuid checkerUuid) {
+    return relevanceCount.get(checkerUuid.get());
+  }
+
+  @VisibleForTesting
+  public long getIndexQueryCount(CheckerUuid checkerUuid) {
+    return indexQueryCount.get(checkerUuid.get());
+  }
+
+  @VisibleForTesting
+  public long getCompilationCount() {
+    return compilationCount.get();
+  }
+}
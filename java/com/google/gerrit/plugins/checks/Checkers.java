@@ -15,9 +15,11 @@
 package com.google.gerrit.plugins.checks;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.gerrit.entities.Project;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Optional;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 
@@ -62,6 +64,20 @@ public interface Checkers {
     return getChecker(checkerUuid.get());
   }
 
+  /**
+   * Returns the checkers for the given UUIDs.
+   *
+   * <p>This is more efficient than looking up the checkers one by one since the storage is only
+   * accessed once. Checkers that don't exist or that have an invalid configuration are silently
+   * ignored.
+   *
+   * @param checkerUuids the checker UUIDs
+   * @return the existing checkers by UUID
+   * @throws IOException if the checkers couldn't be retrieved from the storage
+   */
+  ImmutableMap<CheckerUuid, Checker> getCheckers(Collection<CheckerUuid> checkerUuids)
+      throws IOException;
+
   /**
    * Returns a list with all checkers.
    *
@@ -94,4 +110,14 @@ public interface Checkers {
    *     from the storage
    */
   ImmutableSortedSet<Checker> checkersOf(Project.NameKey repositoryName) throws IOException;
+
+  /**
+   * Computes an ETag for the checkers.
+   *
+   * <p>The ETag changes whenever any checker is created, updated or deleted.
+   *
+   * @return ETag for the checkers
+   * @throws IOException if failed to access the checkers data
+   */
+  String getETag() throws IOException;
 }
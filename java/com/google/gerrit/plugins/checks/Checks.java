@@ -16,12 +16,15 @@ package com.google.gerrit.plugins.checks;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.PatchSet;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.exceptions.StorageException;
 import com.google.gerrit.plugins.checks.api.CombinedCheckState;
+import com.google.gerrit.server.query.change.ChangeData;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -49,6 +52,24 @@ public interface Checks {
       Project.NameKey projectName, PatchSet.Id patchSetId, GetCheckOptions options)
       throws StorageException, IOException;
 
+  /**
+   * Returns the {@link Check}s for multiple patch sets of the same project.
+   *
+   * <p>This is more efficient than looking up the checks for each patch set separately, since
+   * data that is shared between the patch sets, such as the checkers of the project, is only
+   * loaded once.
+   *
+   * @param projectName the name of the project
+   * @param patchSetIds the IDs of the patch sets
+   * @param options options for getting checks.
+   * @return the checks by patch set ID, patch sets without checks are omitted
+   * @throws StorageException if the checks couldn't be retrieved from the storage
+   * @throws IOException if the checks couldn't be retrieved from the storage
+   */
+  ImmutableListMultimap<PatchSet.Id, Check> getChecks(
+      Project.NameKey projectName, Collection<PatchSet.Id> patchSetIds, GetCheckOptions options)
+      throws StorageException, IOException;
+
   /**
    * Returns a {@link Optional} holding a single check. {@code Optional.empty()} if the check does
    * not exist.
@@ -63,6 +84,27 @@ public interface Checks {
   Optional<Check> getCheck(CheckKey checkKey, GetCheckOptions options)
       throws StorageException, IOException;
 
+  /**
+   * Returns the states of the checks of the given patch set.
+   *
+   * <p>The returned checks only have the key, the state and the timestamps of creation and last
+   * update populated. This is sufficient to evaluate check queries (see {@link
+   * com.google.gerrit.plugins.checks.index.CheckQueryBuilder}) and is cheaper than {@link
+   * #getChecks(Project.NameKey, PatchSet.Id, GetCheckOptions)}, since the check notes only need to
+   * be parsed if the check states of the current checks ref are not cached yet. The checks ref is
+   * read on every call.
+   *
+   * <p>Checks are never backfilled.
+   *
+   * @param projectName the name of the project
+   * @param patchSet the patch set
+   * @return the checks of the patch set
+   * @throws IOException if the checks couldn't be retrieved from the storage
+   * @throws StorageException if the checks couldn't be retrieved from the storage
+   */
+  ImmutableList<Check> getCheckStates(Project.NameKey projectName, PatchSet patchSet)
+      throws IOException, StorageException;
+
   /**
    * Returns the combined check state of a given patch set.
    *
@@ -124,6 +166,18 @@ public interface Checks {
    */
   boolean isRequiredForSubmit(Checker checker, Change.Id changeId);
 
+  /**
+   * Returns whether the checker is required for submission for this change.
+   *
+   * <p>Callers that need to evaluate multiple checkers against the same change should use this
+   * method with a shared {@link ChangeData} instance so that the change data is only loaded once.
+   *
+   * @param checker The checker that is being checked whether it's required for submission.
+   * @param changeData The change which submission requirement is in question.
+   * @return True if the checker is required for submit, false otherwise.
+   */
+  boolean isRequiredForSubmit(Checker checker, ChangeData changeData);
+
   @AutoValue
   abstract class GetCheckOptions {
     public static GetCheckOptions defaults() {
@@ -14,31 +14,20 @@
 
 package com.google.gerrit.plugins.checks;
 
-import com.google.common.collect.ImmutableMap;
-import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Change;
-import com.google.gerrit.entities.PatchSet;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.exceptions.DuplicateKeyException;
 import com.google.gerrit.extensions.api.changes.NotifyHandling;
 import com.google.gerrit.extensions.api.changes.NotifyInfo;
 import com.google.gerrit.extensions.api.changes.RecipientType;
 import com.google.gerrit.extensions.restapi.BadRequestException;
-import com.google.gerrit.plugins.checks.Checks.GetCheckOptions;
 import com.google.gerrit.plugins.checks.api.CombinedCheckState;
-import com.google.gerrit.plugins.checks.email.CombinedCheckStateUpdatedChangeEmailDecorator;
+import com.google.gerrit.plugins.checks.email.CombinedCheckStateUpdatedEmailSender;
 import com.google.gerrit.server.IdentifiedUser;
-import com.google.gerrit.server.PatchSetUtil;
 import com.google.gerrit.server.ServerInitiated;
 import com.google.gerrit.server.UserInitiated;
 import com.google.gerrit.server.change.NotifyResolver;
-import com.google.gerrit.server.index.change.ChangeIndexer;
-import com.google.gerrit.server.mail.EmailFactories;
-import com.google.gerrit.server.mail.send.ChangeEmail;
-import com.google.gerrit.server.mail.send.MessageIdGenerator;
-import com.google.gerrit.server.mail.send.OutgoingEmail;
-import com.google.gerrit.server.notedb.ChangeNotes;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import java.io.IOException;
@@ -55,8 +44,6 @@ import org.eclipse.jgit.errors.ConfigInvalidException;
  * used storage layer (e.g. sending email notifications).
  */
 public class ChecksUpdate {
-  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
-
   interface Factory {
     ChecksUpdate create(IdentifiedUser currentUser);
 
@@ -65,40 +52,28 @@ public class ChecksUpdate {
 
   private final ChecksStorageUpdate checksStorageUpdate;
   private final CombinedCheckStateCache combinedCheckStateCache;
-  private final EmailFactories emailFactories;
-  private final ChangeNotes.Factory notesFactory;
-  private final PatchSetUtil psUtil;
-  private final Checks checks;
-  private final Checkers checkers;
   private final NotifyResolver notifyResolver;
-  private final MessageIdGenerator messageIdGenerator;
+  private final CombinedCheckStateUpdatedEmailSender emailSender;
 
-  private final ChangeIndexer changeIndexer;
+  private final ChangeReindexScheduler changeReindexScheduler;
+  private final CheckEvents checkEvents;
   private final Optional<IdentifiedUser> currentUser;
 
   @AssistedInject
   ChecksUpdate(
       @UserInitiated ChecksStorageUpdate checksStorageUpdate,
       CombinedCheckStateCache combinedCheckStateCache,
-      EmailFactories emailFactories,
-      ChangeNotes.Factory notesFactory,
-      PatchSetUtil psUtil,
-      Checks checks,
-      Checkers checkers,
       NotifyResolver notifyResolver,
-      MessageIdGenerator messageIdGenerator,
-      ChangeIndexer changeIndexer,
+      CombinedCheckStateUpdatedEmailSender emailSender,
+      ChangeReindexScheduler changeReindexScheduler,
+      CheckEvents checkEvents,
       @Assisted IdentifiedUser currentUser) {
     this.checksStorageUpdate = checksStorageUpdate;
     this.combinedCheckStateCache = combinedCheckStateCache;
-    this.emailFactories = emailFactories;
-    this.notesFactory = notesFactory;
-    this.psUtil = psUtil;
-    this.checks = checks;
-    this.checkers = checkers;
     this.notifyResolver = notifyResolver;
-    this.messageIdGenerator = messageIdGenerator;
-    this.changeIndexer = changeIndexer;
+    this.emailSender = emailSender;
+    this.changeReindexScheduler = changeReindexScheduler;
+    this.checkEvents = checkEvents;
     this.currentUser = Optional.of(currentUser);
   }
 
@@ -106,24 +81,16 @@ public class ChecksUpdate {
   ChecksUpdate(
       @ServerInitiated ChecksStorageUpdate checksStorageUpdate,
       CombinedCheckStateCache combinedCheckStateCache,
-      EmailFactories emailFactories,
-      ChangeNotes.Factory notesFactory,
-      PatchSetUtil psUtil,
-      Checks checks,
-      Checkers checkers,
       NotifyResolver notifyResolver,
-      MessageIdGenerator messageIdGenerator,
-      ChangeIndexer changeIndexer) {
+      CombinedCheckStateUpdatedEmailSender emailSender,
+      ChangeReindexScheduler changeReindexScheduler,
+      CheckEvents checkEvents) {
     this.checksStorageUpdate = checksStorageUpdate;
     this.combinedCheckStateCache = combinedCheckStateCache;
-    this.emailFactories = emailFactories;
-    this.notesFactory = notesFactory;
-    this.psUtil = psUtil;
-    this.checks = checks;
-    this.checkers = checkers;
     this.notifyResolver = notifyResolver;
-    this.messageIdGenerator = messageIdGenerator;
-    this.changeIndexer = changeIndexer;
+    this.emailSender = emailSender;
+    this.changeReindexScheduler = changeReindexScheduler;
+    this.checkEvents = checkEvents;
     this.currentUser = Optional.empty();
   }
 
@@ -142,6 +109,7 @@ public class ChecksUpdate {
         combinedCheckStateCache.get(key.repository(), key.patchSet());
     maybeIndexChange(
         oldCombinedCheckState, newCombinedCheckState, key.repository(), key.patchSet().changeId());
+    checkEvents.publish(check);
     maybeSendEmail(
         notifyHandling, notifyDetails, check, oldCombinedCheckState, newCombinedCheckState);
 
@@ -163,6 +131,7 @@ public class ChecksUpdate {
         combinedCheckStateCache.get(key.repository(), key.patchSet());
     maybeIndexChange(
         oldCombinedCheckState, newCombinedCheckState, key.repository(), key.patchSet().changeId());
+    checkEvents.publish(check);
     maybeSendEmail(
         notifyHandling, notifyDetails, check, oldCombinedCheckState, newCombinedCheckState);
 
@@ -175,7 +144,7 @@ public class ChecksUpdate {
       Project.NameKey project,
       Change.Id changeId) {
     if (oldState != newState) {
-      changeIndexer.index(project, changeId);
+      changeReindexScheduler.reindex(project, changeId);
     }
   }
 
@@ -191,14 +160,6 @@ public class ChecksUpdate {
       return;
     }
 
-    CheckKey checkKey = updatedCheck.key();
-    ChangeNotes changeNotes =
-        notesFactory.create(checkKey.repository(), checkKey.patchSet().changeId());
-    if (!checkKey.patchSet().equals(changeNotes.getCurrentPatchSet().id())) {
-      // do not send an email for non-current patch sets
-      return;
-    }
-
     notifyHandling =
         notifyHandling != null
             ? notifyHandling
@@ -208,58 +169,13 @@ public class ChecksUpdate {
                 : NotifyHandling.OWNER;
     NotifyResolver.Result notify = notifyResolver.resolve(notifyHandling, notifyDetails);
 
-    try {
-      CombinedCheckStateUpdatedChangeEmailDecorator checksEmailDecorator =
-          new CombinedCheckStateUpdatedChangeEmailDecorator();
-      checksEmailDecorator.setCombinedCheckState(oldCombinedCheckState, newCombinedCheckState);
-      checksEmailDecorator.setCheck(
-          checkers
-              .getChecker(checkKey.checkerUuid())
-              .orElseThrow(
-                  () ->
-                      new IllegalStateException(
-                          String.format(
-                              "checker %s of check %s not found",
-                              checkKey.checkerUuid(), checkKey))),
-          updatedCheck);
-      checksEmailDecorator.setChecksByChecker(getAllChecksByChecker(checkKey));
-      ChangeEmail changeEmail =
-          emailFactories.createChangeEmail(
-              checkKey.repository(), checkKey.patchSet().changeId(), checksEmailDecorator);
-      PatchSet patchSet = psUtil.get(changeNotes, checkKey.patchSet());
-      changeEmail.setPatchSet(patchSet);
-      OutgoingEmail outgoingEmail =
-          emailFactories.createOutgoingEmail("combinedCheckStateUpdate", changeEmail);
-      if (currentUser.isPresent()) {
-        outgoingEmail.setFrom(currentUser.get().getAccountId());
-      }
-      outgoingEmail.setNotify(notify);
-      outgoingEmail.setMessageId(
-          messageIdGenerator.fromChangeUpdate(checkKey.repository(), checkKey.patchSet()));
-      outgoingEmail.send();
-    } catch (Exception e) {
-      logger.atSevere().withCause(e).log(
-          "Cannot email update for change %s", checkKey.patchSet().changeId());
-    }
-  }
-
-  private ImmutableMap<Checker, Check> getAllChecksByChecker(CheckKey checkKey)
-      throws IllegalStateException, IOException, ConfigInvalidException {
-    ImmutableMap.Builder<Checker, Check> checksByChecker = ImmutableMap.builder();
-    for (Check check :
-        checks.getChecks(
-            checkKey.repository(), checkKey.patchSet(), GetCheckOptions.withBackfilling())) {
-      Checker checker =
-          checkers
-              .getChecker(check.key().checkerUuid())
-              .orElseThrow(
-                  () ->
-                      new IllegalStateException(
-                          String.format(
-                              "checker %s of check %s not found",
-                              checkKey.checkerUuid(), check.key())));
-      checksByChecker.put(checker, check);
-    }
-    return checksByChecker.build();
+    // Rendering and sending the email is done in the background, everything that describes this
+    // update is captured here.
+    emailSender.sendAsync(
+        updatedCheck,
+        oldCombinedCheckState,
+        newCombinedCheckState,
+        notify,
+        currentUser.map(IdentifiedUser::getAccountId));
   }
 }
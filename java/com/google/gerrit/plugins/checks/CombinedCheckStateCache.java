@@ -51,7 +51,8 @@ import java.util.concurrent.ExecutionException;
  * Cache of {@link CombinedCheckState} per change.
  *
  * <p>In the absence of plugin-defined index fields, this cache is used to performantly populate the
- * {@code combinedState} field in {@code ChangeCheckInfo} in the query path.
+ * {@code combinedState} field in {@code ChangeCheckInfo} in the query path, and to match the
+ * {@code combinedstate_checks} change query operator.
  */
 @Singleton
 public class CombinedCheckStateCache {
@@ -17,6 +17,8 @@ package com.google.gerrit.plugins.checks;
 import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.extensions.webui.JavaScriptPlugin;
 import com.google.gerrit.extensions.webui.WebUiPlugin;
+import com.google.gerrit.plugins.checks.api.BulkChecksRestApiServlet;
+import com.google.gerrit.plugins.checks.api.CheckEventsServlet;
 import com.google.gerrit.plugins.checks.api.CheckersRestApiServlet;
 import com.google.gerrit.plugins.checks.api.PendingChecksRestApiServlet;
 import com.google.inject.servlet.ServletModule;
@@ -27,6 +29,8 @@ public class HttpModule extends ServletModule {
   protected void configureServlets() {
     serveRegex("^/checkers/(.*)$").with(CheckersRestApiServlet.class);
     serveRegex("^/checks.pending/(.*)$").with(PendingChecksRestApiServlet.class);
+    serveRegex("^/checks.bulk/(.*)$").with(BulkChecksRestApiServlet.class);
+    serveRegex("^/checks.events/(.*)$").with(CheckEventsServlet.class);
 
     DynamicSet.bind(binder(), WebUiPlugin.class).toInstance(new JavaScriptPlugin("checks.js"));
   }
@@ -20,12 +20,15 @@ import com.google.gerrit.extensions.annotations.Exports;
 import com.google.gerrit.extensions.config.CapabilityDefinition;
 import com.google.gerrit.extensions.config.FactoryModule;
 import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.lifecycle.LifecycleModule;
 import com.google.gerrit.plugins.checks.api.ApiModule;
 import com.google.gerrit.plugins.checks.api.ChangeCheckAttributeFactory;
 import com.google.gerrit.plugins.checks.api.ChangeCheckAttributeFactory.GetChangeOptions;
 import com.google.gerrit.plugins.checks.api.ChangeCheckAttributeFactory.QueryChangesOptions;
 import com.google.gerrit.plugins.checks.db.NoteDbCheckersModule;
 import com.google.gerrit.plugins.checks.email.ChecksEmailModule;
+import com.google.gerrit.plugins.checks.index.CheckerStateOperator;
+import com.google.gerrit.plugins.checks.index.CombinedCheckStateOperator;
 import com.google.gerrit.plugins.checks.rules.ChecksSubmitRule;
 import com.google.gerrit.server.DynamicOptions;
 import com.google.gerrit.server.IdentifiedUser;
@@ -35,6 +38,7 @@ import com.google.gerrit.server.change.ChangePluginDefinedInfoFactory;
 import com.google.gerrit.server.git.validators.CommitValidationListener;
 import com.google.gerrit.server.git.validators.MergeValidationListener;
 import com.google.gerrit.server.git.validators.RefOperationValidationListener;
+import com.google.gerrit.server.query.change.ChangeQueryBuilder.ChangeOperatorFactory;
 import com.google.gerrit.server.restapi.change.GetChange;
 import com.google.gerrit.server.restapi.change.QueryChanges;
 import com.google.gerrit.sshd.commands.Query;
@@ -47,6 +51,13 @@ public class Module extends FactoryModule {
     factory(ChecksUpdate.Factory.class);
     install(new NoteDbCheckersModule());
     install(CombinedCheckStateCache.module());
+    install(
+        new LifecycleModule() {
+          @Override
+          protected void configure() {
+            listener().to(ChangeReindexScheduler.class);
+          }
+        });
 
     bind(CapabilityDefinition.class)
         .annotatedWith(Exports.named(AdministrateCheckersCapability.NAME))
@@ -74,6 +85,16 @@ public class Module extends FactoryModule {
         .annotatedWith(Exports.named(Query.class))
         .to(QueryChangesOptions.class);
 
+    bind(ChangeOperatorFactory.class)
+        .annotatedWith(Exports.named(CombinedCheckStateOperator.NAME))
+        .to(CombinedCheckStateOperator.class);
+    bind(ChangeOperatorFactory.class)
+        .annotatedWith(Exports.named(CheckerStateOperator.Pending.NAME))
+        .to(CheckerStateOperator.Pending.class);
+    bind(ChangeOperatorFactory.class)
+        .annotatedWith(Exports.named(CheckerStateOperator.Failed.NAME))
+        .to(CheckerStateOperator.Failed.class);
+
     install(new ApiModule());
     install(new ChecksSubmitRule.Module());
     install(new ChecksEmailModule());
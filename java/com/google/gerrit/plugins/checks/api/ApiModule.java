@@ -14,10 +14,12 @@
 
 package com.google.gerrit.plugins.checks.api;
 
+import static com.google.gerrit.plugins.checks.api.BulkCheckResource.BULK_CHECK_KIND;
 import static com.google.gerrit.plugins.checks.api.CheckResource.CHECK_KIND;
 import static com.google.gerrit.plugins.checks.api.CheckerResource.CHECKER_KIND;
 import static com.google.gerrit.plugins.checks.api.PendingCheckResource.PENDING_CHECK_KIND;
 import static com.google.gerrit.server.change.RevisionResource.REVISION_KIND;
+import static com.google.gerrit.server.project.ProjectResource.PROJECT_KIND;
 
 import com.google.gerrit.extensions.config.FactoryModule;
 import com.google.gerrit.extensions.registration.DynamicMap;
@@ -36,6 +38,8 @@ public class ApiModule extends AbstractModule {
     bind(PendingChecksCollection.class);
     bind(PendingChecks.class).to(PendingChecksImpl.class);
 
+    bind(BulkChecksCollection.class);
+
     install(
         new RestApiModule() {
           @Override
@@ -52,6 +56,11 @@ public class ApiModule extends AbstractModule {
             post(CHECK_KIND).to(UpdateCheck.class);
             post(CHECK_KIND, "rerun").to(RerunCheck.class);
             DynamicMap.mapOf(binder(), PENDING_CHECK_KIND);
+
+            DynamicMap.mapOf(binder(), BULK_CHECK_KIND);
+            postOnCollection(BULK_CHECK_KIND).to(ListChecksInBulk.class);
+
+            get(PROJECT_KIND, "storage").to(GetChecksStorage.class);
           }
         });
 
@@ -0,0 +1,42 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.gerrit.plugins.checks.api;
+
+import com.google.common.base.MoreObjects;
+import java.util.List;
+import java.util.Objects;
+
+public class BulkChecksInput {
+  /** Patch sets for which the checks should be returned. */
+  public List<CheckablePatchSetInfo> patchSets;
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof BulkChecksInput)) {
+      return false;
+    }
+    BulkChecksInput other = (BulkChecksInput) o;
+    return Objects.equals(other.patchSets, patchSets);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(patchSets);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this).add("patchSets", patchSets).toString();
+  }
+}
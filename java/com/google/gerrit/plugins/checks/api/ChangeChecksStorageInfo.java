@@ -0,0 +1,29 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.gerrit.plugins.checks.api;
+
+/** REST API representation of the storage of the checks of a change. */
+public class ChangeChecksStorageInfo {
+  /** Change number. */
+  public int changeNumber;
+
+  /** Number of commits in the checks ref of the change. */
+  public int commitCount;
+
+  /** Size in bytes of the notes at the tip of the checks ref of the change. */
+  public long noteBytes;
+
+  /** Number of patch sets of the change. */
+  public int patchSetCount;
+}
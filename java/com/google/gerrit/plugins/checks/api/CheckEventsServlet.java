@@ -0,0 +1,183 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.gerrit.plugins.checks.api;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.primitives.Ints;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.json.OutputFormat;
+import com.google.gerrit.plugins.checks.Check;
+import com.google.gerrit.plugins.checks.CheckEvents;
+import com.google.gerrit.plugins.checks.CheckJson;
+import com.google.gerrit.plugins.checks.ListChecksOption;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.gerrit.server.permissions.ChangePermission;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gerrit.server.project.NoSuchChangeException;
+import com.google.gson.Gson;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Optional;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Streams updates of the checks of a change as server-sent events.
+ *
+ * <p>Each update is sent as a {@code check} event whose data is the {@link CheckInfo} of the
+ * updated check, including the checker fields. The check is formatted on the thread of the stream,
+ * and the visibility of the change is checked again before every update, so that a stream stops
+ * delivering updates as soon as the user can no longer see the change.
+ *
+ * <p>A stream is held open for a limited time after which the client is expected to reconnect.
+ * While a stream is open it occupies a request thread, hence streams are disabled by default and
+ * the number of concurrently open streams is limited (see {@link CheckEvents}).
+ */
+@Singleton
+public class CheckEventsServlet extends HttpServlet {
+  private static final long serialVersionUID = 1L;
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String PATH_PREFIX = "/checks.events/";
+  private static final long HEARTBEAT_INTERVAL_SECONDS = 15;
+
+  private final CheckEvents checkEvents;
+  private final CheckJson.Factory checkJsonFactory;
+  private final ChangeNotes.Factory changeNotesFactory;
+  private final PermissionBackend permissionBackend;
+  private final long streamTimeoutMillis;
+  private final Gson gson = OutputFormat.JSON_COMPACT.newGson();
+
+  @Inject
+  CheckEventsServlet(
+      CheckEvents checkEvents,
+      CheckJson.Factory checkJsonFactory,
+      ChangeNotes.Factory changeNotesFactory,
+      PermissionBackend permissionBackend,
+      PluginConfigFactory pluginConfigFactory,
+      @PluginName String pluginName) {
+    this.checkEvents = checkEvents;
+    this.checkJsonFactory = checkJsonFactory;
+    this.changeNotesFactory = changeNotesFactory;
+    this.permissionBackend = permissionBackend;
+    this.streamTimeoutMillis =
+        ConfigUtil.getTimeUnit(
+            pluginConfigFactory
+                .getFromGerritConfig(pluginName)
+                .getString("checkEventStreamTimeout"),
+            MILLISECONDS.convert(5, MINUTES),
+            MILLISECONDS);
+  }
+
+  @Override
+  protected void doGet(HttpServletRequest req, HttpServletResponse rsp) throws IOException {
+    Optional<Change.Id> changeId = parseChangeId(req.getRequestURI());
+    if (!changeId.isPresent()) {
+      rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    try {
+      if (!isVisible(changeId.get())) {
+        rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+        return;
+      }
+    } catch (PermissionBackendException e) {
+      logger.atSevere().withCause(e).log("Cannot check visibility of change %s", changeId.get());
+      rsp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      return;
+    }
+
+    Optional<CheckEvents.Subscription> subscription = checkEvents.subscribe(changeId.get());
+    if (!subscription.isPresent()) {
+      // Clients fall back to polling.
+      rsp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return;
+    }
+
+    rsp.setContentType("text/event-stream");
+    rsp.setCharacterEncoding(UTF_8.name());
+    rsp.setHeader("Cache-Control", "no-cache");
+    rsp.setHeader("X-Accel-Buffering", "no");
+    try (CheckEvents.Subscription s = subscription.get()) {
+      stream(changeId.get(), s, rsp.getWriter());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (PermissionBackendException e) {
+      logger.atSevere().withCause(e).log("Cannot check visibility of change %s", changeId.get());
+    }
+  }
+
+  private void stream(Change.Id changeId, CheckEvents.Subscription subscription, PrintWriter w)
+      throws InterruptedException, PermissionBackendException {
+    CheckJson checkJson = checkJsonFactory.create(ImmutableSet.of(ListChecksOption.CHECKER));
+    w.write(": connected\n\n");
+    long deadline = System.nanoTime() + MILLISECONDS.toNanos(streamTimeoutMillis);
+    // checkError() flushes the writer and detects clients that have disconnected.
+    while (!w.checkError() && System.nanoTime() < deadline && !subscription.isOverflowed()) {
+      Check check = subscription.poll(HEARTBEAT_INTERVAL_SECONDS, SECONDS);
+      if (check == null) {
+        w.write(": heartbeat\n\n");
+        continue;
+      }
+      // The user may have lost access to the change since the stream was opened.
+      if (!isVisible(changeId)) {
+        break;
+      }
+      CheckInfo checkInfo;
+      try {
+        checkInfo = checkJson.format(check);
+      } catch (IOException | StorageException e) {
+        logger.atWarning().withCause(e).log("Cannot stream update of check %s", check.key());
+        continue;
+      }
+      w.write("event: check\ndata: ");
+      w.write(gson.toJson(checkInfo));
+      w.write("\n\n");
+    }
+    w.flush();
+  }
+
+  private boolean isVisible(Change.Id changeId) throws PermissionBackendException {
+    ChangeNotes notes;
+    try {
+      notes = changeNotesFactory.createCheckedUsingIndexLookup(changeId);
+    } catch (NoSuchChangeException e) {
+      return false;
+    }
+    return permissionBackend.currentUser().change(notes).test(ChangePermission.READ);
+  }
+
+  private static Optional<Change.Id> parseChangeId(String requestUri) {
+    int i = requestUri.lastIndexOf(PATH_PREFIX);
+    if (i < 0) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(Ints.tryParse(requestUri.substring(i + PATH_PREFIX.length())))
+        .map(Change::id);
+  }
+}
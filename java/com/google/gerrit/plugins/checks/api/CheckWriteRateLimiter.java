@@ -0,0 +1,184 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.api;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.metrics.Counter2;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.plugins.checks.CheckerUuid;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.logging.PluginMetadata;
+import com.google.gerrit.server.quota.QuotaException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Limits the rate at which checks are written.
+ *
+ * <p>Each checker and each checker scheme has its own token bucket. A bucket holds up to {@code
+ * burst} tokens and is refilled at {@code rate} tokens per minute. Each write of a check takes one
+ * token from the bucket of its checker and one token from the bucket of the scheme of its checker.
+ * If either bucket is empty, the write is rejected with {@code 429 Too Many Requests}.
+ *
+ * <p>The limits are configured by {@code plugin.checks.checkerRateLimit}, {@code
+ * plugin.checks.checkerRateLimitBurst}, {@code plugin.checks.schemeRateLimit} and {@code
+ * plugin.checks.schemeRateLimitBurst}. If no rate is configured, writes are not limited.
+ *
+ * <p>Buckets are held in memory, i.e. the limits apply per server.
+ */
+@Singleton
+class CheckWriteRateLimiter {
+  @Singleton
+  static class Metrics {
+    private final Counter2<String, String> throttledCount;
+
+    @Inject
+    Metrics(@PluginName String pluginName, MetricMaker metricMaker) {
+      throttledCount =
+          metricMaker.newCounter(
+              "checks/check_writes_throttled",
+              new Description("Number of check writes that were rejected by the rate limit")
+                  .setRate()
+                  .setUnit("writes"),
+              Field.ofString(
+                      "checker_uuid",
+                      (metadataBuilder, fieldValue) ->
+                          metadataBuilder
+                              .pluginName(pluginName)
+                              .addPluginMetadata(PluginMetadata.create("checkerUuid", fieldValue)))
+                  .description("UUID of the checker whose check was written")
+                  .build(),
+              Field.ofString(
+                      "limit",
+                      (metadataBuilder, fieldValue) ->
+                          metadataBuilder
+                              .pluginName(pluginName)
+                              .addPluginMetadata(PluginMetadata.create("limit", fieldValue)))
+                  .description("whether the checker or the scheme limit was exceeded")
+                  .build());
+    }
+
+    void recordThrottled(CheckerUuid checkerUuid, String limit) {
+      throttledCount.increment(checkerUuid.get(), limit);
+    }
+  }
+
+  /** Bucket of tokens that is refilled at a constant rate. */
+  private static class TokenBucket {
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefillNanos;
+
+    TokenBucket(int ratePerMinute, int burst) {
+      this.capacity = burst;
+      this.tokensPerNano = (double) ratePerMinute / MINUTES.toNanos(1);
+      this.tokens = burst;
+      this.lastRefillNanos = System.nanoTime();
+    }
+
+    synchronized boolean tryAcquire() {
+      long now = System.nanoTime();
+      tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+      lastRefillNanos = now;
+      if (tokens < 1) {
+        return false;
+      }
+      tokens--;
+      return true;
+    }
+
+    synchronized void release() {
+      tokens = Math.min(capacity, tokens + 1);
+    }
+  }
+
+  private final Metrics metrics;
+  private final int checkerRate;
+  private final int checkerBurst;
+  private final int schemeRate;
+  private final int schemeBurst;
+  private final Cache<String, TokenBucket> checkerBuckets;
+  private final Cache<String, TokenBucket> schemeBuckets;
+
+  @Inject
+  CheckWriteRateLimiter(
+      Metrics metrics, PluginConfigFactory pluginConfigFactory, @PluginName String pluginName) {
+    this.metrics = metrics;
+    PluginConfig config = pluginConfigFactory.getFromGerritConfig(pluginName);
+    this.checkerRate = config.getInt("checkerRateLimit", 0);
+    this.checkerBurst = Math.max(config.getInt("checkerRateLimitBurst", checkerRate), 1);
+    this.schemeRate = config.getInt("schemeRateLimit", 0);
+    this.schemeBurst = Math.max(config.getInt("schemeRateLimitBurst", schemeRate), 1);
+    this.checkerBuckets = newBucketCache(checkerRate, checkerBurst);
+    this.schemeBuckets = newBucketCache(schemeRate, schemeBurst);
+  }
+
+  private static Cache<String, TokenBucket> newBucketCache(int rate, int burst) {
+    // An idle bucket is full again after burst / rate minutes, hence it can be dropped then.
+    long refillNanos = rate > 0 ? MINUTES.toNanos(burst) / rate : 0;
+    return CacheBuilder.newBuilder().expireAfterAccess(refillNanos, NANOSECONDS).build();
+  }
+
+  /**
+   * Takes a token for writing a check of the given checker.
+   *
+   * @param checkerUuid the UUID of the checker whose check is written
+   * @throws QuotaException if the rate limit of the checker or of its scheme is exceeded
+   */
+  void acquire(CheckerUuid checkerUuid) throws QuotaException {
+    TokenBucket checkerBucket = null;
+    if (checkerRate > 0) {
+      checkerBucket = getBucket(checkerBuckets, checkerUuid.get(), checkerRate, checkerBurst);
+      if (!checkerBucket.tryAcquire()) {
+        metrics.recordThrottled(checkerUuid, "checker");
+        throw new QuotaException(
+            String.format("rate limit for checker %s exceeded, retry later", checkerUuid));
+      }
+    }
+
+    if (schemeRate > 0
+        && !getBucket(schemeBuckets, checkerUuid.scheme(), schemeRate, schemeBurst)
+            .tryAcquire()) {
+      if (checkerBucket != null) {
+        // The write is rejected, hence it shouldn't count against the limit of the checker.
+        checkerBucket.release();
+      }
+      metrics.recordThrottled(checkerUuid, "scheme");
+      throw new QuotaException(
+          String.format(
+              "rate limit for checker scheme %s exceeded, retry later", checkerUuid.scheme()));
+    }
+  }
+
+  private static TokenBucket getBucket(
+      Cache<String, TokenBucket> buckets, String key, int rate, int burst) {
+    try {
+      return buckets.get(key, () -> new TokenBucket(rate, burst));
+    } catch (ExecutionException e) {
+      // Creating a bucket can't fail.
+      throw new IllegalStateException(e);
+    }
+  }
+}
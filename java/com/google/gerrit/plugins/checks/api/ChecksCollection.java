@@ -32,6 +32,7 @@ import com.google.gerrit.plugins.checks.Checks.GetCheckOptions;
 import com.google.gerrit.server.change.RevisionResource;
 import com.google.gerrit.server.permissions.PermissionBackendException;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import java.io.IOException;
 import java.util.Optional;
@@ -40,11 +41,11 @@ import java.util.Optional;
 public class ChecksCollection implements ChildCollection<RevisionResource, CheckResource> {
   private final Checks checks;
   private final DynamicMap<RestView<CheckResource>> views;
-  private final ListChecks listChecks;
+  private final Provider<ListChecks> listChecks;
 
   @Inject
   ChecksCollection(
-      Checks checks, DynamicMap<RestView<CheckResource>> views, ListChecks listChecks) {
+      Checks checks, DynamicMap<RestView<CheckResource>> views, Provider<ListChecks> listChecks) {
     this.checks = checks;
     this.views = views;
     this.listChecks = listChecks;
@@ -52,7 +53,7 @@ public class ChecksCollection implements ChildCollection<RevisionResource, Check
 
   @Override
   public RestReadView<RevisionResource> list() throws RestApiException {
-    return listChecks;
+    return listChecks.get();
   }
 
   @Override
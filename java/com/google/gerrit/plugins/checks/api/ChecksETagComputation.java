@@ -0,0 +1,72 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.api;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.plugins.checks.Checkers;
+import com.google.gerrit.plugins.checks.Checks;
+import com.google.gerrit.plugins.checks.ListChecksOption;
+import com.google.gerrit.server.change.RevisionResource;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Computes the ETag for the checks of a revision.
+ *
+ * <p>The ETag covers all inputs of the check JSON: the checks ref of the change, the change meta
+ * ref (which affects the relevance of checkers and hence backfilling and submit impact) and the
+ * checkers. Computing it only requires reading refs, so that unmodified checks can be detected
+ * without loading check notes, checkers or change data.
+ *
+ * <p>Inputs of checker queries that live outside of the change and the checkers, such as group
+ * memberships or the label definitions of the project, are not covered. Hashing them would require
+ * evaluating the queries, which is what the ETag is meant to avoid. If only these inputs change,
+ * the ETag stays the same and clients may keep a stale backfilled check or submit impact until the
+ * checks, the change or a checker is modified.
+ */
+@Singleton
+class ChecksETagComputation {
+  private final Checks checks;
+  private final Checkers checkers;
+
+  @Inject
+  ChecksETagComputation(Checks checks, Checkers checkers) {
+    this.checks = checks;
+    this.checkers = checkers;
+  }
+
+  String compute(RevisionResource rsrc, Set<ListChecksOption> options) {
+    try {
+      Hasher h = Hashing.murmur3_128().newHasher();
+      h.putString(checks.getETag(rsrc.getProject(), rsrc.getChange().getId()), UTF_8);
+      h.putString(rsrc.getNotes().getMetaId().name(), UTF_8);
+      h.putInt(rsrc.getPatchSet().id().get());
+      h.putString(checkers.getETag(), UTF_8);
+      for (ListChecksOption option : ImmutableSortedSet.copyOf(options)) {
+        h.putString(option.name(), UTF_8);
+      }
+      return h.hash().toString();
+    } catch (IOException e) {
+      throw new StorageException("failed to compute ETag for checks", e);
+    }
+  }
+}
@@ -0,0 +1,255 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.gerrit.plugins.checks.api;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.Comparator.comparing;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.plugins.checks.CheckerRef;
+import com.google.gerrit.plugins.checks.Checkers;
+import com.google.gerrit.server.config.AllProjectsName;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.util.time.TimeUtil;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.function.ToLongFunction;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.notes.Note;
+import org.eclipse.jgit.notes.NoteMap;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Computes diagnostics about the storage of checks in a project.
+ *
+ * <p>The change refs of the project are scanned once. Refs of the same change are adjacent when
+ * the refs are sorted by name, hence the scan only needs to keep the data of a single change and
+ * the top changes in memory, no matter how many changes the project has.
+ *
+ * <p>Computing the diagnostics walks the history of each checks ref, hence results are cached for
+ * {@code plugin.checks.storageDiagnosticsCacheTtl}.
+ */
+@Singleton
+class ChecksStorageDiagnostics {
+  @AutoValue
+  abstract static class Key {
+    static Key create(Project.NameKey project, int limit) {
+      return new AutoValue_ChecksStorageDiagnostics_Key(project, limit);
+    }
+
+    abstract Project.NameKey project();
+
+    abstract int limit();
+  }
+
+  /** Keeps the {@code limit} largest changes according to a comparator. */
+  private static class TopChanges {
+    private final int limit;
+    private final Comparator<ChangeChecksStorageInfo> comparator;
+    private final PriorityQueue<ChangeChecksStorageInfo> queue;
+
+    TopChanges(int limit, ToLongFunction<ChangeChecksStorageInfo> key) {
+      this.limit = limit;
+      // Among changes with the same value, newer changes are preferred.
+      this.comparator =
+          Comparator.<ChangeChecksStorageInfo>comparingLong(key)
+              .thenComparingInt(c -> c.changeNumber);
+      this.queue = new PriorityQueue<>(limit + 1, comparator);
+    }
+
+    void offer(ChangeChecksStorageInfo change) {
+      queue.add(change);
+      if (queue.size() > limit) {
+        queue.poll();
+      }
+    }
+
+    List<ChangeChecksStorageInfo> toList() {
+      return queue.stream().sorted(comparator.reversed()).collect(toImmutableList());
+    }
+  }
+
+  private final GitRepositoryManager repoManager;
+  private final AllProjectsName allProjectsName;
+  private final Checkers checkers;
+  private final Cache<Key, ChecksStorageInfo> cache;
+
+  @Inject
+  ChecksStorageDiagnostics(
+      GitRepositoryManager repoManager,
+      AllProjectsName allProjectsName,
+      Checkers checkers,
+      PluginConfigFactory pluginConfigFactory,
+      @PluginName String pluginName) {
+    this.repoManager = repoManager;
+    this.allProjectsName = allProjectsName;
+    this.checkers = checkers;
+    long ttlMillis =
+        ConfigUtil.getTimeUnit(
+            pluginConfigFactory
+                .getFromGerritConfig(pluginName)
+                .getString("storageDiagnosticsCacheTtl"),
+            MINUTES.toMillis(5),
+            MILLISECONDS);
+    this.cache =
+        CacheBuilder.newBuilder()
+            .expireAfterWrite(Math.max(ttlMillis, 0), MILLISECONDS)
+            .maximumSize(1000)
+            .build();
+  }
+
+  /**
+   * Returns the diagnostics of a project, computing them if they are not cached.
+   *
+   * @param project the project
+   * @param limit maximum number of changes in each of the lists of top changes
+   * @return the diagnostics
+   * @throws IOException if the refs of the project can't be read
+   */
+  ChecksStorageInfo get(Project.NameKey project, int limit) throws IOException {
+    try {
+      return cache.get(Key.create(project, limit), () -> compute(project, limit));
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new StorageException(e.getCause());
+    }
+  }
+
+  private ChecksStorageInfo compute(Project.NameKey project, int limit) throws IOException {
+    ChecksStorageInfo info = new ChecksStorageInfo();
+    info.computed = TimeUtil.nowTs();
+    info.checkers = checkers.checkersOf(project).size();
+
+    TopChanges byCommitCount = new TopChanges(limit, c -> c.commitCount);
+    TopChanges byNoteBytes = new TopChanges(limit, c -> c.noteBytes);
+    TopChanges byPatchSetCount = new TopChanges(limit, c -> c.patchSetCount);
+    ImmutableList<TopChanges> topChanges =
+        ImmutableList.of(byCommitCount, byNoteBytes, byPatchSetCount);
+    try (Repository repo = repoManager.openRepository(project);
+        ObjectReader reader = repo.newObjectReader()) {
+      List<Ref> refs =
+          new ArrayList<>(repo.getRefDatabase().getRefsByPrefix(RefNames.REFS_CHANGES));
+      refs.sort(comparing(Ref::getName));
+
+      String currentChangePrefix = null;
+      ChangeChecksStorageInfo currentChange = null;
+      ObjectId currentChecksRefId = null;
+      for (Ref ref : refs) {
+        String changePrefix = ref.getName().substring(0, ref.getName().lastIndexOf('/'));
+        if (!changePrefix.equals(currentChangePrefix)) {
+          if (currentChecksRefId != null) {
+            addChange(reader, currentChange, currentChecksRefId, info, topChanges);
+          }
+          currentChangePrefix = changePrefix;
+          currentChange = newChange(changePrefix);
+          currentChecksRefId = null;
+        }
+        if (currentChange == null) {
+          continue;
+        }
+        if (ref.getName().endsWith(CheckerRef.CHECKS_SUFFIX)) {
+          currentChecksRefId = ref.getObjectId();
+        } else if (PatchSet.Id.fromRef(ref.getName()) != null) {
+          currentChange.patchSetCount++;
+        }
+      }
+      if (currentChecksRefId != null) {
+        addChange(reader, currentChange, currentChecksRefId, info, topChanges);
+      }
+    }
+    info.topChangesByCommitCount = byCommitCount.toList();
+    info.topChangesByNoteBytes = byNoteBytes.toList();
+    info.topChangesByPatchSetCount = byPatchSetCount.toList();
+
+    try (Repository allProjects = repoManager.openRepository(allProjectsName);
+        RevWalk rw = new RevWalk(allProjects)) {
+      Ref checkersRef = allProjects.exactRef(CheckerRef.REFS_META_CHECKERS);
+      if (checkersRef != null) {
+        info.checkersNoteBytes = noteBytes(rw, checkersRef.getObjectId());
+      }
+    }
+    return info;
+  }
+
+  private static ChangeChecksStorageInfo newChange(String changePrefix) {
+    ChangeChecksStorageInfo change = new ChangeChecksStorageInfo();
+    try {
+      change.changeNumber =
+          Integer.parseInt(changePrefix.substring(changePrefix.lastIndexOf('/') + 1));
+    } catch (NumberFormatException e) {
+      // Not a ref of a change, e.g. refs/changes/foo.
+      return null;
+    }
+    return change;
+  }
+
+  private static void addChange(
+      ObjectReader reader,
+      ChangeChecksStorageInfo change,
+      ObjectId checksRefId,
+      ChecksStorageInfo info,
+      ImmutableList<TopChanges> topChanges)
+      throws IOException {
+    // Use a new RevWalk per change, since a RevWalk keeps all objects it has parsed until it's
+    // closed. The object reader and its caches are shared.
+    try (RevWalk rw = new RevWalk(reader)) {
+      rw.setRetainBody(false);
+      rw.markStart(rw.parseCommit(checksRefId));
+      for (RevCommit c = rw.next(); c != null; c = rw.next()) {
+        change.commitCount++;
+      }
+      change.noteBytes = noteBytes(rw, checksRefId);
+    }
+
+    info.checksRefs++;
+    info.noteBytes += change.noteBytes;
+    for (TopChanges top : topChanges) {
+      top.offer(change);
+    }
+  }
+
+  private static long noteBytes(RevWalk rw, ObjectId commitId) throws IOException {
+    ObjectReader reader = rw.getObjectReader();
+    long bytes = 0;
+    for (Note note : NoteMap.read(reader, rw.parseCommit(commitId))) {
+      bytes += reader.getObjectSize(note.getData(), OBJ_BLOB);
+    }
+    return bytes;
+  }
+}
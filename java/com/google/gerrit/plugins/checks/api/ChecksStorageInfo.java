@@ -0,0 +1,44 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.gerrit.plugins.checks.api;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/** REST API representation of the storage of checks in a project. */
+public class ChecksStorageInfo {
+  /** Number of checkers that apply to the project. */
+  public int checkers;
+
+  /** Number of checks refs in the project, i.e. the number of changes that have checks. */
+  public int checksRefs;
+
+  /** Total size in bytes of the notes of all checks refs in the project. */
+  public long noteBytes;
+
+  /** Changes with the most commits in their checks ref, ordered by that count descending. */
+  public List<ChangeChecksStorageInfo> topChangesByCommitCount;
+
+  /** Changes with the largest notes in their checks ref, ordered by the size descending. */
+  public List<ChangeChecksStorageInfo> topChangesByNoteBytes;
+
+  /** Changes with checks that have the most patch sets, ordered by that count descending. */
+  public List<ChangeChecksStorageInfo> topChangesByPatchSetCount;
+
+  /** Total size in bytes of the notes that map repositories to checkers. */
+  public long checkersNoteBytes;
+
+  /** Time at which the returned data was computed. */
+  public Timestamp computed;
+}
@@ -74,7 +74,7 @@ public enum CombinedCheckState {
    * @param checkStateCount count of check states.
    * @return combined state.
    */
-  private static CombinedCheckState combine(CheckStateCount checkStateCount) {
+  public static CombinedCheckState combine(CheckStateCount checkStateCount) {
     if (checkStateCount.failedRequiredCount() > 0) {
       return FAILED;
     }
@@ -106,41 +106,20 @@ public enum CombinedCheckState {
      */
     public static CheckStateCount create(
         ImmutableListMultimap<CheckState, Boolean> statesAndRequired) {
-      int failedRequiredCount = 0;
-      int failedOptionalCount = 0;
-      int inProgressRequiredCount = 0;
-      int inProgressOptionalCount = 0;
-      int successfulCount = 0;
-
+      Accumulator accumulator = accumulator();
       for (Map.Entry<CheckState, Boolean> checkStateAndRequiredState :
           statesAndRequired.entries()) {
-        CheckState state = checkStateAndRequiredState.getKey();
-        if (state.isInProgress()) {
-          if (checkStateAndRequiredState.getValue()) {
-            inProgressRequiredCount++;
-          } else {
-            inProgressOptionalCount++;
-          }
-        } else if (state == CheckState.FAILED) {
-          if (checkStateAndRequiredState.getValue()) {
-            failedRequiredCount++;
-          } else {
-            failedOptionalCount++;
-          }
-        } else if (state == CheckState.SUCCESSFUL) {
-          successfulCount++;
-        } else if (state != CheckState.NOT_RELEVANT) {
-          throw new IllegalStateException("invalid state: " + state);
-        }
+        accumulator.add(
+            checkStateAndRequiredState.getKey(), checkStateAndRequiredState.getValue());
       }
+      return accumulator.build();
+    }
 
-      return new AutoValue_CombinedCheckState_CheckStateCount.Builder()
-          .failedRequiredCount(failedRequiredCount)
-          .failedOptionalCount(failedOptionalCount)
-          .inProgressRequiredCount(inProgressRequiredCount)
-          .inProgressOptionalCount(inProgressOptionalCount)
-          .successfulCount(successfulCount)
-          .build();
+    /**
+     * Returns an accumulator that counts check states one by one, without collecting them first.
+     */
+    public static Accumulator accumulator() {
+      return new Accumulator();
     }
 
     /** Count of the failed check states which are required for submission. */
@@ -174,5 +153,54 @@ public enum CombinedCheckState {
 
       public abstract CheckStateCount build();
     }
+
+    /** Counts check states one by one. Instances are not thread-safe. */
+    public static final class Accumulator {
+      private int failedRequiredCount;
+      private int failedOptionalCount;
+      private int inProgressRequiredCount;
+      private int inProgressOptionalCount;
+      private int successfulCount;
+
+      private Accumulator() {}
+
+      /**
+       * Counts the state of a check.
+       *
+       * @param state the state of the check.
+       * @param required whether the check is required in the context of a particular change.
+       * @return this accumulator.
+       */
+      public Accumulator add(CheckState state, boolean required) {
+        if (state.isInProgress()) {
+          if (required) {
+            inProgressRequiredCount++;
+          } else {
+            inProgressOptionalCount++;
+          }
+        } else if (state == CheckState.FAILED) {
+          if (required) {
+            failedRequiredCount++;
+          } else {
+            failedOptionalCount++;
+          }
+        } else if (state == CheckState.SUCCESSFUL) {
+          successfulCount++;
+        } else if (state != CheckState.NOT_RELEVANT) {
+          throw new IllegalStateException("invalid state: " + state);
+        }
+        return this;
+      }
+
+      public CheckStateCount build() {
+        return new AutoValue_CombinedCheckState_CheckStateCount.Builder()
+            .failedRequiredCount(failedRequiredCount)
+            .failedOptionalCount(failedOptionalCount)
+            .inProgressRequiredCount(inProgressRequiredCount)
+            .inProgressOptionalCount(inProgressOptionalCount)
+            .successfulCount(successfulCount)
+            .build();
+      }
+    }
   }
 }
@@ -54,7 +54,7 @@ public class CreateChecker
     implements RestCollectionModifyView<TopLevelResource, CheckerResource, CheckerInput> {
   private final Provider<CurrentUser> self;
   private final PermissionBackend permissionBackend;
-  private final Provider<CheckerQuery> checkerQueryProvider;
+  private final CheckerQuery checkerQuery;
   private final Provider<CheckersUpdate> checkersUpdate;
   private final CheckerJson checkerJson;
   private final AdministrateCheckersPermission permission;
@@ -64,14 +64,14 @@ public class CreateChecker
   public CreateChecker(
       Provider<CurrentUser> self,
       PermissionBackend permissionBackend,
-      Provider<CheckerQuery> checkerQueryProvider,
+      CheckerQuery checkerQuery,
       @UserInitiated Provider<CheckersUpdate> checkersUpdate,
       CheckerJson checkerJson,
       AdministrateCheckersPermission permission,
       ProjectCache projectCache) {
     this.self = self;
     this.permissionBackend = permissionBackend;
-    this.checkerQueryProvider = checkerQueryProvider;
+    this.checkerQuery = checkerQuery;
     this.checkersUpdate = checkersUpdate;
     this.checkerJson = checkerJson;
     this.permission = permission;
@@ -158,7 +158,7 @@ public class CreateChecker
   private String validateQuery(CheckerUuid checkerUuid, Project.NameKey repository, String query)
       throws BadRequestException, StorageException {
     try {
-      return checkerQueryProvider.get().validate(checkerUuid, repository, query);
+      return checkerQuery.validate(checkerUuid, repository, query);
     } catch (ConfigInvalidException e) {
       throw new BadRequestException(e.getMessage(), e);
     }
@@ -17,9 +17,9 @@ package com.google.gerrit.plugins.checks.api;
 import com.google.gerrit.extensions.client.ListOption;
 import com.google.gerrit.extensions.restapi.AuthException;
 import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.extensions.restapi.ETagView;
 import com.google.gerrit.extensions.restapi.ResourceConflictException;
 import com.google.gerrit.extensions.restapi.Response;
-import com.google.gerrit.extensions.restapi.RestReadView;
 import com.google.gerrit.plugins.checks.CheckJson;
 import com.google.gerrit.plugins.checks.ListChecksOption;
 import com.google.inject.Inject;
@@ -27,8 +27,9 @@ import java.io.IOException;
 import java.util.EnumSet;
 import org.kohsuke.args4j.Option;
 
-public class GetCheck implements RestReadView<CheckResource> {
+public class GetCheck implements ETagView<CheckResource> {
   private final CheckJson.Factory checkJsonFactory;
+  private final ChecksETagComputation checksETagComputation;
 
   private final EnumSet<ListChecksOption> options = EnumSet.noneOf(ListChecksOption.class);
 
@@ -43,13 +44,20 @@ public class GetCheck implements RestReadView<CheckResource> {
   }
 
   @Inject
-  GetCheck(CheckJson.Factory checkJsonFactory) {
+  GetCheck(CheckJson.Factory checkJsonFactory, ChecksETagComputation checksETagComputation) {
     this.checkJsonFactory = checkJsonFactory;
+    this.checksETagComputation = checksETagComputation;
+  }
+
+  @Override
+  public String getETag(CheckResource resource) {
+    return checksETagComputation.compute(resource.getRevisionResource(), options);
   }
 
   @Override
   public Response<CheckInfo> apply(CheckResource resource)
       throws AuthException, BadRequestException, ResourceConflictException, IOException {
-    return Response.ok(checkJsonFactory.create(options).format(resource.getCheck()));
+    return Response.withMustRevalidate(
+        checkJsonFactory.create(options).format(resource.getCheck()));
   }
 }
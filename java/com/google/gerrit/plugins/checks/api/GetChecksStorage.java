@@ -0,0 +1,77 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.gerrit.plugins.checks.api;
+
+import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.extensions.restapi.Response;
+import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.extensions.restapi.RestReadView;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.permissions.GlobalPermission;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gerrit.server.project.ProjectResource;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import java.io.IOException;
+import org.kohsuke.args4j.Option;
+
+/** Reports hot spots of the storage of checks in a project. Only for administrators. */
+public class GetChecksStorage implements RestReadView<ProjectResource> {
+  private static final int DEFAULT_LIMIT = 10;
+  private static final int MAX_LIMIT = 1000;
+
+  private final Provider<CurrentUser> self;
+  private final PermissionBackend permissionBackend;
+  private final ChecksStorageDiagnostics diagnostics;
+  private int limit = DEFAULT_LIMIT;
+
+  @Option(
+      name = "--limit",
+      aliases = {"-n"},
+      metaVar = "CNT",
+      usage = "maximum number of changes in each list of top changes")
+  public GetChecksStorage setLimit(int limit) {
+    this.limit = limit;
+    return this;
+  }
+
+  @Inject
+  GetChecksStorage(
+      Provider<CurrentUser> self,
+      PermissionBackend permissionBackend,
+      ChecksStorageDiagnostics diagnostics) {
+    this.self = self;
+    this.permissionBackend = permissionBackend;
+    this.diagnostics = diagnostics;
+  }
+
+  @Override
+  public Response<ChecksStorageInfo> apply(ProjectResource resource)
+      throws RestApiException, PermissionBackendException, IOException {
+    if (!self.get().isIdentifiedUser()) {
+      throw new AuthException("Authentication required");
+    }
+    permissionBackend.currentUser().check(GlobalPermission.ADMINISTRATE_SERVER);
+
+    if (limit <= 0) {
+      throw new BadRequestException("limit must be positive");
+    }
+    if (limit > MAX_LIMIT) {
+      throw new BadRequestException("limit must not exceed " + MAX_LIMIT);
+    }
+    return Response.ok(diagnostics.get(resource.getNameKey(), limit));
+  }
+}
@@ -19,9 +19,9 @@ import com.google.gerrit.exceptions.StorageException;
 import com.google.gerrit.extensions.client.ListOption;
 import com.google.gerrit.extensions.restapi.AuthException;
 import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.extensions.restapi.ETagView;
 import com.google.gerrit.extensions.restapi.ResourceConflictException;
 import com.google.gerrit.extensions.restapi.Response;
-import com.google.gerrit.extensions.restapi.RestReadView;
 import com.google.gerrit.plugins.checks.Check;
 import com.google.gerrit.plugins.checks.CheckJson;
 import com.google.gerrit.plugins.checks.Checks;
@@ -33,9 +33,10 @@ import java.io.IOException;
 import java.util.EnumSet;
 import org.kohsuke.args4j.Option;
 
-public class ListChecks implements RestReadView<RevisionResource> {
+public class ListChecks implements ETagView<RevisionResource> {
   private final CheckJson.Factory checkJsonFactory;
   private final Checks checks;
+  private final ChecksETagComputation checksETagComputation;
 
   private final EnumSet<ListChecksOption> options = EnumSet.noneOf(ListChecksOption.class);
 
@@ -50,9 +51,18 @@ public class ListChecks implements RestReadView<RevisionResource> {
   }
 
   @Inject
-  ListChecks(CheckJson.Factory checkJsonFactory, Checks checks) {
+  ListChecks(
+      CheckJson.Factory checkJsonFactory,
+      Checks checks,
+      ChecksETagComputation checksETagComputation) {
     this.checkJsonFactory = checkJsonFactory;
     this.checks = checks;
+    this.checksETagComputation = checksETagComputation;
+  }
+
+  @Override
+  public String getETag(RevisionResource resource) {
+    return checksETagComputation.compute(resource, options);
   }
 
   @Override
@@ -63,16 +73,10 @@ public class ListChecks implements RestReadView<RevisionResource> {
       throw new ResourceConflictException("checks are not supported on a change edit");
     }
 
-    ImmutableList.Builder<CheckInfo> result = ImmutableList.builder();
-
     GetCheckOptions getCheckOptions = GetCheckOptions.withBackfilling();
     ImmutableList<Check> allChecks =
         checks.getChecks(resource.getProject(), resource.getPatchSet().id(), getCheckOptions);
 
-    CheckJson checkJson = checkJsonFactory.create(options);
-    for (Check check : allChecks) {
-      result.add(checkJson.format(check));
-    }
-    return Response.ok(result.build());
+    return Response.withMustRevalidate(checkJsonFactory.create(options).format(allChecks));
   }
 }
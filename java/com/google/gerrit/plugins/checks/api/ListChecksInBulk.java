@@ -0,0 +1,186 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.gerrit.plugins.checks.api;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.Multimaps;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.extensions.client.ListOption;
+import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.extensions.restapi.BinaryResult;
+import com.google.gerrit.extensions.restapi.Response;
+import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.extensions.restapi.RestCollectionModifyView;
+import com.google.gerrit.extensions.restapi.TopLevelResource;
+import com.google.gerrit.extensions.restapi.UnprocessableEntityException;
+import com.google.gerrit.httpd.restapi.RestApiServlet;
+import com.google.gerrit.json.OutputFormat;
+import com.google.gerrit.plugins.checks.Check;
+import com.google.gerrit.plugins.checks.CheckJson;
+import com.google.gerrit.plugins.checks.Checks;
+import com.google.gerrit.plugins.checks.Checks.GetCheckOptions;
+import com.google.gerrit.plugins.checks.ListChecksOption;
+import com.google.gerrit.server.PatchSetUtil;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.gerrit.server.permissions.ChangePermission;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gerrit.server.project.NoSuchChangeException;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.google.inject.Inject;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import org.kohsuke.args4j.Option;
+
+/**
+ * Returns the checks of multiple patch sets.
+ *
+ * <p>The patch sets are grouped by repository, so that data that is shared between the patch sets
+ * of a repository, such as the checkers, is only loaded once per repository. The checks are
+ * streamed to the client as a JSON list of {@link CheckInfo}s, one repository after the other, so
+ * that the checks of all patch sets never need to be held in memory at once.
+ *
+ * <p>Only the visibility of the requested patch sets is verified before the response is started.
+ */
+public class ListChecksInBulk
+    implements RestCollectionModifyView<TopLevelResource, BulkCheckResource, BulkChecksInput> {
+  private static final int DEFAULT_MAX_PATCH_SETS = 500;
+
+  private final CheckJson.Factory checkJsonFactory;
+  private final Checks checks;
+  private final ChangeNotes.Factory changeNotesFactory;
+  private final PatchSetUtil psUtil;
+  private final PermissionBackend permissionBackend;
+  private final int maxPatchSets;
+
+  private final EnumSet<ListChecksOption> options = EnumSet.noneOf(ListChecksOption.class);
+
+  @Option(name = "-o", usage = "Output options")
+  void addOption(ListChecksOption o) {
+    options.add(o);
+  }
+
+  @Option(name = "-O", usage = "Output option flags, in hex")
+  void setOptionFlagsHex(String hex) {
+    options.addAll(ListOption.fromBits(ListChecksOption.class, Integer.parseInt(hex, 16)));
+  }
+
+  @Inject
+  ListChecksInBulk(
+      CheckJson.Factory checkJsonFactory,
+      Checks checks,
+      ChangeNotes.Factory changeNotesFactory,
+      PatchSetUtil psUtil,
+      PermissionBackend permissionBackend,
+      PluginConfigFactory pluginConfigFactory,
+      @PluginName String pluginName) {
+    this.checkJsonFactory = checkJsonFactory;
+    this.checks = checks;
+    this.changeNotesFactory = changeNotesFactory;
+    this.psUtil = psUtil;
+    this.permissionBackend = permissionBackend;
+    this.maxPatchSets =
+        pluginConfigFactory
+            .getFromGerritConfig(pluginName)
+            .getInt("maxBulkChecksPatchSets", DEFAULT_MAX_PATCH_SETS);
+  }
+
+  @Override
+  public Response<BinaryResult> apply(TopLevelResource parentResource, BulkChecksInput input)
+      throws RestApiException, PermissionBackendException {
+    if (input == null || input.patchSets == null || input.patchSets.isEmpty()) {
+      throw new BadRequestException("patch sets are required");
+    }
+    if (input.patchSets.size() > maxPatchSets) {
+      throw new BadRequestException(
+          String.format("at most %d patch sets can be requested at once", maxPatchSets));
+    }
+
+    ListMultimap<Project.NameKey, PatchSet.Id> patchSetsByProject =
+        MultimapBuilder.linkedHashKeys().arrayListValues().build();
+    for (CheckablePatchSetInfo patchSet : input.patchSets) {
+      if (patchSet == null || patchSet.repository == null) {
+        throw new BadRequestException("repository is required");
+      }
+      Project.NameKey project = Project.nameKey(patchSet.repository);
+      PatchSet.Id psId = PatchSet.id(Change.id(patchSet.changeNumber), patchSet.patchSetId);
+      checkVisible(project, psId);
+      if (!patchSetsByProject.containsEntry(project, psId)) {
+        patchSetsByProject.put(project, psId);
+      }
+    }
+
+    CheckJson checkJson = checkJsonFactory.create(options);
+    return Response.ok(
+        new BinaryResult() {
+          @Override
+          public void writeTo(OutputStream os) throws IOException {
+            writeChecks(os, checkJson, Multimaps.asMap(patchSetsByProject));
+          }
+        }.setContentType("application/json").setCharacterEncoding(UTF_8));
+  }
+
+  private void checkVisible(Project.NameKey project, PatchSet.Id psId)
+      throws RestApiException, PermissionBackendException {
+    if (!isVisible(project, psId)) {
+      throw new UnprocessableEntityException(
+          String.format("patch set %s in repository %s not found", psId, project));
+    }
+  }
+
+  private boolean isVisible(Project.NameKey project, PatchSet.Id psId)
+      throws PermissionBackendException {
+    ChangeNotes notes;
+    try {
+      notes = changeNotesFactory.createCheckedUsingIndexLookup(psId.changeId());
+    } catch (NoSuchChangeException e) {
+      return false;
+    }
+    return notes.getProjectName().equals(project)
+        && permissionBackend.currentUser().change(notes).test(ChangePermission.READ)
+        && psUtil.get(notes, psId) != null;
+  }
+
+  private void writeChecks(
+      OutputStream os, CheckJson checkJson, Map<Project.NameKey, List<PatchSet.Id>> patchSets)
+      throws IOException {
+    Gson gson = OutputFormat.JSON_COMPACT.newGson();
+    os.write(RestApiServlet.JSON_MAGIC);
+    JsonWriter writer = new JsonWriter(new OutputStreamWriter(os, UTF_8));
+    writer.beginArray();
+    for (Map.Entry<Project.NameKey, List<PatchSet.Id>> e : patchSets.entrySet()) {
+      ImmutableListMultimap<PatchSet.Id, Check> checksOfProject =
+          checks.getChecks(e.getKey(), e.getValue(), GetCheckOptions.withBackfilling());
+      for (CheckInfo checkInfo : checkJson.format(checksOfProject.values().asList())) {
+        gson.toJson(checkInfo, CheckInfo.class, writer);
+      }
+      writer.flush();
+    }
+    writer.endArray();
+    writer.flush();
+  }
+}
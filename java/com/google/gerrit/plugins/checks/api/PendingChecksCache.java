@@ -0,0 +1,245 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.api;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.index.query.AndPredicate;
+import com.google.gerrit.index.query.NotPredicate;
+import com.google.gerrit.index.query.OrPredicate;
+import com.google.gerrit.index.query.Predicate;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.plugins.checks.Check;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.logging.PluginMetadata;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+
+/**
+ * Coalesces identical pending checks queries.
+ *
+ * <p>Pending checks are polled by external CI systems, and often many workers of the same CI system
+ * issue the exact same query at nearly the same time. Identical queries that are executed
+ * concurrently always share a single computation. In addition, the result of a computation can be
+ * kept for a short, configurable time ({@code plugin.checks.pendingChecksCacheTtl}) so that it can
+ * be served to subsequent identical queries.
+ *
+ * <p>Queries are identical if they have the same normalized predicate and the callers have the
+ * same visibility, i.e. results are never shared between different users. The predicate is
+ * normalized by ignoring the order of the operands of {@code AND} and {@code OR}.
+ *
+ * <p>If no TTL is configured, the result of a computation is only shared with the queries that
+ * arrived while it was computed.
+ */
+@Singleton
+class PendingChecksCache {
+  @Singleton
+  static class Metrics {
+    private final Counter1<String> queryCount;
+
+    @Inject
+    Metrics(@PluginName String pluginName, MetricMaker metricMaker) {
+      queryCount =
+          metricMaker.newCounter(
+              "checks/pending_checks_queries",
+              new Description("Number of pending checks queries").setRate().setUnit("queries"),
+              Field.ofString(
+                      "result",
+                      (metadataBuilder, fieldValue) ->
+                          metadataBuilder
+                              .pluginName(pluginName)
+                              .addPluginMetadata(PluginMetadata.create("result", fieldValue)))
+                  .description(
+                      "whether the query was computed, coalesced with an identical in-flight"
+                          + " query or served from the cache")
+                  .build());
+    }
+
+    void recordQuery(Result result) {
+      queryCount.increment(result.name().toLowerCase());
+    }
+  }
+
+  enum Result {
+    COMPUTED,
+    COALESCED,
+    CACHED
+  }
+
+  @FunctionalInterface
+  interface Loader {
+    ImmutableList<PendingChecksInfo> load()
+        throws RestApiException, IOException, ConfigInvalidException;
+  }
+
+  @AutoValue
+  abstract static class Key {
+    static Key create(Predicate<Check> query, Object visibilityKey) {
+      return new AutoValue_PendingChecksCache_Key(normalize(query), visibilityKey);
+    }
+
+    abstract String query();
+
+    abstract Object visibilityKey();
+  }
+
+  /**
+   * Returns a string representation of the predicate that doesn't depend on the order of the
+   * operands of {@code AND} and {@code OR}, e.g. {@code scheme:X state:SCHEDULED} and {@code
+   * state:SCHEDULED scheme:X} are normalized to the same string.
+   */
+  @VisibleForTesting
+  static String normalize(Predicate<?> predicate) {
+    String operator;
+    if (predicate instanceof AndPredicate) {
+      operator = " AND ";
+    } else if (predicate instanceof OrPredicate) {
+      operator = " OR ";
+    } else if (predicate instanceof NotPredicate) {
+      return "-" + normalize(predicate.getChild(0));
+    } else {
+      return predicate.toString();
+    }
+
+    List<String> operands = new ArrayList<>();
+    addNormalizedOperands(predicate, predicate.getClass(), operands);
+    Collections.sort(operands);
+    return "(" + String.join(operator, operands) + ")";
+  }
+
+  /** Adds the normalized operands, flattening nested operations of the same kind. */
+  private static void addNormalizedOperands(
+      Predicate<?> predicate, Class<?> operationClass, List<String> operands) {
+    for (Predicate<?> child : predicate.getChildren()) {
+      if (operationClass.isInstance(child)) {
+        addNormalizedOperands(child, operationClass, operands);
+      } else {
+        operands.add(normalize(child));
+      }
+    }
+  }
+
+  private final Metrics metrics;
+  private final long ttlMillis;
+  private final Cache<Key, ListenableFuture<ImmutableList<PendingChecksInfo>>> cache;
+
+  @Inject
+  PendingChecksCache(
+      Metrics metrics, PluginConfigFactory pluginConfigFactory, @PluginName String pluginName) {
+    this(
+        metrics,
+        ConfigUtil.getTimeUnit(
+            pluginConfigFactory.getFromGerritConfig(pluginName).getString("pendingChecksCacheTtl"),
+            0,
+            MILLISECONDS));
+  }
+
+  @VisibleForTesting
+  PendingChecksCache(Metrics metrics, long ttlMillis) {
+    this.metrics = metrics;
+    this.ttlMillis = ttlMillis;
+    // Without a TTL entries don't expire, but are removed as soon as their computation is done.
+    this.cache =
+        ttlMillis > 0
+            ? CacheBuilder.newBuilder().expireAfterWrite(ttlMillis, MILLISECONDS).build()
+            : CacheBuilder.newBuilder().build();
+  }
+
+  /**
+   * Returns the pending checks for the given query, either by running the loader or by reusing the
+   * result of an identical query.
+   *
+   * @param query the check query
+   * @param user the calling user, whose visibility the result must respect
+   * @param loader computes the pending checks if no result for an identical query is available
+   * @return the pending checks
+   */
+  ImmutableList<PendingChecksInfo> get(Predicate<Check> query, CurrentUser user, Loader loader)
+      throws RestApiException, IOException, ConfigInvalidException {
+    return get(Key.create(query, user.getCacheKey()), loader);
+  }
+
+  @VisibleForTesting
+  ImmutableList<PendingChecksInfo> get(Key key, Loader loader)
+      throws RestApiException, IOException, ConfigInvalidException {
+    SettableFuture<ImmutableList<PendingChecksInfo>> newFuture = SettableFuture.create();
+    ListenableFuture<ImmutableList<PendingChecksInfo>> existingFuture =
+        cache.asMap().putIfAbsent(key, newFuture);
+    if (existingFuture != null) {
+      metrics.recordQuery(existingFuture.isDone() ? Result.CACHED : Result.COALESCED);
+      return getResult(existingFuture);
+    }
+
+    metrics.recordQuery(Result.COMPUTED);
+    try {
+      ImmutableList<PendingChecksInfo> result = loader.load();
+      if (ttlMillis > 0) {
+        newFuture.set(result);
+        // Restart the TTL so that it's counted from the completion of the computation.
+        cache.asMap().replace(key, newFuture, newFuture);
+      } else {
+        // Queries that are waiting for this computation already hold the future.
+        cache.asMap().remove(key, newFuture);
+        newFuture.set(result);
+      }
+      return result;
+    } catch (Throwable t) {
+      // Failures are not cached, but queries that are waiting for this computation fail as well.
+      cache.asMap().remove(key, newFuture);
+      newFuture.setException(t);
+      throw t;
+    }
+  }
+
+  private static ImmutableList<PendingChecksInfo> getResult(
+      ListenableFuture<ImmutableList<PendingChecksInfo>> future)
+      throws RestApiException, IOException, ConfigInvalidException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new StorageException("interrupted while waiting for pending checks query", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      Throwables.throwIfInstanceOf(cause, RestApiException.class);
+      Throwables.throwIfInstanceOf(cause, IOException.class);
+      Throwables.throwIfInstanceOf(cause, ConfigInvalidException.class);
+      Throwables.throwIfUnchecked(cause);
+      throw new StorageException(cause);
+    }
+  }
+}
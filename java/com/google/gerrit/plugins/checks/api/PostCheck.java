@@ -39,6 +39,7 @@ import com.google.gerrit.server.change.RevisionResource;
 import com.google.gerrit.server.config.PluginConfigFactory;
 import com.google.gerrit.server.permissions.PermissionBackend;
 import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gerrit.server.quota.QuotaException;
 import java.io.IOException;
 import java.util.Optional;
 import javax.inject.Inject;
@@ -57,6 +58,7 @@ public class PostCheck
   private final Provider<ChecksUpdate> checksUpdate;
   private final CheckJson.Factory checkJsonFactory;
   private final PluginConfigFactory pluginConfigFactory;
+  private final CheckWriteRateLimiter rateLimiter;
 
   @Inject
   PostCheck(
@@ -67,7 +69,8 @@ public class PostCheck
       Checks checks,
       @UserInitiated Provider<ChecksUpdate> checksUpdate,
       CheckJson.Factory checkJsonFactory,
-      PluginConfigFactory pluginConfigFactory) {
+      PluginConfigFactory pluginConfigFactory,
+      CheckWriteRateLimiter rateLimiter) {
     this.self = self;
     this.permissionBackend = permissionBackend;
     this.permission = permission;
@@ -76,12 +79,13 @@ public class PostCheck
     this.checksUpdate = checksUpdate;
     this.checkJsonFactory = checkJsonFactory;
     this.pluginConfigFactory = pluginConfigFactory;
+    this.rateLimiter = rateLimiter;
   }
 
   @Override
   public Response<CheckInfo> apply(RevisionResource rsrc, CheckInput input)
       throws StorageException, IOException, RestApiException, PermissionBackendException,
-          ConfigInvalidException {
+          ConfigInvalidException, QuotaException {
     if (!self.get().isIdentifiedUser()) {
       throw new AuthException("Authentication required");
     }
@@ -102,6 +106,7 @@ public class PostCheck
     }
 
     CheckerUuid checkerUuid = CheckerUuid.parse(input.checkerUuid);
+    rateLimiter.acquire(checkerUuid);
 
     CheckKey key = CheckKey.create(rsrc.getProject(), rsrc.getPatchSet().id(), checkerUuid);
     Optional<Check> check = checks.getCheck(key, GetCheckOptions.defaults());
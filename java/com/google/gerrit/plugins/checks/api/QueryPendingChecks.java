@@ -14,11 +14,17 @@
 
 package com.google.gerrit.plugins.checks.api;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.gerrit.entities.PatchSet;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.extensions.restapi.BadRequestException;
 import com.google.gerrit.extensions.restapi.Response;
 import com.google.gerrit.extensions.restapi.RestApiException;
@@ -28,33 +34,46 @@ import com.google.gerrit.index.query.AndPredicate;
 import com.google.gerrit.index.query.Predicate;
 import com.google.gerrit.index.query.QueryParseException;
 import com.google.gerrit.plugins.checks.Check;
-import com.google.gerrit.plugins.checks.CheckKey;
 import com.google.gerrit.plugins.checks.Checker;
 import com.google.gerrit.plugins.checks.CheckerQuery;
 import com.google.gerrit.plugins.checks.CheckerUuid;
 import com.google.gerrit.plugins.checks.Checkers;
 import com.google.gerrit.plugins.checks.Checks;
-import com.google.gerrit.plugins.checks.Checks.GetCheckOptions;
 import com.google.gerrit.plugins.checks.index.CheckPredicate;
 import com.google.gerrit.plugins.checks.index.CheckQueryBuilder;
 import com.google.gerrit.plugins.checks.index.CheckStatePredicate;
 import com.google.gerrit.plugins.checks.index.CheckerPredicate;
 import com.google.gerrit.plugins.checks.index.CheckerSchemePredicate;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.FanOutExecutor;
+import com.google.gerrit.server.config.PluginConfigFactory;
 import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.server.util.RequestContext;
+import com.google.gerrit.server.util.ThreadLocalRequestContext;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.kohsuke.args4j.Option;
 
 public class QueryPendingChecks implements RestReadView<TopLevelResource> {
+  private final Provider<CurrentUser> self;
   private final CheckQueryBuilder checkQueryBuilder;
+  private final PendingChecksCache pendingChecksCache;
   private final Checkers checkers;
   private final Checks checks;
-  private final Provider<CheckerQuery> checkerQueryProvider;
+  private final CheckerQuery checkerQuery;
+  private final ExecutorService fanOutExecutor;
+  private final ThreadLocalRequestContext threadLocalRequestContext;
+  private final PluginConfigFactory pluginConfigFactory;
+  private final String pluginName;
   private String queryString;
 
   @Option(
@@ -69,14 +88,26 @@ public class QueryPendingChecks implements RestReadView<TopLevelResource> {
 
   @Inject
   public QueryPendingChecks(
+      Provider<CurrentUser> self,
       CheckQueryBuilder checkQueryBuilder,
+      PendingChecksCache pendingChecksCache,
       Checkers checkers,
       Checks checks,
-      Provider<CheckerQuery> checkerQueryProvider) {
+      CheckerQuery checkerQuery,
+      @FanOutExecutor ExecutorService fanOutExecutor,
+      ThreadLocalRequestContext threadLocalRequestContext,
+      PluginConfigFactory pluginConfigFactory,
+      @PluginName String pluginName) {
+    this.self = self;
     this.checkQueryBuilder = checkQueryBuilder;
+    this.pendingChecksCache = pendingChecksCache;
     this.checkers = checkers;
     this.checks = checks;
-    this.checkerQueryProvider = checkerQueryProvider;
+    this.checkerQuery = checkerQuery;
+    this.fanOutExecutor = fanOutExecutor;
+    this.threadLocalRequestContext = threadLocalRequestContext;
+    this.pluginConfigFactory = pluginConfigFactory;
+    this.pluginName = pluginName;
   }
 
   public List<PendingChecksInfo> apply() throws Exception {
@@ -94,9 +125,14 @@ public class QueryPendingChecks implements RestReadView<TopLevelResource> {
     if (!hasStatePredicate(predicate)) {
       predicate = Predicate.and(new CheckStatePredicate(CheckState.NOT_STARTED), predicate);
     }
-    // this variable is for the lambda expressions when using orElseThrow
+    // this variable is for the lambda expressions
     final Predicate<Check> finalPredicate = predicate;
+    return Response.ok(
+        pendingChecksCache.get(predicate, self.get(), () -> queryPendingChecks(finalPredicate)));
+  }
 
+  private ImmutableList<PendingChecksInfo> queryPendingChecks(Predicate<Check> predicate)
+      throws RestApiException, IOException, ConfigInvalidException, StorageException {
     if (countPredicates(predicate, CheckerPredicate.class) == 1) {
       // Checker query
       Optional<Checker> checker =
@@ -105,13 +141,13 @@ public class QueryPendingChecks implements RestReadView<TopLevelResource> {
                   .orElseThrow(
                       () ->
                           new IllegalStateException(
-                              String.format("no checker predicate found: %s", finalPredicate))));
+                              String.format("no checker predicate found: %s", predicate))));
       if (!checker.isPresent() || checker.get().isDisabled()) {
-        return Response.ok(ImmutableList.of());
+        return ImmutableList.of();
       }
-      ImmutableList<ChangeData> changes =
-          checkerQueryProvider.get().queryMatchingChanges(checker.get());
-      return Response.ok(getPendingChecksOfChecker(checker.get(), predicate, changes));
+      ImmutableList<ChangeData> changes = checkerQuery.queryMatchingChanges(checker.get());
+      return ImmutableList.copyOf(
+          getPendingChecksOfChecker(checker.get(), predicate, currentPatchSets(changes)));
     }
     // Scheme query
     String scheme =
@@ -119,40 +155,115 @@ public class QueryPendingChecks implements RestReadView<TopLevelResource> {
             .orElseThrow(
                 () ->
                     new IllegalStateException(
-                        String.format("no checker scheme predicate found: %s", finalPredicate)));
+                        String.format("no checker scheme predicate found: %s", predicate)));
     ImmutableList<Checker> checkersOfScheme = checkers.listCheckers(scheme);
-    ImmutableList<ImmutableList<ChangeData>> changes =
-        checkerQueryProvider.get().queryMatchingChanges(checkersOfScheme);
-    List<PendingChecksInfo> pendingChecks = new ArrayList<>();
-    for (int i = 0; i < changes.size(); i++) {
-      pendingChecks.addAll(
-          getPendingChecksOfChecker(checkersOfScheme.get(i), predicate, changes.get(i)));
+    // ChangeData is not threadsafe and checkers with the same query share the same ChangeData
+    // instances, hence the patch sets are read from the ChangeData on the request thread.
+    ImmutableList<ImmutableList<PatchSet>> patchSets =
+        checkerQuery.queryMatchingChanges(checkersOfScheme).stream()
+            .map(QueryPendingChecks::currentPatchSets)
+            .collect(toImmutableList());
+    int parallelism =
+        pluginConfigFactory.getFromGerritConfig(pluginName).getInt("pendingChecksParallelism", 1);
+    if (parallelism <= 1 || patchSets.size() <= 1) {
+      List<PendingChecksInfo> pendingChecks = new ArrayList<>();
+      for (int i = 0; i < patchSets.size(); i++) {
+        pendingChecks.addAll(
+            getPendingChecksOfChecker(checkersOfScheme.get(i), predicate, patchSets.get(i)));
+      }
+      return ImmutableList.copyOf(pendingChecks);
     }
-    return Response.ok(pendingChecks);
+    return ImmutableList.copyOf(
+        getPendingChecksOfCheckersInParallel(checkersOfScheme, predicate, patchSets, parallelism));
   }
 
-  private List<PendingChecksInfo> getPendingChecksOfChecker(
-      Checker checker, Predicate<Check> query, List<ChangeData> changes) throws IOException {
-
+  private static ImmutableList<PatchSet> currentPatchSets(List<ChangeData> changes) {
     // The query system can only match against the current patch set; ignore non-current patch sets
     // for now.
+    return changes.stream().map(ChangeData::currentPatchSet).collect(toImmutableList());
+  }
+
+  /**
+   * Computes the pending checks of multiple checkers on the fan-out executor.
+   *
+   * <p>The checkers are split into at most {@code parallelism} consecutive batches, so that a
+   * single request never occupies more than {@code parallelism} threads. The results of the batches
+   * are concatenated in checker order, hence the result is the same as if the checkers had been
+   * processed sequentially.
+   *
+   * <p>The tasks run in the request context of the calling request. They only get immutable data,
+   * so that no {@link ChangeData} is accessed from multiple threads.
+   */
+  private List<PendingChecksInfo> getPendingChecksOfCheckersInParallel(
+      ImmutableList<Checker> checkersOfScheme,
+      Predicate<Check> query,
+      ImmutableList<ImmutableList<PatchSet>> patchSets,
+      int parallelism)
+      throws IOException {
+    RequestContext requestContext = threadLocalRequestContext.getContext();
+    int batchSize = (patchSets.size() + parallelism - 1) / parallelism;
+    List<Integer> checkerIndices = IntStream.range(0, patchSets.size()).boxed().collect(toList());
+    List<Future<List<PendingChecksInfo>>> futures = new ArrayList<>();
+    for (List<Integer> batch : Lists.partition(checkerIndices, batchSize)) {
+      futures.add(
+          fanOutExecutor.submit(
+              () -> {
+                RequestContext oldRequestContext =
+                    threadLocalRequestContext.setContext(requestContext);
+                try {
+                  List<PendingChecksInfo> pendingChecks = new ArrayList<>();
+                  for (int i : batch) {
+                    pendingChecks.addAll(
+                        getPendingChecksOfChecker(
+                            checkersOfScheme.get(i), query, patchSets.get(i)));
+                  }
+                  return pendingChecks;
+                } finally {
+                  threadLocalRequestContext.setContext(oldRequestContext);
+                }
+              }));
+    }
+
     List<PendingChecksInfo> pendingChecks = new ArrayList<>();
-    CheckerUuid checkerUuid = checker.getUuid();
-    for (ChangeData cd : changes) {
-      PatchSet patchSet = cd.currentPatchSet();
-      CheckKey checkKey = CheckKey.create(cd.project(), patchSet.id(), checkerUuid);
+    try {
+      for (Future<List<PendingChecksInfo>> future : futures) {
+        pendingChecks.addAll(future.get());
+      }
+    } catch (InterruptedException e) {
+      futures.forEach(f -> f.cancel(true));
+      Thread.currentThread().interrupt();
+      throw new StorageException("interrupted while querying pending checks", e);
+    } catch (ExecutionException e) {
+      futures.forEach(f -> f.cancel(true));
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new StorageException(e.getCause());
+    }
+    return pendingChecks;
+  }
 
+  private List<PendingChecksInfo> getPendingChecksOfChecker(
+      Checker checker, Predicate<Check> query, List<PatchSet> patchSets) throws IOException {
+    // The changes were found by executing the query of the checker, which is restricted to the
+    // repository of the checker.
+    Project.NameKey repository = checker.getRepository();
+    List<PendingChecksInfo> pendingChecks = new ArrayList<>();
+    CheckerUuid checkerUuid = checker.getUuid();
+    for (PatchSet patchSet : patchSets) {
+      // The check query only needs the state of the check, hence it can be matched against the
+      // check states, which are cheaper to read than the full checks.
       // Backfill if check is not present.
       // Backfilling is only done for relevant checkers (checkers where the repository and the query
       // matches the change). Since the change was found by executing the query of the checker we
       // know that the checker is relevant for this patch set and hence backfilling should be done.
       Check check =
-          checks
-              .getCheck(checkKey, GetCheckOptions.defaults())
-              .orElseGet(() -> Check.newBackfilledCheck(cd.project(), patchSet, checker));
+          checks.getCheckStates(repository, patchSet).stream()
+              .filter(c -> c.key().checkerUuid().equals(checkerUuid))
+              .findAny()
+              .orElseGet(() -> Check.newBackfilledCheck(repository, patchSet, checker));
 
       if (query.asMatchable().match(check)) {
-        pendingChecks.add(createPendingChecksInfo(cd.project(), patchSet, checkerUuid, check));
+        pendingChecks.add(createPendingChecksInfo(repository, patchSet, checkerUuid, check));
       }
     }
     return pendingChecks;
@@ -33,6 +33,7 @@ import com.google.gerrit.plugins.checks.ChecksUpdate;
 import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.UserInitiated;
 import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gerrit.server.quota.QuotaException;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.io.IOException;
@@ -47,6 +48,7 @@ public class RerunCheck implements RestModifyView<CheckResource, RerunInput> {
   private final Provider<ChecksUpdate> checksUpdate;
   private final CheckJson.Factory checkJsonFactory;
   private final Checkers checkers;
+  private final CheckWriteRateLimiter rateLimiter;
 
   @Inject
   RerunCheck(
@@ -54,17 +56,20 @@ public class RerunCheck implements RestModifyView<CheckResource, RerunInput> {
       Checks checks,
       @UserInitiated Provider<ChecksUpdate> checksUpdate,
       CheckJson.Factory checkJsonFactory,
-      Checkers checkers) {
+      Checkers checkers,
+      CheckWriteRateLimiter rateLimiter) {
     this.self = self;
     this.checks = checks;
     this.checksUpdate = checksUpdate;
     this.checkJsonFactory = checkJsonFactory;
     this.checkers = checkers;
+    this.rateLimiter = rateLimiter;
   }
 
   @Override
   public Response<CheckInfo> apply(CheckResource checkResource, RerunInput input)
-      throws RestApiException, IOException, PermissionBackendException, ConfigInvalidException {
+      throws RestApiException, IOException, PermissionBackendException, ConfigInvalidException,
+          QuotaException {
     if (!self.get().isIdentifiedUser()) {
       throw new AuthException("Authentication required");
     }
@@ -74,6 +79,7 @@ public class RerunCheck implements RestModifyView<CheckResource, RerunInput> {
     if (input == null) {
       input = new RerunInput();
     }
+    rateLimiter.acquire(checkResource.getCheckerUuid());
     CheckKey key =
         CheckKey.create(
             checkResource.getRevisionResource().getProject(),
@@ -48,7 +48,7 @@ public class UpdateChecker implements RestModifyView<CheckerResource, CheckerInp
   private final CheckerJson checkerJson;
   private final PermissionBackend permissionBackend;
   private final ProjectCache projectCache;
-  private final Provider<CheckerQuery> checkerQueryProvider;
+  private final CheckerQuery checkerQuery;
   private final Provider<CheckersUpdate> checkersUpdate;
   private final AdministrateCheckersPermission permission;
 
@@ -57,13 +57,13 @@ public class UpdateChecker implements RestModifyView<CheckerResource, CheckerInp
       CheckerJson checkerJson,
       ProjectCache projectCache,
       PermissionBackend permissionBackend,
-      Provider<CheckerQuery> checkerQueryProvider,
+      CheckerQuery checkerQuery,
       @UserInitiated Provider<CheckersUpdate> checkersUpdate,
       AdministrateCheckersPermission permission) {
     this.checkerJson = checkerJson;
     this.projectCache = projectCache;
     this.permissionBackend = permissionBackend;
-    this.checkerQueryProvider = checkerQueryProvider;
+    this.checkerQuery = checkerQuery;
     this.checkersUpdate = checkersUpdate;
     this.permission = permission;
   }
@@ -143,7 +143,7 @@ public class UpdateChecker implements RestModifyView<CheckerResource, CheckerInp
   private String validateQuery(CheckerUuid checkerUuid, Project.NameKey repository, String query)
       throws BadRequestException, StorageException {
     try {
-      return checkerQueryProvider.get().validate(checkerUuid, repository, query);
+      return checkerQuery.validate(checkerUuid, repository, query);
     } catch (ConfigInvalidException e) {
       throw new BadRequestException(e.getMessage(), e);
     }
@@ -0,0 +1,60 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.db;
+
+import com.google.gerrit.plugins.checks.CheckMessage;
+import java.util.Objects;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Message of a check that is stored in a separate blob (see {@link NoteDbCheck#messageBlob}).
+ *
+ * <p>The blob is read on the first call of {@link #get()}, together with the message blobs of the
+ * checks that were loaded at the same time (see {@link MessageBlobReader}).
+ */
+class BlobCheckMessage extends CheckMessage {
+  private final MessageBlobReader reader;
+  private final ObjectId blobId;
+
+  BlobCheckMessage(MessageBlobReader reader, ObjectId blobId) {
+    this.reader = reader;
+    this.blobId = blobId;
+    reader.register(blobId);
+  }
+
+  @Override
+  public String get() {
+    return reader.read(blobId);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof BlobCheckMessage)) {
+      return false;
+    }
+    BlobCheckMessage other = (BlobCheckMessage) o;
+    return reader.project().equals(other.reader.project()) && blobId.equals(other.blobId);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(reader.project(), blobId);
+  }
+
+  @Override
+  public String toString() {
+    return "BlobCheckMessage{" + reader.project() + ", " + blobId.name() + "}";
+  }
+}
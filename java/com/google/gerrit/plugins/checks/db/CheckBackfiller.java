@@ -25,7 +25,6 @@ import com.google.gerrit.plugins.checks.Checkers;
 import com.google.gerrit.plugins.checks.api.CheckerStatus;
 import com.google.gerrit.server.query.change.ChangeData;
 import com.google.inject.Inject;
-import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import java.io.IOException;
 import java.util.Collection;
@@ -35,12 +34,12 @@ import org.eclipse.jgit.errors.ConfigInvalidException;
 @Singleton
 class CheckBackfiller {
   private final Checkers checkers;
-  private final Provider<CheckerQuery> checkerQueryProvider;
+  private final CheckerQuery checkerQuery;
 
   @Inject
-  CheckBackfiller(Checkers checkers, Provider<CheckerQuery> checkerQueryProvider) {
+  CheckBackfiller(Checkers checkers, CheckerQuery checkerQuery) {
     this.checkers = checkers;
-    this.checkerQueryProvider = checkerQueryProvider;
+    this.checkerQuery = checkerQuery;
   }
 
   ImmutableList<Check> getBackfilledChecksForRelevantCheckers(
@@ -55,7 +54,6 @@ class CheckBackfiller {
     }
     // All candidates need to be checked for relevance. Any relevant checkers are reported as
     // NOT_STARTED, with creation time matching the patch set.
-    CheckerQuery checkerQuery = checkerQueryProvider.get();
     ImmutableList.Builder<Check> result = ImmutableList.builderWithExpectedSize(candidates.size());
     PatchSet ps = cd.patchSet(psId);
     for (Checker checker : candidates) {
@@ -84,7 +82,7 @@ class CheckBackfiller {
     }
     if (!checker.isPresent()
         || checker.get().getStatus() != CheckerStatus.ENABLED
-        || !checkerQueryProvider.get().isCheckerRelevant(checker.get(), cd)) {
+        || !checkerQuery.isCheckerRelevant(checker.get(), cd)) {
       return Optional.empty();
     }
     return Optional.of(Check.newBackfilledCheck(cd.project(), cd.patchSet(psId), checker.get()));
@@ -20,6 +20,10 @@ import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.plugins.checks.CheckerRef;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.Operation;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.Phase;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.PhaseTimer;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.PhaseTimings;
 import com.google.gerrit.server.logging.Metadata;
 import com.google.gerrit.server.logging.TraceContext;
 import com.google.gerrit.server.logging.TraceContext.TraceTimer;
@@ -32,7 +36,6 @@ import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.notes.NoteMap;
-import org.eclipse.jgit.revwalk.RevCommit;
 
 public class CheckNotes extends AbstractChangeNotes<CheckRevisionNote> {
   public interface Factory {
@@ -40,6 +43,7 @@ public class CheckNotes extends AbstractChangeNotes<CheckRevisionNote> {
   }
 
   private final String pluginName;
+  private final ChecksStorageMetrics metrics;
   private final Change change;
 
   private ImmutableMap<ObjectId, NoteDbCheckMap> entities;
@@ -47,9 +51,14 @@ public class CheckNotes extends AbstractChangeNotes<CheckRevisionNote> {
   private ObjectId metaId;
 
   @Inject
-  CheckNotes(Args args, @PluginName String pluginName, @Assisted Change change) {
+  CheckNotes(
+      Args args,
+      @PluginName String pluginName,
+      ChecksStorageMetrics metrics,
+      @Assisted Change change) {
     super(args, change.getId());
     this.pluginName = pluginName;
+    this.metrics = metrics;
     this.change = change;
   }
 
@@ -84,11 +93,16 @@ public class CheckNotes extends AbstractChangeNotes<CheckRevisionNote> {
                 .projectName(getProjectName().get())
                 .changeId(getChangeId().get())
                 .build())) {
-      RevCommit tipCommit = handle.walk().parseCommit(metaId);
+      PhaseTimings timings = new PhaseTimings();
       ObjectReader reader = handle.walk().getObjectReader();
-      revisionNoteMap =
-          CheckRevisionNoteMap.parseChecks(
-              args.changeNoteJson, reader, NoteMap.read(reader, tipCommit));
+      NoteMap noteMap;
+      try (PhaseTimer timer = timings.start(Phase.READ)) {
+        noteMap = NoteMap.read(reader, handle.walk().parseCommit(metaId));
+      }
+      try (PhaseTimer timer = timings.start(Phase.PARSE)) {
+        revisionNoteMap = CheckRevisionNoteMap.parseChecks(args.changeNoteJson, reader, noteMap);
+      }
+      metrics.recordOperation(Operation.READ, timings);
     }
 
     ImmutableMap.Builder<ObjectId, NoteDbCheckMap> cs = ImmutableMap.builder();
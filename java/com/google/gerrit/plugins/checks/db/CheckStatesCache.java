@@ -0,0 +1,227 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.db;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.plugins.checks.Check;
+import com.google.gerrit.plugins.checks.CheckKey;
+import com.google.gerrit.plugins.checks.CheckerRef;
+import com.google.gerrit.plugins.checks.CheckerUuid;
+import com.google.gerrit.plugins.checks.api.CheckState;
+import com.google.gerrit.plugins.checks.cache.proto.Cache.CheckStatesKeyProto;
+import com.google.gerrit.plugins.checks.cache.proto.Cache.CheckStatesProto;
+import com.google.gerrit.plugins.checks.cache.proto.Cache.CheckStatesProto.CheckProto;
+import com.google.gerrit.plugins.checks.cache.proto.Cache.CheckStatesProto.RevisionProto;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.cache.serialize.ProtobufSerializer;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.notedb.ChangeNoteUtil;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.notes.NoteMap;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Cache of the parsed check states of a change, keyed by the tip of the checks ref of the change.
+ *
+ * <p>For each check an entry contains the checker UUID, the state and the creation and update
+ * timestamps. This is all that is needed to evaluate the predicates of {@link
+ * com.google.gerrit.plugins.checks.index.CheckQueryBuilder}, so that a cache hit saves parsing the
+ * check notes of the change.
+ *
+ * <p>This is not an index: check queries are still evaluated change by change, and looking up the
+ * checks of a change always reads its checks ref to find the cache key. Each check update moves the
+ * ref to a new tip, so entries are never outdated and don't need to be invalidated. Writes in
+ * {@link NoteDbChecksUpdate} put the entry for the new tip into the cache, so that a subsequent
+ * query doesn't need to parse the notes that were just written. Entries for tips that were not
+ * written on this server, or that were evicted, are computed by parsing the check notes.
+ */
+@Singleton
+class CheckStatesCache {
+  private static final String NAME = "check_states";
+
+  static Module module() {
+    return new CacheModule() {
+      @Override
+      public void configure() {
+        persist(NAME, CheckStatesKeyProto.class, CheckStatesProto.class)
+            .version(1)
+            .maximumWeight(10000)
+            .diskLimit(-1)
+            .keySerializer(new ProtobufSerializer<>(CheckStatesKeyProto.parser()))
+            .valueSerializer(new ProtobufSerializer<>(CheckStatesProto.parser()))
+            .loader(Loader.class);
+      }
+    };
+  }
+
+  private final LoadingCache<CheckStatesKeyProto, CheckStatesProto> cache;
+  private final GitRepositoryManager repoManager;
+
+  @Inject
+  CheckStatesCache(
+      @Named(NAME) LoadingCache<CheckStatesKeyProto, CheckStatesProto> cache,
+      GitRepositoryManager repoManager) {
+    this.cache = cache;
+    this.repoManager = repoManager;
+  }
+
+  /**
+   * Returns the check states of a patch set.
+   *
+   * <p>The returned checks only have the key, the state and the timestamps of creation and last
+   * update populated.
+   *
+   * @param project project containing the change.
+   * @param patchSet patch set for which the checks should be returned.
+   * @return the checks, sorted by checker UUID.
+   * @throws IOException if the checks ref couldn't be read.
+   */
+  ImmutableList<Check> getChecks(Project.NameKey project, PatchSet patchSet) throws IOException {
+    Change.Id changeId = patchSet.id().changeId();
+    Ref checksRef;
+    try (Repository repo = repoManager.openRepository(project)) {
+      checksRef = repo.exactRef(CheckerRef.checksRef(changeId));
+    }
+    if (checksRef == null) {
+      return ImmutableList.of();
+    }
+
+    CheckStatesProto entry;
+    try {
+      entry = cache.get(key(project, changeId, checksRef.getObjectId()));
+    } catch (ExecutionException e) {
+      throw new StorageException(e);
+    }
+
+    return toChecks(project, patchSet, entry);
+  }
+
+  /**
+   * Puts the checks of a change into the cache.
+   *
+   * @param project project containing the change.
+   * @param changeId the ID of the change.
+   * @param checksRefId the tip of the checks ref that contains the given checks.
+   * @param checksByCommit the checks of the change by patch set commit.
+   */
+  void put(
+      Project.NameKey project,
+      Change.Id changeId,
+      ObjectId checksRefId,
+      Map<ObjectId, NoteDbCheckMap> checksByCommit) {
+    cache.put(key(project, changeId, checksRefId), toProto(checksByCommit));
+  }
+
+  private static CheckStatesKeyProto key(
+      Project.NameKey project, Change.Id changeId, ObjectId checksRefId) {
+    return CheckStatesKeyProto.newBuilder()
+        .setProject(project.get())
+        .setChangeId(changeId.get())
+        .setChecksRefId(checksRefId.name())
+        .build();
+  }
+
+  @VisibleForTesting
+  static CheckStatesProto toProto(Map<ObjectId, NoteDbCheckMap> checksByCommit) {
+    CheckStatesProto.Builder checkStates = CheckStatesProto.newBuilder();
+    for (Map.Entry<ObjectId, NoteDbCheckMap> e : checksByCommit.entrySet()) {
+      RevisionProto.Builder revision = RevisionProto.newBuilder().setCommitId(e.getKey().name());
+      // NoteDbCheckMap is a TreeMap, hence the checks are sorted by checker UUID.
+      for (Map.Entry<String, NoteDbCheck> check : e.getValue().checks.entrySet()) {
+        revision.addCheck(
+            CheckProto.newBuilder()
+                .setCheckerUuid(check.getKey())
+                .setState(check.getValue().state.name())
+                .setCreatedMillis(check.getValue().created.getTime())
+                .setUpdatedMillis(check.getValue().updated.getTime()));
+      }
+      checkStates.addRevision(revision);
+    }
+    return checkStates.build();
+  }
+
+  @VisibleForTesting
+  static ImmutableList<Check> toChecks(
+      Project.NameKey project, PatchSet patchSet, CheckStatesProto checkStates) {
+    String commitId = patchSet.commitId().name();
+    return checkStates.getRevisionList().stream()
+        .filter(r -> r.getCommitId().equals(commitId))
+        .flatMap(r -> r.getCheckList().stream())
+        .map(c -> toCheck(project, patchSet.id(), c))
+        .collect(toImmutableList());
+  }
+
+  private static Check toCheck(Project.NameKey project, PatchSet.Id psId, CheckProto proto) {
+    return Check.builder(CheckKey.create(project, psId, CheckerUuid.parse(proto.getCheckerUuid())))
+        .setState(CheckState.valueOf(proto.getState()))
+        .setCreated(new Timestamp(proto.getCreatedMillis()))
+        .setUpdated(new Timestamp(proto.getUpdatedMillis()))
+        .build();
+  }
+
+  @Singleton
+  private static class Loader extends CacheLoader<CheckStatesKeyProto, CheckStatesProto> {
+    private final GitRepositoryManager repoManager;
+    private final ChangeNoteUtil noteUtil;
+
+    @Inject
+    Loader(GitRepositoryManager repoManager, ChangeNoteUtil noteUtil) {
+      this.repoManager = repoManager;
+      this.noteUtil = noteUtil;
+    }
+
+    @Override
+    public CheckStatesProto load(CheckStatesKeyProto key)
+        throws IOException, ConfigInvalidException {
+      try (Repository repo = repoManager.openRepository(Project.nameKey(key.getProject()));
+          RevWalk rw = new RevWalk(repo)) {
+        NoteMap noteMap =
+            NoteMap.read(
+                rw.getObjectReader(), rw.parseCommit(ObjectId.fromString(key.getChecksRefId())));
+        CheckRevisionNoteMap revisionNoteMap =
+            CheckRevisionNoteMap.parseChecks(
+                noteUtil.getChangeNoteJson(), rw.getObjectReader(), noteMap);
+        Map<ObjectId, NoteDbCheckMap> checksByCommit =
+            Maps.newHashMapWithExpectedSize(revisionNoteMap.revisionNotes.size());
+        for (Map.Entry<ObjectId, CheckRevisionNote> e :
+            revisionNoteMap.revisionNotes.entrySet()) {
+          checksByCommit.put(e.getKey(), e.getValue().getOnlyEntity());
+        }
+        return toProto(checksByCommit);
+      }
+    }
+  }
+}
@@ -41,6 +41,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.lib.CommitBuilder;
 import org.eclipse.jgit.lib.ObjectId;
@@ -318,11 +319,11 @@ public class CheckersByRepositoryNotes extends VersionedMetaData {
    *
    * <p>Invalid checker UUIDs are silently ignored.
    */
-  private static ImmutableSortedSet<CheckerUuid> parseCheckerUuidsFromNote(
+  @VisibleForTesting
+  static ImmutableSortedSet<CheckerUuid> parseCheckerUuidsFromNote(
       ObjectId noteId, byte[] raw, ObjectId blobId) {
-    ImmutableSortedSet<String> lines = parseNote(raw);
     ImmutableSortedSet.Builder<CheckerUuid> checkerUuids = ImmutableSortedSet.naturalOrder();
-    lines.forEach(
+    Consumer<String> addLine =
         line -> {
           Optional<CheckerUuid> checkerUuid = CheckerUuid.tryParse(line);
           if (checkerUuid.isPresent()) {
@@ -332,7 +333,18 @@ public class CheckersByRepositoryNotes extends VersionedMetaData {
                 "Ignoring invalid checker UUID %s in note %s with blob ID %s.",
                 line, noteId.name(), blobId.name());
           }
-        });
+        };
+
+    // Notes are written sorted, so that they can be read without sorting and deduplicating the
+    // lines first.
+    Optional<SortedNoteLines> sortedLines = SortedNoteLines.tryParse(raw);
+    if (sortedLines.isPresent()) {
+      for (int i = 0; i < sortedLines.get().size(); i++) {
+        addLine.accept(sortedLines.get().get(i));
+      }
+    } else {
+      parseNote(raw).forEach(addLine);
+    }
     return checkerUuids.build();
   }
 
@@ -340,8 +352,11 @@ public class CheckersByRepositoryNotes extends VersionedMetaData {
    * Parses all entries from a note, one entry per line.
    *
    * <p>Doesn't validate the entries are valid checker UUIDs.
+   *
+   * <p>Only needed for notes that cannot be viewed as {@link SortedNoteLines}.
    */
-  private static ImmutableSortedSet<String> parseNote(byte[] raw) {
+  @VisibleForTesting
+  static ImmutableSortedSet<String> parseNote(byte[] raw) {
     return Splitter.on('\n').splitToList(new String(raw, UTF_8)).stream()
         .collect(toImmutableSortedSet(naturalOrder()));
   }
@@ -360,21 +375,38 @@ public class CheckersByRepositoryNotes extends VersionedMetaData {
       Project.NameKey repositoryName)
       throws IOException {
     String checkerUuidStr = checkerUuid.get();
+    byte[] checkerUuidRaw = checkerUuidStr.getBytes(UTF_8);
     ObjectId noteId = computeRepositorySha1(repositoryName);
-    ImmutableSortedSet.Builder<String> newLinesBuilder = ImmutableSortedSet.naturalOrder();
+    byte[] newRaw;
     if (noteMap.contains(noteId)) {
       ObjectId noteDataId = noteMap.get(noteId);
       byte[] raw = readNoteData(rw, noteDataId);
-      ImmutableSortedSet<String> oldLines = parseNote(raw);
-      if (oldLines.contains(checkerUuidStr)) {
-        return;
+      Optional<SortedNoteLines> sortedLines = SortedNoteLines.tryParse(raw);
+      if (sortedLines.isPresent()) {
+        int index = sortedLines.get().indexOf(checkerUuidRaw);
+        if (index >= 0) {
+          return;
+        }
+        newRaw = sortedLines.get().insert(-(index + 1), checkerUuidRaw);
+      } else {
+        ImmutableSortedSet<String> oldLines = parseNote(raw);
+        if (oldLines.contains(checkerUuidStr)) {
+          return;
+        }
+        newRaw =
+            Joiner.on("\n")
+                .join(
+                    ImmutableSortedSet.<String>naturalOrder()
+                        .addAll(oldLines)
+                        .add(checkerUuidStr)
+                        .build())
+                .getBytes(UTF_8);
       }
-      newLinesBuilder.addAll(oldLines);
+    } else {
+      newRaw = checkerUuidRaw;
     }
 
-    newLinesBuilder.add(checkerUuidStr);
-    byte[] raw = Joiner.on("\n").join(newLinesBuilder.build()).getBytes(UTF_8);
-    ObjectId noteData = ins.insert(OBJ_BLOB, raw);
+    ObjectId noteData = ins.insert(OBJ_BLOB, newRaw);
     noteMap.set(noteId, noteData);
     addFooters(footers, checkerUuid, repositoryName);
   }
@@ -394,25 +426,41 @@ public class CheckersByRepositoryNotes extends VersionedMetaData {
       throws IOException {
     String checkerUuidStr = checkerUuid.get();
     ObjectId noteId = computeRepositorySha1(repositoryName);
-    ImmutableSortedSet.Builder<String> newLinesBuilder = ImmutableSortedSet.naturalOrder();
-    if (noteMap.contains(noteId)) {
-      ObjectId noteDataId = noteMap.get(noteId);
-      byte[] raw = readNoteData(rw, noteDataId);
+    if (!noteMap.contains(noteId)) {
+      return;
+    }
+
+    ObjectId noteDataId = noteMap.get(noteId);
+    byte[] raw = readNoteData(rw, noteDataId);
+    byte[] newRaw;
+    Optional<SortedNoteLines> sortedLines = SortedNoteLines.tryParse(raw);
+    if (sortedLines.isPresent()) {
+      int index = sortedLines.get().indexOf(checkerUuidStr.getBytes(UTF_8));
+      if (index < 0) {
+        return;
+      }
+      if (sortedLines.get().size() == 1) {
+        noteMap.remove(noteId);
+        return;
+      }
+      newRaw = sortedLines.get().remove(index);
+    } else {
       ImmutableSortedSet<String> oldLines = parseNote(raw);
       if (!oldLines.contains(checkerUuidStr)) {
         return;
       }
-      oldLines.stream().filter(line -> !line.equals(checkerUuidStr)).forEach(newLinesBuilder::add);
-    }
-
-    ImmutableSortedSet<String> newLines = newLinesBuilder.build();
-    if (newLines.isEmpty()) {
-      noteMap.remove(noteId);
-      return;
+      if (oldLines.size() == 1) {
+        noteMap.remove(noteId);
+        return;
+      }
+      newRaw =
+          oldLines.stream()
+              .filter(line -> !line.equals(checkerUuidStr))
+              .collect(joining("\n"))
+              .getBytes(UTF_8);
     }
 
-    byte[] raw = Joiner.on("\n").join(newLines).getBytes(UTF_8);
-    ObjectId noteData = ins.insert(OBJ_BLOB, raw);
+    ObjectId noteData = ins.insert(OBJ_BLOB, newRaw);
     noteMap.set(noteId, noteData);
     addFooters(footers, checkerUuid, repositoryName);
   }
@@ -0,0 +1,137 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.db;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.Striped;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.Phase;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.PhaseTimer;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.PhaseTimings;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * In-process locks for the checks refs of changes.
+ *
+ * <p>Writers of checks hold the lock of the checks ref while they read, modify and write the ref.
+ * This way concurrent writes of checks of the same change on this server queue up instead of
+ * failing the compare-and-swap of the ref update, which would cause a wasted commit and a retry
+ * with backoff. Writes from other servers are still detected by the compare-and-swap.
+ *
+ * <p>The locks are striped, i.e. a fixed number of locks is shared by all changes. Writes of
+ * different changes may hence wait for each other if their changes map to the same stripe. The
+ * number of stripes is configured by {@code plugin.checks.checksRefLockStripes}, {@code 0} disables
+ * the locking.
+ *
+ * <p>Waiting for a lock is bounded by {@code plugin.checks.checksRefLockTimeout}. If the lock can't
+ * be acquired in time, or if the waiting thread is interrupted, the write proceeds without the lock
+ * and relies on the compare-and-swap of the ref update and its retries, as writes from other
+ * servers do.
+ */
+@Singleton
+class ChecksRefLocks {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** Held lock of a checks ref, closing it releases the lock. */
+  static class HeldLock implements AutoCloseable {
+    @Nullable private Lock lock;
+
+    private HeldLock(@Nullable Lock lock) {
+      this.lock = lock;
+    }
+
+    /** Whether the lock is held, i.e. whether it was acquired and not released yet. */
+    @VisibleForTesting
+    boolean isHeld() {
+      return lock != null;
+    }
+
+    /** Releases the lock. Further calls have no effect. */
+    @Override
+    public void close() {
+      if (lock != null) {
+        lock.unlock();
+        lock = null;
+      }
+    }
+  }
+
+  @Nullable private final Striped<Lock> locks;
+  private final long timeoutMillis;
+
+  @Inject
+  ChecksRefLocks(PluginConfigFactory pluginConfigFactory, @PluginName String pluginName) {
+    this(
+        pluginConfigFactory.getFromGerritConfig(pluginName).getInt("checksRefLockStripes", 256),
+        ConfigUtil.getTimeUnit(
+            pluginConfigFactory.getFromGerritConfig(pluginName).getString("checksRefLockTimeout"),
+            MILLISECONDS.convert(10, SECONDS),
+            MILLISECONDS));
+  }
+
+  @VisibleForTesting
+  ChecksRefLocks(int stripes, long timeoutMillis) {
+    this.locks = stripes > 0 ? Striped.lock(stripes) : null;
+    this.timeoutMillis = Math.max(timeoutMillis, 0);
+  }
+
+  /**
+   * Acquires the lock of the checks ref of a change, waiting at most for the configured timeout.
+   *
+   * <p>If the lock can't be acquired in time or if the thread is interrupted while waiting, the
+   * returned lock isn't held and the caller proceeds without it. The interrupt status of the thread
+   * is preserved.
+   *
+   * @param project the project that contains the change
+   * @param changeId the ID of the change
+   * @param timings timings of the operation, the wait for the lock is recorded as {@link
+   *     Phase#LOCK}
+   * @return the held lock, which must be closed to release the lock
+   */
+  HeldLock lock(Project.NameKey project, Change.Id changeId, PhaseTimings timings) {
+    if (locks == null) {
+      return new HeldLock(null);
+    }
+
+    Lock lock = locks.get(project.get() + '/' + changeId.get());
+    try (PhaseTimer timer = timings.start(Phase.LOCK)) {
+      if (lock.tryLock(timeoutMillis, MILLISECONDS)) {
+        return new HeldLock(lock);
+      }
+      logger.atWarning().log(
+          "Timed out after %d ms waiting for the checks ref lock of change %s in project %s,"
+              + " writing without the lock",
+          timeoutMillis, changeId, project);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.atWarning().log(
+          "Interrupted while waiting for the checks ref lock of change %s in project %s,"
+              + " writing without the lock",
+          changeId, project);
+    }
+    return new HeldLock(null);
+  }
+}
@@ -0,0 +1,218 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.db;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.AtomicLongMap;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.Histogram0;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer2;
+import com.google.gerrit.server.logging.PluginMetadata;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Metrics of the storage of checks in NoteDb. */
+@Singleton
+public class ChecksStorageMetrics {
+  /** Operation on the checks of a change. */
+  public enum Operation {
+    /** Reading checks. */
+    READ,
+
+    /** Creating a check. */
+    CREATE,
+
+    /** Updating a check. */
+    UPDATE,
+
+    /** Creating or updating a check without changing anything, hence nothing is written. */
+    NO_OP
+  }
+
+  /** Phase of an operation on the checks of a change. */
+  enum Phase {
+    /** Waiting for the in-process lock of the checks ref, see {@link ChecksRefLocks}. */
+    LOCK,
+
+    /** Reading the tree of the notes and, on writes, the checks ref. */
+    READ,
+
+    /** Reading and parsing the notes. */
+    PARSE,
+
+    /** Serializing the notes. */
+    SERIALIZE,
+
+    /** Inserting the notes, the tree and the commit into the repository. */
+    INSERT,
+
+    /** Updating the checks ref. */
+    REF_UPDATE
+  }
+
+  /**
+   * Accumulates the time that an operation spends in each of its phases.
+   *
+   * <p>Phases may be started while another phase is running. The time is then counted for the
+   * inner phase only, so that the times of all phases add up to the time of the operation.
+   *
+   * <p>Instances are not thread-safe.
+   */
+  static class PhaseTimings {
+    private final Map<Phase, Long> nanos = new EnumMap<>(Phase.class);
+    private final Deque<Phase> running = new ArrayDeque<>();
+    private long lastSwitchNanos;
+
+    /** Starts a phase, which ends when the returned timer is closed. */
+    PhaseTimer start(Phase phase) {
+      accountRunningPhase();
+      running.push(phase);
+      return () -> {
+        accountRunningPhase();
+        running.pop();
+      };
+    }
+
+    @VisibleForTesting
+    long getNanos(Phase phase) {
+      return nanos.getOrDefault(phase, 0L);
+    }
+
+    private void accountRunningPhase() {
+      long now = System.nanoTime();
+      if (!running.isEmpty()) {
+        nanos.merge(running.peek(), now - lastSwitchNanos, Long::sum);
+      }
+      lastSwitchNanos = now;
+    }
+  }
+
+  /** Timer of a phase. */
+  interface PhaseTimer extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  private final Timer2<Operation, Phase> phaseLatency;
+  // Retries and lock failures are also counted manually, since metric classes have no getters and
+  // the load tests check them.
+  private final Counter1<Operation> retries;
+  private final AtomicLongMap<Operation> retryCount;
+  private final Counter0 lockFailures;
+  private final AtomicLong lockFailureCount;
+  private final Histogram0 notesPerRef;
+  private final Histogram0 bytesPerNote;
+
+  @Inject
+  ChecksStorageMetrics(@PluginName String pluginName, MetricMaker metricMaker) {
+    Field<Operation> operationField =
+        Field.ofEnum(
+                Operation.class,
+                "operation",
+                (metadataBuilder, fieldValue) ->
+                    metadataBuilder
+                        .pluginName(pluginName)
+                        .addPluginMetadata(PluginMetadata.create("operation", fieldValue)))
+            .description("operation on the checks of a change")
+            .build();
+    phaseLatency =
+        metricMaker.newTimer(
+            "checks/storage_latency",
+            new Description("Latency of the phases of operations on the checks of a change")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS),
+            operationField,
+            Field.ofEnum(
+                    Phase.class,
+                    "phase",
+                    (metadataBuilder, fieldValue) ->
+                        metadataBuilder
+                            .pluginName(pluginName)
+                            .addPluginMetadata(PluginMetadata.create("phase", fieldValue)))
+                .description("phase of the operation")
+                .build());
+    retries =
+        metricMaker.newCounter(
+            "checks/storage_retries",
+            new Description("Number of retries of writes of checks").setRate().setUnit("retries"),
+            operationField);
+    retryCount = AtomicLongMap.create();
+    lockFailures =
+        metricMaker.newCounter(
+            "checks/storage_lock_failures",
+            new Description("Number of writes of checks that failed to lock the checks ref")
+                .setRate()
+                .setUnit("failures"));
+    lockFailureCount = new AtomicLong();
+    notesPerRef =
+        metricMaker.newHistogram(
+            "checks/notes_per_ref",
+            new Description("Number of notes in the checks ref of a change when it's written")
+                .setCumulative()
+                .setUnit("notes"));
+    bytesPerNote =
+        metricMaker.newHistogram(
+            "checks/bytes_per_note",
+            new Description("Size of the notes in the checks ref of a change when they're written")
+                .setCumulative()
+                .setUnit(Units.BYTES));
+  }
+
+  void recordOperation(Operation operation, PhaseTimings timings) {
+    timings.nanos.forEach(
+        (phase, nanos) -> phaseLatency.record(operation, phase, nanos, NANOSECONDS));
+  }
+
+  void recordRetry(Operation operation) {
+    retries.increment(operation);
+    retryCount.incrementAndGet(operation);
+  }
+
+  void recordLockFailure() {
+    lockFailures.increment();
+    lockFailureCount.incrementAndGet();
+  }
+
+  void recordNotes(int noteCount) {
+    notesPerRef.record(noteCount);
+  }
+
+  void recordNoteSize(int bytes) {
+    bytesPerNote.record(bytes);
+  }
+
+  @VisibleForTesting
+  public long getRetryCount(Operation operation) {
+    return retryCount.get(operation);
+  }
+
+  @VisibleForTesting
+  public long getLockFailureCount() {
+    return lockFailureCount.get();
+  }
+}
@@ -0,0 +1,81 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.db;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
+
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Reads the message blobs (see {@link NoteDbCheck#messageBlob}) of checks that were loaded
+ * together.
+ *
+ * <p>Blobs are registered when the checks are loaded, but only read when the first message is
+ * accessed. Then all registered blobs are read at once through a single repository and object
+ * reader, instead of opening the repository for each message.
+ */
+class MessageBlobReader {
+  private final GitRepositoryManager repoManager;
+  private final Project.NameKey project;
+  private final Set<ObjectId> unreadBlobIds = new LinkedHashSet<>();
+  private final Map<ObjectId, String> messages = new HashMap<>();
+
+  MessageBlobReader(GitRepositoryManager repoManager, Project.NameKey project) {
+    this.repoManager = repoManager;
+    this.project = project;
+  }
+
+  Project.NameKey project() {
+    return project;
+  }
+
+  synchronized void register(ObjectId blobId) {
+    if (!messages.containsKey(blobId)) {
+      unreadBlobIds.add(blobId);
+    }
+  }
+
+  synchronized String read(ObjectId blobId) {
+    String message = messages.get(blobId);
+    if (message != null) {
+      return message;
+    }
+
+    unreadBlobIds.add(blobId);
+    try (Repository repo = repoManager.openRepository(project);
+        ObjectReader reader = repo.newObjectReader()) {
+      for (ObjectId id : unreadBlobIds) {
+        messages.put(
+            id, new String(reader.open(id, OBJ_BLOB).getCachedBytes(Integer.MAX_VALUE), UTF_8));
+      }
+    } catch (IOException e) {
+      throw new StorageException(
+          String.format("cannot read message blob %s in %s", blobId.name(), project), e);
+    }
+    unreadBlobIds.clear();
+    return messages.get(blobId);
+  }
+}
@@ -1,5 +1,8 @@
 package com.google.gerrit.plugins.checks.db;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
+
 import com.google.common.base.Strings;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.PatchSet;
@@ -9,8 +12,11 @@ import com.google.gerrit.plugins.checks.CheckKey;
 import com.google.gerrit.plugins.checks.CheckUpdate;
 import com.google.gerrit.plugins.checks.CheckerUuid;
 import com.google.gerrit.plugins.checks.api.CheckState;
+import java.io.IOException;
 import java.sql.Timestamp;
 import java.time.Instant;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
 
 /** Representation of {@link Check} that can be serialized with GSON. */
 class NoteDbCheck {
@@ -19,6 +25,13 @@ class NoteDbCheck {
 
   public CheckState state = CheckState.NOT_STARTED;
   @Nullable public String message;
+
+  /**
+   * ID of the blob that contains the message, if the message is stored separately from the note
+   * because it's large. At most one of {@code message} and {@code messageBlob} is set.
+   */
+  @Nullable public String messageBlob;
+
   @Nullable public String url;
   @Nullable public Timestamp started;
   @Nullable public Timestamp finished;
@@ -26,11 +39,14 @@ class NoteDbCheck {
   public Timestamp created;
   public Timestamp updated;
 
-  Check toCheck(CheckKey key) {
+  Check toCheck(CheckKey key, MessageBlobReader messageBlobReader) {
     Check.Builder newCheck =
         Check.builder(key).setState(state).setCreated(created).setUpdated(updated);
     if (message != null) {
       newCheck.setMessage(message);
+    } else if (messageBlob != null) {
+      newCheck.setMessageSource(
+          new BlobCheckMessage(messageBlobReader, ObjectId.fromString(messageBlob)));
     }
     if (url != null) {
       newCheck.setUrl(url);
@@ -44,9 +60,13 @@ class NoteDbCheck {
     return newCheck.build();
   }
 
-  Check toCheck(Project.NameKey repositoryName, PatchSet.Id patchSetId, CheckerUuid checkerUuid) {
+  Check toCheck(
+      Project.NameKey repositoryName,
+      PatchSet.Id patchSetId,
+      CheckerUuid checkerUuid,
+      MessageBlobReader messageBlobReader) {
     CheckKey key = CheckKey.create(repositoryName, patchSetId, checkerUuid);
-    return toCheck(key);
+    return toCheck(key, messageBlobReader);
   }
 
   static NoteDbCheck createInitialNoteDbCheck(CheckUpdate checkUpdate) {
@@ -65,9 +85,9 @@ class NoteDbCheck {
       state = update.state().get();
       modified = true;
     }
-    if (update.message().isPresent()
-        && !update.message().get().equals(Strings.nullToEmpty(message))) {
+    if (update.message().isPresent() && !hasMessage(update.message().get())) {
       message = Strings.emptyToNull(update.message().get());
+      messageBlob = null;
       modified = true;
     }
     if (update.url().isPresent() && !update.url().get().equals(Strings.nullToEmpty(url))) {
@@ -92,4 +112,31 @@ class NoteDbCheck {
     }
     return modified;
   }
+
+  private boolean hasMessage(String otherMessage) {
+    if (messageBlob != null) {
+      // Blob IDs are content hashes, hence the message doesn't need to be loaded for comparing it.
+      return messageBlobId(otherMessage).name().equals(messageBlob);
+    }
+    return otherMessage.equals(Strings.nullToEmpty(message));
+  }
+
+  /**
+   * Moves the message into a separate blob if it's longer than the given threshold.
+   *
+   * @param threshold number of characters above which messages are stored separately, {@code 0} to
+   *     keep all messages in the note
+   * @param ins inserter for the blob
+   */
+  void storeLargeMessageSeparately(int threshold, ObjectInserter ins) throws IOException {
+    if (threshold <= 0 || message == null || message.length() <= threshold) {
+      return;
+    }
+    messageBlob = ins.insert(OBJ_BLOB, message.getBytes(UTF_8)).name();
+    message = null;
+  }
+
+  private static ObjectId messageBlobId(String message) {
+    return new ObjectInserter.Formatter().idFor(OBJ_BLOB, message.getBytes(UTF_8));
+  }
 }
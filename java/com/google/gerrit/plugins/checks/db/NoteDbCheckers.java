@@ -15,12 +15,17 @@
 package com.google.gerrit.plugins.checks.db;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Comparator.comparing;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Streams;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.plugins.checks.Checker;
 import com.google.gerrit.plugins.checks.CheckerRef;
@@ -31,6 +36,7 @@ import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Optional;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.lib.Ref;
@@ -60,6 +66,27 @@ class NoteDbCheckers implements Checkers {
     }
   }
 
+  @Override
+  public ImmutableMap<CheckerUuid, Checker> getCheckers(Collection<CheckerUuid> checkerUuids)
+      throws IOException {
+    if (checkerUuids.isEmpty()) {
+      return ImmutableMap.of();
+    }
+    try (Repository allProjectsRepo = repoManager.openRepository(allProjectsName)) {
+      ImmutableMap.Builder<CheckerUuid, Checker> checkers = ImmutableMap.builder();
+      for (CheckerUuid checkerUuid : ImmutableSet.copyOf(checkerUuids)) {
+        try {
+          CheckerConfig.loadForChecker(allProjectsName, allProjectsRepo, checkerUuid)
+              .getLoadedChecker()
+              .ifPresent(checker -> checkers.put(checkerUuid, checker));
+        } catch (ConfigInvalidException e) {
+          logger.atWarning().withCause(e).log("Ignore invalid checker %s", checkerUuid);
+        }
+      }
+      return checkers.build();
+    }
+  }
+
   @Override
   public ImmutableList<Checker> listCheckers() throws IOException {
     return listCheckers("");
@@ -113,4 +140,15 @@ class NoteDbCheckers implements Checkers {
       return checkers.build();
     }
   }
+
+  @Override
+  public String getETag() throws IOException {
+    try (Repository allProjectsRepo = repoManager.openRepository(allProjectsName)) {
+      Hasher h = Hashing.murmur3_128().newHasher();
+      for (Ref ref : allProjectsRepo.getRefDatabase().getRefsByPrefix(CheckerRef.REFS_CHECKERS)) {
+        h.putString(ref.getName(), UTF_8).putString(ref.getObjectId().name(), UTF_8);
+      }
+      return h.hash().toString();
+    }
+  }
 }
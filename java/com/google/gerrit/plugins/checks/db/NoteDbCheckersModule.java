@@ -33,6 +33,7 @@ public class NoteDbCheckersModule extends FactoryModule {
     factory(CheckNotes.Factory.class);
     factory(NoteDbCheckersUpdate.Factory.class);
     factory(NoteDbChecksUpdate.Factory.class);
+    install(CheckStatesCache.module());
   }
 
   @Provides
@@ -21,6 +21,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.PatchSet;
 import com.google.gerrit.entities.Project;
@@ -33,18 +35,16 @@ import com.google.gerrit.plugins.checks.CheckerRef;
 import com.google.gerrit.plugins.checks.CheckerUuid;
 import com.google.gerrit.plugins.checks.Checkers;
 import com.google.gerrit.plugins.checks.Checks;
-import com.google.gerrit.plugins.checks.api.CheckState;
 import com.google.gerrit.plugins.checks.api.CheckerStatus;
 import com.google.gerrit.plugins.checks.api.CombinedCheckState;
 import com.google.gerrit.plugins.checks.api.CombinedCheckState.CheckStateCount;
 import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.gerrit.server.query.change.ChangeData;
 import com.google.inject.Inject;
-import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Stream;
 import org.eclipse.jgit.lib.ObjectId;
@@ -59,8 +59,9 @@ class NoteDbChecks implements Checks {
   private final CheckNotes.Factory checkNotesFactory;
   private final Checkers checkers;
   private final CheckBackfiller checkBackfiller;
-  private final Provider<CheckerQuery> checkerQueryProvider;
+  private final CheckerQuery checkerQuery;
   private final GitRepositoryManager repoManager;
+  private final CheckStatesCache checkStatesCache;
 
   @Inject
   NoteDbChecks(
@@ -68,14 +69,16 @@ class NoteDbChecks implements Checks {
       CheckNotes.Factory checkNotesFactory,
       Checkers checkers,
       CheckBackfiller checkBackfiller,
-      Provider<CheckerQuery> checkerQueryProvider,
-      GitRepositoryManager repoManager) {
+      CheckerQuery checkerQuery,
+      GitRepositoryManager repoManager,
+      CheckStatesCache checkStatesCache) {
     this.changeDataFactory = changeDataFactory;
     this.checkNotesFactory = checkNotesFactory;
     this.checkers = checkers;
     this.checkBackfiller = checkBackfiller;
-    this.checkerQueryProvider = checkerQueryProvider;
+    this.checkerQuery = checkerQuery;
     this.repoManager = repoManager;
+    this.checkStatesCache = checkStatesCache;
   }
 
   @Override
@@ -85,6 +88,23 @@ class NoteDbChecks implements Checks {
     return getChecksFromNoteDb(projectName, psId, options);
   }
 
+  @Override
+  public ImmutableListMultimap<PatchSet.Id, Check> getChecks(
+      Project.NameKey projectName, Collection<PatchSet.Id> psIds, GetCheckOptions options)
+      throws IOException, StorageException {
+    ImmutableSortedSet<Checker> checkersOfProject =
+        options.backfillChecks() ? checkers.checkersOf(projectName) : ImmutableSortedSet.of();
+    // Share the reader, so that the message blobs of all patch sets are read at once.
+    MessageBlobReader messageBlobReader = new MessageBlobReader(repoManager, projectName);
+    ImmutableListMultimap.Builder<PatchSet.Id, Check> result = ImmutableListMultimap.builder();
+    for (PatchSet.Id psId : psIds) {
+      result.putAll(
+          psId,
+          getChecksFromNoteDb(projectName, psId, options, checkersOfProject, messageBlobReader));
+    }
+    return result.build();
+  }
+
   @Override
   public Optional<Check> getCheck(CheckKey checkKey, GetCheckOptions options)
       throws StorageException, IOException {
@@ -105,9 +125,30 @@ class NoteDbChecks implements Checks {
     return result;
   }
 
+  @Override
+  public ImmutableList<Check> getCheckStates(Project.NameKey projectName, PatchSet patchSet)
+      throws IOException, StorageException {
+    return checkStatesCache.getChecks(projectName, patchSet);
+  }
+
   private ImmutableList<Check> getChecksFromNoteDb(
       Project.NameKey repositoryName, PatchSet.Id psId, GetCheckOptions options)
       throws StorageException, IOException {
+    return getChecksFromNoteDb(
+        repositoryName,
+        psId,
+        options,
+        options.backfillChecks() ? checkers.checkersOf(repositoryName) : ImmutableSortedSet.of(),
+        new MessageBlobReader(repoManager, repositoryName));
+  }
+
+  private ImmutableList<Check> getChecksFromNoteDb(
+      Project.NameKey repositoryName,
+      PatchSet.Id psId,
+      GetCheckOptions options,
+      ImmutableSortedSet<Checker> checkersOfProject,
+      MessageBlobReader messageBlobReader)
+      throws StorageException, IOException {
     // TODO(gerrit-team): Instead of reading the complete notes map, read just one note.
     ChangeData changeData = changeDataFactory.create(repositoryName, psId.changeId());
     PatchSet patchSet = changeData.patchSet(psId);
@@ -121,7 +162,14 @@ class NoteDbChecks implements Checks {
     ImmutableList<Check> existingChecks =
         checkNotes.getChecks().getOrDefault(patchSet.commitId(), NoteDbCheckMap.empty()).checks
             .entrySet().stream()
-            .map(e -> e.getValue().toCheck(repositoryName, psId, CheckerUuid.parse(e.getKey())))
+            .map(
+                e ->
+                    e.getValue()
+                        .toCheck(
+                            repositoryName,
+                            psId,
+                            CheckerUuid.parse(e.getKey()),
+                            messageBlobReader))
             .collect(toImmutableList());
 
     if (!options.backfillChecks()) {
@@ -129,7 +177,7 @@ class NoteDbChecks implements Checks {
     }
 
     ImmutableList<Checker> checkersForBackfiller =
-        getCheckersForBackfiller(repositoryName, existingChecks);
+        getCheckersForBackfiller(checkersOfProject, existingChecks);
     ImmutableList<Check> backfilledChecks =
         checkBackfiller.getBackfilledChecksForRelevantCheckers(
             checkersForBackfiller, changeData, psId);
@@ -141,17 +189,13 @@ class NoteDbChecks implements Checks {
   @Override
   public CombinedCheckState getCombinedCheckState(
       Project.NameKey projectName, PatchSet.Id patchSetId) throws IOException, StorageException {
-    ImmutableListMultimap<CheckState, Boolean> statesAndRequired =
-        getStatesAndRequiredMap(projectName, patchSetId);
-    return CombinedCheckState.combine(statesAndRequired);
+    return CombinedCheckState.combine(getCheckStateCount(projectName, patchSetId));
   }
 
   @Override
   public boolean areAllRequiredCheckersPassing(Project.NameKey projectName, PatchSet.Id patchSetId)
       throws IOException, StorageException {
-    ImmutableListMultimap<CheckState, Boolean> statesAndRequired =
-        getStatesAndRequiredMap(projectName, patchSetId);
-    CheckStateCount checkStateCount = CheckStateCount.create(statesAndRequired);
+    CheckStateCount checkStateCount = getCheckStateCount(projectName, patchSetId);
     return checkStateCount.failedRequiredCount() == 0
         && checkStateCount.inProgressRequiredCount() == 0;
   }
@@ -172,53 +216,42 @@ class NoteDbChecks implements Checks {
     }
   }
 
-  private ImmutableListMultimap<CheckState, Boolean> getStatesAndRequiredMap(
-      Project.NameKey projectName, PatchSet.Id patchSetId) throws IOException, StorageException {
-    ImmutableMap<String, Checker> allCheckersOfProject =
-        checkers.checkersOf(projectName).stream()
-            .collect(ImmutableMap.toImmutableMap(c -> c.getUuid().get(), c -> c));
+  private CheckStateCount getCheckStateCount(Project.NameKey projectName, PatchSet.Id patchSetId)
+      throws IOException, StorageException {
+    ImmutableMap<CheckerUuid, Checker> allCheckersOfProject =
+        Maps.uniqueIndex(checkers.checkersOf(projectName), Checker::getUuid);
 
     // Always backfilling checks to have a meaningful "CombinedCheckState" even when there are some
     // or all checks missing.
-    ImmutableMap<String, Check> checks =
-        getChecks(projectName, patchSetId, GetCheckOptions.withBackfilling()).stream()
-            .collect(ImmutableMap.toImmutableMap(c -> c.key().checkerUuid().get(), c -> c));
-
-    ImmutableListMultimap.Builder<CheckState, Boolean> statesAndRequired =
-        ImmutableListMultimap.builder();
-
-    for (Map.Entry<String, Check> entry : checks.entrySet()) {
-      String checkerUuid = entry.getKey();
-      Check check = entry.getValue();
-
-      Checker checker = allCheckersOfProject.get(checkerUuid);
-      if (checker == null) {
-        // A not-relevant check.
-        statesAndRequired.put(check.state(), false);
-        continue;
-      }
-
-      boolean isRequired = isRequiredForSubmit(checker, patchSetId.changeId());
-      statesAndRequired.put(check.state(), isRequired);
+    CheckStateCount.Accumulator checkStateCount = CheckStateCount.accumulator();
+    for (Check check : getChecks(projectName, patchSetId, GetCheckOptions.withBackfilling())) {
+      Checker checker = allCheckersOfProject.get(check.key().checkerUuid());
+      // A check without checker is a not-relevant check.
+      checkStateCount.add(
+          check.state(),
+          checker != null && isRequiredForSubmit(checker, patchSetId.changeId()));
     }
-
-    return statesAndRequired.build();
+    return checkStateCount.build();
   }
 
   @Override
   public boolean isRequiredForSubmit(Checker checker, Change.Id changeId) {
-    ChangeData changeData = changeDataFactory.create(checker.getRepository(), changeId);
+    return isRequiredForSubmit(
+        checker, changeDataFactory.create(checker.getRepository(), changeId));
+  }
 
+  @Override
+  public boolean isRequiredForSubmit(Checker checker, ChangeData changeData) {
     return checker.getStatus() == CheckerStatus.ENABLED
         && checker.isRequired()
-        && checkerQueryProvider.get().isCheckerRelevant(checker, changeData);
+        && checkerQuery.isCheckerRelevant(checker, changeData);
   }
 
-  private ImmutableList<Checker> getCheckersForBackfiller(
-      Project.NameKey projectName, List<Check> existingChecks) throws IOException {
+  private static ImmutableList<Checker> getCheckersForBackfiller(
+      ImmutableSortedSet<Checker> checkersOfProject, List<Check> existingChecks) {
     ImmutableSet<CheckerUuid> checkersWithExistingChecks =
         existingChecks.stream().map(c -> c.key().checkerUuid()).collect(toImmutableSet());
-    return checkers.checkersOf(projectName).stream()
+    return checkersOfProject.stream()
         .filter(c -> !checkersWithExistingChecks.contains(c.getUuid()))
         .collect(toImmutableList());
   }
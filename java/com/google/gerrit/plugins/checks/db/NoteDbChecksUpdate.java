@@ -20,9 +20,12 @@ import static com.google.gerrit.server.update.context.RefUpdateContext.RefUpdate
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Maps;
 import com.google.gerrit.exceptions.DuplicateKeyException;
+import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.git.RefUpdateUtil;
 import com.google.gerrit.plugins.checks.Check;
 import com.google.gerrit.plugins.checks.CheckKey;
@@ -32,10 +35,15 @@ import com.google.gerrit.plugins.checks.CheckerUuid;
 import com.google.gerrit.plugins.checks.Checkers;
 import com.google.gerrit.plugins.checks.ChecksStorageUpdate;
 import com.google.gerrit.plugins.checks.CombinedCheckStateCache;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.Phase;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.PhaseTimer;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.PhaseTimings;
 import com.google.gerrit.server.GerritPersonIdent;
 import com.google.gerrit.server.IdentifiedUser;
+import com.google.gerrit.server.config.PluginConfigFactory;
 import com.google.gerrit.server.extensions.events.GitReferenceUpdated;
 import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.notedb.ChangeNoteJson;
 import com.google.gerrit.server.notedb.ChangeNoteUtil;
 import com.google.gerrit.server.update.RetryHelper;
 import com.google.gerrit.server.update.context.RefUpdateContext;
@@ -46,17 +54,23 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.sql.Timestamp;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
 import org.eclipse.jgit.notes.NoteMap;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
 
 public class NoteDbChecksUpdate implements ChecksStorageUpdate {
   interface Factory {
@@ -65,6 +79,9 @@ public class NoteDbChecksUpdate implements ChecksStorageUpdate {
     NoteDbChecksUpdate createWithServerIdent();
   }
 
+  /** Name of the tree that holds the blobs of messages that are stored separately. */
+  private static final String MESSAGES_TREE = "messages";
+
   private enum Operation {
     CREATE,
     UPDATE
@@ -78,6 +95,10 @@ public class NoteDbChecksUpdate implements ChecksStorageUpdate {
   private final Optional<IdentifiedUser> currentUser;
   private final Checkers checkers;
   private final CombinedCheckStateCache combinedCheckStateCache;
+  private final CheckStatesCache checkStatesCache;
+  private final ChecksStorageMetrics metrics;
+  private final ChecksRefLocks checksRefLocks;
+  private final int messageBlobThreshold;
 
   @AssistedInject
   NoteDbChecksUpdate(
@@ -87,6 +108,11 @@ public class NoteDbChecksUpdate implements ChecksStorageUpdate {
       ChangeNoteUtil noteUtil,
       Checkers checkers,
       CombinedCheckStateCache combinedCheckStateCache,
+      CheckStatesCache checkStatesCache,
+      ChecksStorageMetrics metrics,
+      ChecksRefLocks checksRefLocks,
+      PluginConfigFactory pluginConfigFactory,
+      @PluginName String pluginName,
       @GerritPersonIdent PersonIdent personIdent) {
     this(
         repoManager,
@@ -95,6 +121,11 @@ public class NoteDbChecksUpdate implements ChecksStorageUpdate {
         noteUtil,
         checkers,
         combinedCheckStateCache,
+        checkStatesCache,
+        metrics,
+        checksRefLocks,
+        pluginConfigFactory,
+        pluginName,
         personIdent,
         Optional.empty());
   }
@@ -107,6 +138,11 @@ public class NoteDbChecksUpdate implements ChecksStorageUpdate {
       ChangeNoteUtil noteUtil,
       Checkers checkers,
       CombinedCheckStateCache combinedCheckStateCache,
+      CheckStatesCache checkStatesCache,
+      ChecksStorageMetrics metrics,
+      ChecksRefLocks checksRefLocks,
+      PluginConfigFactory pluginConfigFactory,
+      @PluginName String pluginName,
       @GerritPersonIdent PersonIdent personIdent,
       @Assisted IdentifiedUser currentUser) {
     this(
@@ -116,6 +152,11 @@ public class NoteDbChecksUpdate implements ChecksStorageUpdate {
         noteUtil,
         checkers,
         combinedCheckStateCache,
+        checkStatesCache,
+        metrics,
+        checksRefLocks,
+        pluginConfigFactory,
+        pluginName,
         personIdent,
         Optional.of(currentUser));
   }
@@ -127,6 +168,11 @@ public class NoteDbChecksUpdate implements ChecksStorageUpdate {
       ChangeNoteUtil noteUtil,
       Checkers checkers,
       CombinedCheckStateCache combinedCheckStateCache,
+      CheckStatesCache checkStatesCache,
+      ChecksStorageMetrics metrics,
+      ChecksRefLocks checksRefLocks,
+      PluginConfigFactory pluginConfigFactory,
+      String pluginName,
       @GerritPersonIdent PersonIdent personIdent,
       Optional<IdentifiedUser> currentUser) {
     this.repoManager = repoManager;
@@ -137,15 +183,27 @@ public class NoteDbChecksUpdate implements ChecksStorageUpdate {
     this.currentUser = currentUser;
     this.personIdent = personIdent;
     this.combinedCheckStateCache = combinedCheckStateCache;
+    this.checkStatesCache = checkStatesCache;
+    this.metrics = metrics;
+    this.checksRefLocks = checksRefLocks;
+    this.messageBlobThreshold =
+        pluginConfigFactory.getFromGerritConfig(pluginName).getInt("messageBlobThreshold", 0);
   }
 
   @Override
   public Check createCheck(CheckKey checkKey, CheckUpdate checkUpdate)
       throws DuplicateKeyException, IOException {
+    AtomicBoolean retry = new AtomicBoolean();
     try {
       return retryHelper
           .pluginUpdate(
-              "createCheck", () -> upsertCheckInNoteDb(checkKey, checkUpdate, Operation.CREATE))
+              "createCheck",
+              () -> {
+                if (retry.getAndSet(true)) {
+                  metrics.recordRetry(ChecksStorageMetrics.Operation.CREATE);
+                }
+                return upsertCheckInNoteDb(checkKey, checkUpdate, Operation.CREATE);
+              })
           .call();
     } catch (Exception e) {
       Throwables.throwIfUnchecked(e);
@@ -157,10 +215,17 @@ public class NoteDbChecksUpdate implements ChecksStorageUpdate {
 
   @Override
   public Check updateCheck(CheckKey checkKey, CheckUpdate checkUpdate) throws IOException {
+    AtomicBoolean retry = new AtomicBoolean();
     try {
       return retryHelper
           .pluginUpdate(
-              "updateCheck", () -> upsertCheckInNoteDb(checkKey, checkUpdate, Operation.UPDATE))
+              "updateCheck",
+              () -> {
+                if (retry.getAndSet(true)) {
+                  metrics.recordRetry(ChecksStorageMetrics.Operation.UPDATE);
+                }
+                return upsertCheckInNoteDb(checkKey, checkUpdate, Operation.UPDATE);
+              })
           .call();
     } catch (Exception e) {
       Throwables.throwIfUnchecked(e);
@@ -176,10 +241,19 @@ public class NoteDbChecksUpdate implements ChecksStorageUpdate {
     }
     try (RefUpdateContext pluginCtx = RefUpdateContext.open(PLUGIN)) {
       try (RefUpdateContext ctx = RefUpdateContext.open(CHANGE_MODIFICATION)) {
+        PhaseTimings timings = new PhaseTimings();
         try (Repository repo = repoManager.openRepository(checkKey.repository());
             ObjectInserter objectInserter = repo.newObjectInserter();
-            RevWalk rw = new RevWalk(repo)) {
-          Ref checkRef = repo.getRefDatabase().exactRef(checksRef(checkKey.patchSet().changeId()));
+            RevWalk rw = new RevWalk(repo);
+            // Queue up behind other writers of this change on this server, rather than failing
+            // the ref update below and retrying.
+            ChecksRefLocks.HeldLock lock =
+                checksRefLocks.lock(
+                    checkKey.repository(), checkKey.patchSet().changeId(), timings)) {
+          Ref checkRef;
+          try (PhaseTimer timer = timings.start(Phase.READ)) {
+            checkRef = repo.getRefDatabase().exactRef(checksRef(checkKey.patchSet().changeId()));
+          }
           ObjectId parent = checkRef == null ? ObjectId.zeroId() : checkRef.getObjectId();
           CommitBuilder cb;
           String message;
@@ -191,16 +265,22 @@ public class NoteDbChecksUpdate implements ChecksStorageUpdate {
             cb = commitBuilder(message, parent);
           }
 
+          // Read a fresh copy of the notes map
+          Map<ObjectId, NoteDbCheckMap> notes = getRevisionNoteByCommitId(rw, parent, timings);
           boolean dirty =
               updateNotesMap(
-                  checkKey, checkUpdate, repo, rw, objectInserter, parent, cb, operation);
+                  checkKey, checkUpdate, repo, objectInserter, notes, cb, operation, timings);
           if (!dirty) {
             // This update is a NoOp, so omit writing a commit with the same tree.
+            metrics.recordOperation(ChecksStorageMetrics.Operation.NO_OP, timings);
             return readSingleCheck(checkKey, repo, rw, checkRef.getObjectId());
           }
 
-          ObjectId newCommitId = objectInserter.insert(cb);
-          objectInserter.flush();
+          ObjectId newCommitId;
+          try (PhaseTimer timer = timings.start(Phase.INSERT)) {
+            newCommitId = objectInserter.insert(cb);
+            objectInserter.flush();
+          }
 
           String refName = CheckerRef.checksRef(checkKey.patchSet().changeId());
           RefUpdate refUpdate = repo.updateRef(refName);
@@ -208,9 +288,21 @@ public class NoteDbChecksUpdate implements ChecksStorageUpdate {
           refUpdate.setNewObjectId(newCommitId);
           refUpdate.setRefLogIdent(personIdent);
           refUpdate.setRefLogMessage(message, false);
-          refUpdate.update();
+          try (PhaseTimer timer = timings.start(Phase.REF_UPDATE)) {
+            if (refUpdate.update() == RefUpdate.Result.LOCK_FAILURE) {
+              metrics.recordLockFailure();
+            }
+          }
           RefUpdateUtil.checkResult(refUpdate);
-
+          lock.close();
+          metrics.recordOperation(
+              operation == Operation.CREATE
+                  ? ChecksStorageMetrics.Operation.CREATE
+                  : ChecksStorageMetrics.Operation.UPDATE,
+              timings);
+
+          checkStatesCache.put(
+              checkKey.repository(), checkKey.patchSet().changeId(), newCommitId, notes);
           combinedCheckStateCache.updateIfNecessary(checkKey.repository(), checkKey.patchSet());
           gitRefUpdated.fire(
               checkKey.repository(), refUpdate, currentUser.map(user -> user.state()).orElse(null));
@@ -231,20 +323,18 @@ public class NoteDbChecksUpdate implements ChecksStorageUpdate {
       CheckKey checkKey,
       CheckUpdate checkUpdate,
       Repository repo,
-      RevWalk rw,
       ObjectInserter ins,
-      ObjectId curr,
+      Map<ObjectId, NoteDbCheckMap> newNotes,
       CommitBuilder cb,
-      Operation operation)
-      throws ConfigInvalidException, IOException, DuplicateKeyException {
+      Operation operation,
+      PhaseTimings timings)
+      throws IOException, DuplicateKeyException {
     Ref patchSetRef = repo.exactRef(checkKey.patchSet().toRefName());
     if (patchSetRef == null) {
       throw new IOException(String.format("patchset %s not found", checkKey.patchSet()));
     }
     ObjectId commitId = patchSetRef.getObjectId();
 
-    // Read a fresh copy of the notes map
-    Map<ObjectId, NoteDbCheckMap> newNotes = getRevisionNoteByCommitId(rw, curr);
     if (!newNotes.containsKey(commitId)) {
       if (operation == Operation.UPDATE) {
         throw new IOException(String.format("checker %s not found", checkKey.checkerUuid()));
@@ -261,10 +351,11 @@ public class NoteDbChecksUpdate implements ChecksStorageUpdate {
 
       // Create check
       NoteDbCheck newCheck = NoteDbCheck.createInitialNoteDbCheck(checkUpdate);
+      newCheck.storeLargeMessageSeparately(messageBlobThreshold, ins);
       newCheck.created = Timestamp.from(personIdent.getWhen().toInstant());
       newCheck.updated = newCheck.created;
       checksForRevision.checks.put(checkKey.checkerUuid().get(), newCheck);
-      writeNotesMap(newNotes, cb, ins);
+      writeNotesMap(noteUtil.getChangeNoteJson(), metrics, newNotes, cb, ins, timings);
       return true;
     } else if (operation == Operation.CREATE) {
       throw new DuplicateKeyException(
@@ -278,29 +369,86 @@ public class NoteDbChecksUpdate implements ChecksStorageUpdate {
       return false;
     }
     modifiedCheck.updated = Timestamp.from(personIdent.getWhen().toInstant());
+    modifiedCheck.storeLargeMessageSeparately(messageBlobThreshold, ins);
 
-    writeNotesMap(newNotes, cb, ins);
+    writeNotesMap(noteUtil.getChangeNoteJson(), metrics, newNotes, cb, ins, timings);
     return true;
   }
 
-  private void writeNotesMap(
-      Map<ObjectId, NoteDbCheckMap> notesMap, CommitBuilder cb, ObjectInserter ins)
+  @VisibleForTesting
+  static void writeNotesMap(
+      ChangeNoteJson changeNoteJson,
+      ChecksStorageMetrics metrics,
+      Map<ObjectId, NoteDbCheckMap> notesMap,
+      CommitBuilder cb,
+      ObjectInserter ins,
+      PhaseTimings timings)
       throws IOException {
     CheckRevisionNoteMap output = CheckRevisionNoteMap.emptyMap();
+    ImmutableSortedSet.Builder<String> messageBlobs = ImmutableSortedSet.naturalOrder();
+    int noteCount = 0;
     for (Map.Entry<ObjectId, NoteDbCheckMap> e : notesMap.entrySet()) {
       ObjectId id = e.getKey();
-      byte[] data = toData(e.getValue());
+      byte[] data;
+      try (PhaseTimer timer = timings.start(Phase.SERIALIZE)) {
+        data = toData(changeNoteJson, e.getValue());
+      }
       if (data.length != 0) {
-        ObjectId dataBlob = ins.insert(OBJ_BLOB, data);
-        output.noteMap.set(id, dataBlob);
+        try (PhaseTimer timer = timings.start(Phase.INSERT)) {
+          ObjectId dataBlob = ins.insert(OBJ_BLOB, data);
+          output.noteMap.set(id, dataBlob);
+        }
+        metrics.recordNoteSize(data.length);
+        noteCount++;
+      }
+      e.getValue().checks.values().stream()
+          .map(c -> c.messageBlob)
+          .filter(Objects::nonNull)
+          .forEach(messageBlobs::add);
+    }
+    metrics.recordNotes(noteCount);
+    try (PhaseTimer timer = timings.start(Phase.INSERT)) {
+      cb.setTreeId(addMessageBlobs(output.noteMap.writeTree(ins), messageBlobs.build(), ins));
+    }
+  }
+
+  /**
+   * Adds the blobs of messages that are stored separately from the notes to the tree of the notes,
+   * so that they are reachable from the checks ref. Note maps ignore the extra entry.
+   */
+  private static ObjectId addMessageBlobs(
+      ObjectId notesTreeId, ImmutableSortedSet<String> messageBlobs, ObjectInserter ins)
+      throws IOException {
+    if (messageBlobs.isEmpty()) {
+      return notesTreeId;
+    }
+
+    TreeFormatter messagesTree = new TreeFormatter();
+    for (String messageBlob : messageBlobs) {
+      messagesTree.append(messageBlob, FileMode.REGULAR_FILE, ObjectId.fromString(messageBlob));
+    }
+
+    // Note trees only contain hex names, which all sort before the name of the messages tree.
+    TreeFormatter tree = new TreeFormatter();
+    try (ObjectReader reader = ins.newReader();
+        TreeWalk tw = new TreeWalk(reader)) {
+      tw.addTree(notesTreeId);
+      while (tw.next()) {
+        tree.append(tw.getNameString(), tw.getFileMode(0), tw.getObjectId(0));
       }
     }
-    cb.setTreeId(output.noteMap.writeTree(ins));
+    tree.append(MESSAGES_TREE, FileMode.TREE, ins.insert(messagesTree));
+    return ins.insert(tree);
   }
 
   private Map<ObjectId, NoteDbCheckMap> getRevisionNoteByCommitId(RevWalk rw, ObjectId curr)
       throws ConfigInvalidException, IOException {
-    CheckRevisionNoteMap existingNotes = getRevisionNoteMap(rw, curr);
+    return getRevisionNoteByCommitId(rw, curr, new PhaseTimings());
+  }
+
+  private Map<ObjectId, NoteDbCheckMap> getRevisionNoteByCommitId(
+      RevWalk rw, ObjectId curr, PhaseTimings timings) throws ConfigInvalidException, IOException {
+    CheckRevisionNoteMap existingNotes = getRevisionNoteMap(rw, curr, timings);
 
     // Generate a list with all current checks keyed by patch set
     Map<ObjectId, NoteDbCheckMap> newNotes =
@@ -311,29 +459,30 @@ public class NoteDbChecksUpdate implements ChecksStorageUpdate {
     return newNotes;
   }
 
-  private CheckRevisionNoteMap getRevisionNoteMap(RevWalk rw, ObjectId curr)
+  private CheckRevisionNoteMap getRevisionNoteMap(RevWalk rw, ObjectId curr, PhaseTimings timings)
       throws ConfigInvalidException, IOException {
     if (curr.equals(ObjectId.zeroId())) {
       return CheckRevisionNoteMap.emptyMap();
     }
     NoteMap noteMap;
-    if (!curr.equals(ObjectId.zeroId())) {
+    try (PhaseTimer timer = timings.start(Phase.READ)) {
       noteMap = NoteMap.read(rw.getObjectReader(), rw.parseCommit(curr));
-    } else {
-      noteMap = NoteMap.newEmptyMap();
     }
-    return CheckRevisionNoteMap.parseChecks(
-        noteUtil.getChangeNoteJson(), rw.getObjectReader(), noteMap);
+    try (PhaseTimer timer = timings.start(Phase.PARSE)) {
+      return CheckRevisionNoteMap.parseChecks(
+          noteUtil.getChangeNoteJson(), rw.getObjectReader(), noteMap);
+    }
   }
 
-  private byte[] toData(NoteDbCheckMap map) throws IOException {
+  @VisibleForTesting
+  static byte[] toData(ChangeNoteJson changeNoteJson, NoteDbCheckMap map) throws IOException {
     if (map.checks.isEmpty()) {
       return new byte[0];
     }
 
     ByteArrayOutputStream out = new ByteArrayOutputStream();
     try (OutputStreamWriter osw = new OutputStreamWriter(out, UTF_8)) {
-      noteUtil.getChangeNoteJson().getGson().toJson(map, osw);
+      changeNoteJson.getGson().toJson(map, osw);
     }
     return out.toByteArray();
   }
@@ -365,6 +514,8 @@ public class NoteDbChecksUpdate implements ChecksStorageUpdate {
     if (!checks.containsKey(checkerUuidString)) {
       throw new IllegalStateException("checker " + checkerUuidString + " not found");
     }
-    return checks.get(checkerUuidString).toCheck(checkKey);
+    return checks
+        .get(checkerUuidString)
+        .toCheck(checkKey, new MessageBlobReader(repoManager, checkKey.repository()));
   }
 }
@@ -0,0 +1,176 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.db;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.util.Optional;
+
+/**
+ * Read-only view of a note whose lines are sorted, e.g. a checker list of {@link
+ * CheckersByRepositoryNotes}.
+ *
+ * <p>The view only records where the lines start, so that a line can be looked up by binary search
+ * and added or removed by splicing the raw note, without decoding the note into strings.
+ *
+ * <p>A note can only be viewed if its lines are ASCII and strictly sorted, because only then the
+ * byte order of the lines matches the natural order of the decoded strings. Notes that were written
+ * by {@link CheckersByRepositoryNotes} always satisfy this.
+ */
+final class SortedNoteLines {
+  private static final byte NEWLINE = '\n';
+
+  /**
+   * Creates a view of a note.
+   *
+   * @param raw the raw note, lines are separated by {@code '\n'}
+   * @return the view of the note, empty if the note contains non-ASCII characters or if its lines
+   *     are not strictly sorted
+   */
+  static Optional<SortedNoteLines> tryParse(byte[] raw) {
+    int lineCount = 1;
+    for (byte b : raw) {
+      if (b < 0) {
+        return Optional.empty();
+      }
+      if (b == NEWLINE) {
+        lineCount++;
+      }
+    }
+
+    int[] lineStarts = new int[lineCount];
+    for (int i = 0, line = 1; i < raw.length; i++) {
+      if (raw[i] == NEWLINE) {
+        lineStarts[line++] = i + 1;
+      }
+    }
+
+    SortedNoteLines lines = new SortedNoteLines(raw, lineStarts);
+    for (int i = 1; i < lineCount; i++) {
+      if (lines.compare(i - 1, raw, lineStarts[i], lines.end(i)) >= 0) {
+        return Optional.empty();
+      }
+    }
+    return Optional.of(lines);
+  }
+
+  private final byte[] raw;
+  private final int[] lineStarts;
+
+  private SortedNoteLines(byte[] raw, int[] lineStarts) {
+    this.raw = raw;
+    this.lineStarts = lineStarts;
+  }
+
+  /** Returns the number of lines. */
+  int size() {
+    return lineStarts.length;
+  }
+
+  /** Returns the line with the given index. */
+  String get(int index) {
+    return new String(raw, lineStarts[index], end(index) - lineStarts[index], US_ASCII);
+  }
+
+  /**
+   * Searches for a line.
+   *
+   * @param line the line to search for, must not contain {@code '\n'}
+   * @return the index of the line if it is contained, otherwise {@code (-(insertion point) - 1)}
+   *     like {@link java.util.Arrays#binarySearch(int[], int)}
+   */
+  int indexOf(byte[] line) {
+    int low = 0;
+    int high = lineStarts.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int c = compare(mid, line, 0, line.length);
+      if (c < 0) {
+        low = mid + 1;
+      } else if (c > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  /**
+   * Returns the raw note with a line inserted.
+   *
+   * @param insertionPoint the index at which the line should be inserted, as returned by {@link
+   *     #indexOf(byte[])}
+   * @param line the line to insert, must not contain {@code '\n'}
+   */
+  byte[] insert(int insertionPoint, byte[] line) {
+    byte[] result = new byte[raw.length + line.length + 1];
+    if (insertionPoint < lineStarts.length) {
+      int start = lineStarts[insertionPoint];
+      System.arraycopy(raw, 0, result, 0, start);
+      System.arraycopy(line, 0, result, start, line.length);
+      result[start + line.length] = NEWLINE;
+      System.arraycopy(raw, start, result, start + line.length + 1, raw.length - start);
+    } else {
+      System.arraycopy(raw, 0, result, 0, raw.length);
+      result[raw.length] = NEWLINE;
+      System.arraycopy(line, 0, result, raw.length + 1, line.length);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the raw note with a line removed.
+   *
+   * <p>Must not be called if the note has only a single line.
+   *
+   * @param index the index of the line that should be removed
+   */
+  byte[] remove(int index) {
+    // Remove the line together with the newline that separates it from the next line, or for the
+    // last line from the previous line.
+    int start;
+    int end;
+    if (index < lineStarts.length - 1) {
+      start = lineStarts[index];
+      end = lineStarts[index + 1];
+    } else {
+      start = lineStarts[index] - 1;
+      end = raw.length;
+    }
+    byte[] result = new byte[raw.length - (end - start)];
+    System.arraycopy(raw, 0, result, 0, start);
+    System.arraycopy(raw, end, result, start, raw.length - end);
+    return result;
+  }
+
+  private int end(int index) {
+    return index + 1 < lineStarts.length ? lineStarts[index + 1] - 1 : raw.length;
+  }
+
+  private int compare(int index, byte[] other, int otherStart, int otherEnd) {
+    int start = lineStarts[index];
+    int end = end(index);
+    int length = Math.min(end - start, otherEnd - otherStart);
+    for (int i = 0; i < length; i++) {
+      // Bytes are ASCII, hence they can be compared as signed values.
+      int c = raw[start + i] - other[otherStart + i];
+      if (c != 0) {
+        return c;
+      }
+    }
+    return (end - start) - (otherEnd - otherStart);
+  }
+}
@@ -18,6 +18,7 @@ import static com.google.inject.Scopes.SINGLETON;
 
 import com.google.gerrit.extensions.config.FactoryModule;
 import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.lifecycle.LifecycleModule;
 import com.google.gerrit.server.mail.send.MailSoyTemplateProvider;
 
 public class ChecksEmailModule extends FactoryModule {
@@ -26,5 +27,12 @@ public class ChecksEmailModule extends FactoryModule {
     DynamicSet.bind(binder(), MailSoyTemplateProvider.class)
         .to(ChecksMailSoyTemplateProvider.class)
         .in(SINGLETON);
+    install(
+        new LifecycleModule() {
+          @Override
+          protected void configure() {
+            listener().to(CombinedCheckStateUpdatedEmailSender.class);
+          }
+        });
   }
 }
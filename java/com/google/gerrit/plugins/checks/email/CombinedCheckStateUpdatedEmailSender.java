@@ -0,0 +1,429 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.email;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
+import com.google.gerrit.plugins.checks.Check;
+import com.google.gerrit.plugins.checks.CheckKey;
+import com.google.gerrit.plugins.checks.Checker;
+import com.google.gerrit.plugins.checks.CheckerUuid;
+import com.google.gerrit.plugins.checks.Checkers;
+import com.google.gerrit.plugins.checks.Checks;
+import com.google.gerrit.plugins.checks.Checks.GetCheckOptions;
+import com.google.gerrit.plugins.checks.api.CombinedCheckState;
+import com.google.gerrit.server.PatchSetUtil;
+import com.google.gerrit.server.change.NotifyResolver;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.mail.EmailFactories;
+import com.google.gerrit.server.mail.send.ChangeEmail;
+import com.google.gerrit.server.mail.send.MessageIdGenerator;
+import com.google.gerrit.server.mail.send.OutgoingEmail;
+import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.gerrit.server.util.ManualRequestContext;
+import com.google.gerrit.server.util.OneOffRequestContext;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+
+/**
+ * Sends emails about updates of the combined check state of a change.
+ *
+ * <p>Emails are rendered and sent on a background work queue so that posting a check doesn't wait
+ * for loading all checks of the patch set, rendering the templates and talking to the SMTP server.
+ * The number of queued emails is bounded; if the limit is reached, further emails are dropped and
+ * counted.
+ *
+ * <p>Optionally, emails are debounced per patch set ({@code plugin.checks.emailDebounceWindow}), so
+ * that checks which flap through several combined check states within a short time trigger a single
+ * email about the net transition.
+ *
+ * <p>The updated check, the old and the new combined check state, the recipients and the sender are
+ * captured when the check is written, so that the email describes the update that triggered it even
+ * if further checks are posted before the email is sent. The other checks of the patch set that are
+ * listed in the email are read when the email is rendered.
+ */
+@Singleton
+public class CombinedCheckStateUpdatedEmailSender implements LifecycleListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final int DEFAULT_THREADS = 1;
+  private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+  @Singleton
+  static class Metrics {
+    private final MetricMaker metricMaker;
+    private final Timer0 sendLatency;
+    private final Counter0 droppedCount;
+    private final Counter0 coalescedCount;
+
+    @Inject
+    Metrics(MetricMaker metricMaker) {
+      this.metricMaker = metricMaker;
+      sendLatency =
+          metricMaker.newTimer(
+              "checks/combined_check_state_email_send_latency",
+              new Description(
+                      "Latency for rendering and sending an email about an update of the combined"
+                          + " check state")
+                  .setCumulative()
+                  .setUnit(Units.MILLISECONDS));
+      droppedCount =
+          metricMaker.newCounter(
+              "checks/combined_check_state_emails_dropped",
+              new Description(
+                      "Number of emails about an update of the combined check state that were"
+                          + " dropped because the queue was full")
+                  .setRate()
+                  .setUnit("emails"));
+      coalescedCount =
+          metricMaker.newCounter(
+              "checks/combined_check_state_emails_coalesced",
+              new Description(
+                      "Number of updates of the combined check state that were coalesced into"
+                          + " an email for an earlier update")
+                  .setRate()
+                  .setUnit("updates"));
+    }
+
+    void registerQueueDepth(AtomicInteger queuedEmails) {
+      metricMaker.newCallbackMetric(
+          "checks/combined_check_state_email_queue_depth",
+          Integer.class,
+          new Description("Number of emails about an update of the combined check state queued")
+              .setGauge()
+              .setUnit("emails"),
+          queuedEmails::get);
+    }
+  }
+
+  /** Update of the combined check state of a patch set, captured when the check is written. */
+  @AutoValue
+  abstract static class Update {
+    static Update create(
+        Check check,
+        CombinedCheckState oldCombinedCheckState,
+        CombinedCheckState newCombinedCheckState,
+        NotifyResolver.Result notify,
+        Optional<Account.Id> from) {
+      return new AutoValue_CombinedCheckStateUpdatedEmailSender_Update(
+          check, oldCombinedCheckState, newCombinedCheckState, notify, from);
+    }
+
+    abstract Check check();
+
+    abstract CombinedCheckState oldCombinedCheckState();
+
+    abstract CombinedCheckState newCombinedCheckState();
+
+    abstract NotifyResolver.Result notify();
+
+    abstract Optional<Account.Id> from();
+
+    /**
+     * Coalesces this update with a later update of the same patch set into a single update from the
+     * old state of this update to the new state of the later update.
+     */
+    Update followedBy(Update later) {
+      return create(
+          later.check(),
+          oldCombinedCheckState(),
+          later.newCombinedCheckState(),
+          later.notify(),
+          later.from());
+    }
+  }
+
+  private final EmailFactories emailFactories;
+  private final ChangeNotes.Factory notesFactory;
+  private final PatchSetUtil psUtil;
+  private final Checks checks;
+  private final Checkers checkers;
+  private final MessageIdGenerator messageIdGenerator;
+  private final OneOffRequestContext requestContext;
+  private final Metrics metrics;
+  private final ListeningScheduledExecutorService executor;
+  private final int queueCapacity;
+  private final long debounceWindowMillis;
+  private final ConcurrentMap<PatchSet.Id, Update> debouncedUpdates = new ConcurrentHashMap<>();
+  private final AtomicInteger queuedEmails = new AtomicInteger();
+  private final Set<Future<?>> pendingEmails = ConcurrentHashMap.newKeySet();
+
+  @Inject
+  CombinedCheckStateUpdatedEmailSender(
+      EmailFactories emailFactories,
+      ChangeNotes.Factory notesFactory,
+      PatchSetUtil psUtil,
+      Checks checks,
+      Checkers checkers,
+      MessageIdGenerator messageIdGenerator,
+      OneOffRequestContext requestContext,
+      Metrics metrics,
+      WorkQueue workQueue,
+      PluginConfigFactory pluginConfigFactory,
+      @PluginName String pluginName) {
+    this.emailFactories = emailFactories;
+    this.notesFactory = notesFactory;
+    this.psUtil = psUtil;
+    this.checks = checks;
+    this.checkers = checkers;
+    this.messageIdGenerator = messageIdGenerator;
+    this.requestContext = requestContext;
+    this.metrics = metrics;
+
+    PluginConfig config = pluginConfigFactory.getFromGerritConfig(pluginName);
+    int threads = Math.max(config.getInt("emailThreads", DEFAULT_THREADS), 1);
+    this.queueCapacity = Math.max(config.getInt("emailQueueCapacity", DEFAULT_QUEUE_CAPACITY), 1);
+    this.executor =
+        MoreExecutors.listeningDecorator(
+            workQueue.createQueue(threads, "ChecksCombinedCheckStateEmail"));
+    metrics.registerQueueDepth(queuedEmails);
+
+    this.debounceWindowMillis =
+        ConfigUtil.getTimeUnit(config.getString("emailDebounceWindow"), 0, MILLISECONDS);
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(10, SECONDS)) {
+        logger.atWarning().log(
+            "Dropping %d queued combined check state emails on shutdown",
+            executor.shutdownNow().size());
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Queues an email about an update of the combined check state.
+   *
+   * <p>If a debounce window is configured, the email is held back for that long and further
+   * updates of the combined check state of the same patch set are coalesced into it. Then a single
+   * email describes the transition from the combined check state before the first update to the
+   * combined check state after the last update. If the combined check state flapped back to where
+   * it started, no email is sent.
+   *
+   * <p>No email is sent if the patch set of the check is no longer the current patch set of the
+   * change when the email is processed.
+   *
+   * @param updatedCheck the check whose update changed the combined check state
+   * @param oldCombinedCheckState the combined check state before the update
+   * @param newCombinedCheckState the combined check state after the update
+   * @param notify the resolved recipients of the email
+   * @param from the account that updated the check, {@link Optional#empty()} if the update was
+   *     done by the server
+   */
+  public void sendAsync(
+      Check updatedCheck,
+      CombinedCheckState oldCombinedCheckState,
+      CombinedCheckState newCombinedCheckState,
+      NotifyResolver.Result notify,
+      Optional<Account.Id> from) {
+    Update update =
+        Update.create(updatedCheck, oldCombinedCheckState, newCombinedCheckState, notify, from);
+    if (debounceWindowMillis <= 0) {
+      schedule(update, () -> send(update), 0);
+      return;
+    }
+
+    PatchSet.Id patchSetId = updatedCheck.key().patchSet();
+    AtomicBoolean created = new AtomicBoolean();
+    debouncedUpdates.compute(
+        patchSetId,
+        (k, debounced) -> {
+          if (debounced == null) {
+            created.set(true);
+            return update;
+          }
+          metrics.coalescedCount.increment();
+          return debounced.followedBy(update);
+        });
+    if (created.get() && !schedule(update, () -> flush(patchSetId), debounceWindowMillis)) {
+      debouncedUpdates.remove(patchSetId);
+    }
+  }
+
+  private void flush(PatchSet.Id patchSetId) {
+    Update update = debouncedUpdates.remove(patchSetId);
+    if (update != null && update.oldCombinedCheckState() != update.newCombinedCheckState()) {
+      send(update);
+    }
+  }
+
+  /**
+   * Schedules a task that sends an email on the work queue.
+   *
+   * @return whether the task was scheduled, {@code false} if it was dropped because the maximum
+   *     number of queued emails was reached or the plugin is being stopped
+   */
+  private boolean schedule(Update update, Runnable task, long delayMillis) {
+    if (queuedEmails.incrementAndGet() > queueCapacity) {
+      queuedEmails.decrementAndGet();
+      metrics.droppedCount.increment();
+      logger.atWarning().log(
+          "Cannot queue email update for change %s, queue is full",
+          update.check().key().patchSet().changeId());
+      return false;
+    }
+    try {
+      ListenableFuture<?> future =
+          executor.schedule(
+              () -> {
+                queuedEmails.decrementAndGet();
+                task.run();
+              },
+              delayMillis,
+              MILLISECONDS);
+      pendingEmails.add(future);
+      future.addListener(() -> pendingEmails.remove(future), MoreExecutors.directExecutor());
+      return true;
+    } catch (RejectedExecutionException e) {
+      queuedEmails.decrementAndGet();
+      metrics.droppedCount.increment();
+      logger.atWarning().log(
+          "Cannot queue email update for change %s, plugin is stopping",
+          update.check().key().patchSet().changeId());
+      return false;
+    }
+  }
+
+  private void send(Update update) {
+    Check updatedCheck = update.check();
+    CheckKey checkKey = updatedCheck.key();
+    try (ManualRequestContext ctx = requestContext.open();
+        Timer0.Context timer = metrics.sendLatency.start()) {
+      ChangeNotes changeNotes =
+          notesFactory.create(checkKey.repository(), checkKey.patchSet().changeId());
+      if (!checkKey.patchSet().equals(changeNotes.getCurrentPatchSet().id())) {
+        // do not send an email for non-current patch sets
+        return;
+      }
+
+      ImmutableMap<Checker, Check> checksByChecker = getAllChecksByChecker(updatedCheck);
+      Checker checker =
+          checksByChecker.keySet().stream()
+              .filter(c -> c.getUuid().equals(checkKey.checkerUuid()))
+              .findAny()
+              .orElseThrow(
+                  () ->
+                      new IllegalStateException(
+                          String.format(
+                              "checker %s of check %s not found",
+                              checkKey.checkerUuid(), checkKey)));
+
+      CombinedCheckStateUpdatedChangeEmailDecorator checksEmailDecorator =
+          new CombinedCheckStateUpdatedChangeEmailDecorator();
+      checksEmailDecorator.setCombinedCheckState(
+          update.oldCombinedCheckState(), update.newCombinedCheckState());
+      checksEmailDecorator.setCheck(checker, updatedCheck);
+      checksEmailDecorator.setChecksByChecker(checksByChecker);
+      ChangeEmail changeEmail =
+          emailFactories.createChangeEmail(
+              checkKey.repository(), checkKey.patchSet().changeId(), checksEmailDecorator);
+      PatchSet patchSet = psUtil.get(changeNotes, checkKey.patchSet());
+      changeEmail.setPatchSet(patchSet);
+      OutgoingEmail outgoingEmail =
+          emailFactories.createOutgoingEmail("combinedCheckStateUpdate", changeEmail);
+      update.from().ifPresent(outgoingEmail::setFrom);
+      outgoingEmail.setNotify(update.notify());
+      outgoingEmail.setMessageId(
+          messageIdGenerator.fromChangeUpdate(checkKey.repository(), checkKey.patchSet()));
+      outgoingEmail.send();
+    } catch (Exception e) {
+      logger.atSevere().withCause(e).log(
+          "Cannot email update for change %s", checkKey.patchSet().changeId());
+    }
+  }
+
+  /**
+   * Returns all checks of the patch set of the updated check by checker.
+   *
+   * <p>The updated check is taken from the snapshot rather than from storage, so that it matches
+   * the combined check state transition that is described in the email.
+   */
+  private ImmutableMap<Checker, Check> getAllChecksByChecker(Check updatedCheck)
+      throws IOException, ConfigInvalidException {
+    CheckKey checkKey = updatedCheck.key();
+    ImmutableList<Check> allChecks =
+        checks.getChecks(
+            checkKey.repository(), checkKey.patchSet(), GetCheckOptions.withBackfilling());
+    ImmutableMap<CheckerUuid, Checker> checkersByUuid =
+        checkers.getCheckers(
+            allChecks.stream().map(c -> c.key().checkerUuid()).collect(toImmutableSet()));
+
+    ImmutableMap.Builder<Checker, Check> checksByChecker = ImmutableMap.builder();
+    for (Check check : allChecks) {
+      Checker checker = checkersByUuid.get(check.key().checkerUuid());
+      if (checker == null) {
+        throw new IllegalStateException(
+            String.format(
+                "checker %s of check %s not found", check.key().checkerUuid(), check.key()));
+      }
+      checksByChecker.put(
+          checker,
+          check.key().checkerUuid().equals(checkKey.checkerUuid()) ? updatedCheck : check);
+    }
+    return checksByChecker.build();
+  }
+
+  /**
+   * Returns the futures of the emails that are queued or being sent.
+   *
+   * <p>A debounced email is sent by the task that ends its debounce window, hence its future
+   * completes only once the email has been sent.
+   */
+  @VisibleForTesting
+  public ImmutableList<Future<?>> getPendingEmails() {
+    return ImmutableList.copyOf(pendingEmails);
+  }
+}
@@ -0,0 +1,132 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.index;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.index.query.Predicate;
+import com.google.gerrit.index.query.QueryParseException;
+import com.google.gerrit.plugins.checks.Check;
+import com.google.gerrit.plugins.checks.CheckKey;
+import com.google.gerrit.plugins.checks.CheckerUuid;
+import com.google.gerrit.plugins.checks.Checks;
+import com.google.gerrit.plugins.checks.Checks.GetCheckOptions;
+import com.google.gerrit.plugins.checks.api.CheckState;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.server.query.change.ChangeOperatorPredicate;
+import com.google.gerrit.server.query.change.ChangeQueryBuilder;
+import com.google.gerrit.server.query.change.ChangeQueryBuilder.ChangeOperatorFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Change query operator that matches changes for which the check of a given checker on the current
+ * patch set is in a certain state.
+ *
+ * <p>Stored checks are read with {@link Checks#getCheckStates}. Only if the checker has no stored
+ * check and a backfilled check could match, the checker's relevance for the change is evaluated.
+ */
+public abstract class CheckerStateOperator implements ChangeOperatorFactory {
+  /** Matches changes on which the check of the given checker is in progress. */
+  @Singleton
+  public static class Pending extends CheckerStateOperator {
+    public static final String NAME = "pending";
+
+    @Inject
+    Pending(Checks checks) {
+      super(NAME, checks);
+    }
+
+    @Override
+    protected boolean matches(CheckState state) {
+      return state.isInProgress();
+    }
+  }
+
+  /** Matches changes on which the check of the given checker failed. */
+  @Singleton
+  public static class Failed extends CheckerStateOperator {
+    public static final String NAME = "failed";
+
+    @Inject
+    Failed(Checks checks) {
+      super(NAME, checks);
+    }
+
+    @Override
+    protected boolean matches(CheckState state) {
+      return state == CheckState.FAILED;
+    }
+  }
+
+  private final String name;
+  private final Checks checks;
+
+  private CheckerStateOperator(String name, Checks checks) {
+    this.name = name;
+    this.checks = checks;
+  }
+
+  protected abstract boolean matches(CheckState state);
+
+  @Override
+  public Predicate<ChangeData> create(ChangeQueryBuilder builder, String value)
+      throws QueryParseException {
+    return new CheckerStatePredicate(
+        CheckerUuid.tryParse(value)
+            .orElseThrow(
+                () -> new QueryParseException(String.format("invalid checker UUID: %s", value))));
+  }
+
+  private class CheckerStatePredicate extends ChangeOperatorPredicate {
+    private final CheckerUuid checkerUuid;
+
+    CheckerStatePredicate(CheckerUuid checkerUuid) {
+      super(name, checkerUuid.get());
+      this.checkerUuid = requireNonNull(checkerUuid, "checkerUuid");
+    }
+
+    @Override
+    public boolean match(ChangeData cd) throws StorageException {
+      PatchSet patchSet = cd.currentPatchSet();
+      try {
+        Optional<Check> check =
+            checks.getCheckStates(cd.project(), patchSet).stream()
+                .filter(c -> c.key().checkerUuid().equals(checkerUuid))
+                .findAny();
+        if (!check.isPresent() && matches(CheckState.NOT_STARTED)) {
+          // Backfilled checks are NOT_STARTED, hence the check may match if the checker is
+          // relevant for the change.
+          check =
+              checks.getCheck(
+                  CheckKey.create(cd.project(), patchSet.id(), checkerUuid),
+                  GetCheckOptions.withBackfilling());
+        }
+        return check.isPresent() && matches(check.get().state());
+      } catch (IOException e) {
+        throw new StorageException(e);
+      }
+    }
+
+    @Override
+    public int getCost() {
+      return 2;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.index;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.index.query.Predicate;
+import com.google.gerrit.index.query.QueryParseException;
+import com.google.gerrit.plugins.checks.CombinedCheckStateCache;
+import com.google.gerrit.plugins.checks.api.CombinedCheckState;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.server.query.change.ChangeOperatorPredicate;
+import com.google.gerrit.server.query.change.ChangeQueryBuilder;
+import com.google.gerrit.server.query.change.ChangeQueryBuilder.ChangeOperatorFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Change query operator that matches changes by the {@link CombinedCheckState} of their current
+ * patch set.
+ *
+ * <p>The combined check state is read from the {@link CombinedCheckStateCache}, hence matching a
+ * change doesn't require loading its checks in the common case.
+ */
+@Singleton
+public class CombinedCheckStateOperator implements ChangeOperatorFactory {
+  public static final String NAME = "combinedstate";
+
+  private final CombinedCheckStateCache combinedCheckStateCache;
+
+  @Inject
+  CombinedCheckStateOperator(CombinedCheckStateCache combinedCheckStateCache) {
+    this.combinedCheckStateCache = combinedCheckStateCache;
+  }
+
+  @Override
+  public Predicate<ChangeData> create(ChangeQueryBuilder builder, String value)
+      throws QueryParseException {
+    for (CombinedCheckState state : CombinedCheckState.values()) {
+      if (state.name().replace("_", "").equalsIgnoreCase(value.replace("_", ""))) {
+        return new CombinedCheckStatePredicate(state);
+      }
+    }
+    throw new QueryParseException(String.format("invalid combined check state: %s", value));
+  }
+
+  private class CombinedCheckStatePredicate extends ChangeOperatorPredicate {
+    private final CombinedCheckState combinedCheckState;
+
+    CombinedCheckStatePredicate(CombinedCheckState combinedCheckState) {
+      super(NAME, combinedCheckState.name());
+      this.combinedCheckState = requireNonNull(combinedCheckState, "combinedCheckState");
+    }
+
+    @Override
+    public boolean match(ChangeData cd) throws StorageException {
+      return combinedCheckState
+          == combinedCheckStateCache.get(cd.project(), cd.change().currentPatchSetId());
+    }
+
+    @Override
+    public int getCost() {
+      return 1;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.gerrit.plugins.checks.acceptance;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.gerrit.acceptance.config.GerritConfig;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.plugins.checks.Check;
+import com.google.gerrit.plugins.checks.CheckEvents;
+import com.google.gerrit.plugins.checks.CheckKey;
+import com.google.gerrit.plugins.checks.CheckerUuid;
+import com.google.gerrit.plugins.checks.api.CheckState;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CheckEventsIT extends AbstractCheckersTest {
+  private CheckEvents checkEvents;
+  private PatchSet.Id patchSetId;
+
+  @Before
+  public void setUp() throws Exception {
+    checkEvents = plugin.getSysInjector().getInstance(CheckEvents.class);
+    patchSetId = createChange().getPatchSetId();
+  }
+
+  @Test
+  @GerritConfig(name = "plugin.checks.maxCheckEventStreams", value = "1")
+  public void subscriberReceivesCheckUpdates() throws Exception {
+    CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
+    CheckKey checkKey = CheckKey.create(project, patchSetId, checkerUuid);
+
+    try (CheckEvents.Subscription subscription =
+        checkEvents.subscribe(patchSetId.changeId()).get()) {
+      checkOperations.newCheck(checkKey).state(CheckState.RUNNING).upsert();
+      checkOperations.check(checkKey).forUpdate().state(CheckState.SUCCESSFUL).upsert();
+
+      Check created = subscription.poll(10, SECONDS);
+      assertThat(created).isNotNull();
+      assertThat(created.key()).isEqualTo(checkKey);
+      assertThat(created.state()).isEqualTo(CheckState.RUNNING);
+
+      Check updated = subscription.poll(10, SECONDS);
+      assertThat(updated).isNotNull();
+      assertThat(updated.state()).isEqualTo(CheckState.SUCCESSFUL);
+      assertThat(subscription.isOverflowed()).isFalse();
+    }
+  }
+
+  @Test
+  @GerritConfig(name = "plugin.checks.maxCheckEventStreams", value = "1")
+  public void subscriberDoesNotReceiveUpdatesOfOtherChanges() throws Exception {
+    CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
+    PatchSet.Id otherPatchSetId = createChange().getPatchSetId();
+
+    try (CheckEvents.Subscription subscription =
+        checkEvents.subscribe(patchSetId.changeId()).get()) {
+      checkOperations
+          .newCheck(CheckKey.create(project, otherPatchSetId, checkerUuid))
+          .state(CheckState.RUNNING)
+          .upsert();
+
+      assertThat(subscription.poll(100, MILLISECONDS)).isNull();
+    }
+  }
+
+  @Test
+  @GerritConfig(name = "plugin.checks.maxCheckEventStreams", value = "1")
+  public void numberOfSubscriptionsIsLimited() throws Exception {
+    Optional<CheckEvents.Subscription> subscription = checkEvents.subscribe(patchSetId.changeId());
+    assertThat(subscription).isPresent();
+    assertThat(checkEvents.subscribe(patchSetId.changeId())).isEmpty();
+
+    subscription.get().close();
+    try (CheckEvents.Subscription newSubscription =
+        checkEvents.subscribe(patchSetId.changeId()).get()) {
+      assertThat(newSubscription).isNotNull();
+    }
+  }
+
+  @Test
+  public void subscriptionsAreDisabledByDefault() throws Exception {
+    assertThat(checkEvents.subscribe(patchSetId.changeId())).isEmpty();
+  }
+
+  @Test
+  @GerritConfig(name = "httpd.maxThreads", value = "4")
+  @GerritConfig(name = "plugin.checks.maxCheckEventStreams", value = "100")
+  public void numberOfSubscriptionsIsCappedToHalfOfHttpThreads() throws Exception {
+    try (CheckEvents.Subscription s1 = checkEvents.subscribe(patchSetId.changeId()).get();
+        CheckEvents.Subscription s2 = checkEvents.subscribe(patchSetId.changeId()).get()) {
+      assertThat(checkEvents.subscribe(patchSetId.changeId())).isEmpty();
+    }
+  }
+}
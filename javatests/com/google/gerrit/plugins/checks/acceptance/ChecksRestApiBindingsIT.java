@@ -34,7 +34,8 @@ public class ChecksRestApiBindingsIT extends AbstractCheckersTest {
           RestCall.get("/plugins/checks/checks.pending/"),
           RestCall.builder(Method.GET, "/plugins/checks/checks.pending/not-found")
               .expectedResponseCode(SC_NOT_FOUND)
-              .build());
+              .build(),
+          RestCall.post("/plugins/checks/checks.bulk/"));
 
   private static final ImmutableList<RestCall> CHECKER_ENDPOINTS =
       ImmutableList.of(
@@ -0,0 +1,105 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.acceptance.api;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.plugins.checks.CheckKey;
+import com.google.gerrit.plugins.checks.CheckerUuid;
+import com.google.gerrit.plugins.checks.acceptance.AbstractCheckersTest;
+import com.google.gerrit.plugins.checks.api.CheckState;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChangeQueryOperatorsIT extends AbstractCheckersTest {
+  private PatchSet.Id patchSetId;
+  private PatchSet.Id otherPatchSetId;
+
+  @Before
+  public void setUp() throws Exception {
+    patchSetId = createChange().getPatchSetId();
+    otherPatchSetId = createChange().getPatchSetId();
+  }
+
+  @Test
+  public void queryByCombinedCheckState() throws Exception {
+    CheckerUuid checkerUuid =
+        checkerOperations.newChecker().repository(project).required().create();
+    setCheckState(patchSetId, checkerUuid, CheckState.FAILED);
+    setCheckState(otherPatchSetId, checkerUuid, CheckState.SUCCESSFUL);
+
+    assertThat(query("combinedstate_checks:FAILED")).containsExactly(patchSetId.changeId().get());
+    assertThat(query("combinedstate_checks:successful"))
+        .containsExactly(otherPatchSetId.changeId().get());
+    assertThat(query("combinedstate_checks:in_progress")).isEmpty();
+  }
+
+  @Test
+  public void queryByInvalidCombinedCheckState() throws Exception {
+    BadRequestException thrown =
+        assertThrows(BadRequestException.class, () -> query("combinedstate_checks:invalid"));
+    assertThat(thrown).hasMessageThat().contains("invalid combined check state: invalid");
+  }
+
+  @Test
+  public void queryByPendingChecker() throws Exception {
+    CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
+    setCheckState(patchSetId, checkerUuid, CheckState.RUNNING);
+    setCheckState(otherPatchSetId, checkerUuid, CheckState.SUCCESSFUL);
+
+    assertThat(query("pending_checks:" + checkerUuid))
+        .containsExactly(patchSetId.changeId().get());
+  }
+
+  @Test
+  public void queryByPendingCheckerIncludesBackfilledChecks() throws Exception {
+    CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
+    setCheckState(otherPatchSetId, checkerUuid, CheckState.FAILED);
+
+    assertThat(query("pending_checks:" + checkerUuid))
+        .containsExactly(patchSetId.changeId().get());
+  }
+
+  @Test
+  public void queryByFailedChecker() throws Exception {
+    CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
+    setCheckState(otherPatchSetId, checkerUuid, CheckState.FAILED);
+
+    assertThat(query("failed_checks:" + checkerUuid))
+        .containsExactly(otherPatchSetId.changeId().get());
+  }
+
+  @Test
+  public void queryByInvalidCheckerUuid() throws Exception {
+    BadRequestException thrown =
+        assertThrows(BadRequestException.class, () -> query("failed_checks:invalid"));
+    assertThat(thrown).hasMessageThat().contains("invalid checker UUID: invalid");
+  }
+
+  private void setCheckState(PatchSet.Id psId, CheckerUuid checkerUuid, CheckState state) {
+    checkOperations.newCheck(CheckKey.create(project, psId, checkerUuid)).state(state).upsert();
+  }
+
+  private ImmutableList<Integer> query(String query) throws Exception {
+    return gApi.changes().query("project:" + project + " " + query).get().stream()
+        .map(c -> c._number)
+        .collect(toImmutableList());
+  }
+}
@@ -17,6 +17,7 @@ package com.google.gerrit.plugins.checks.acceptance.api;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.gerrit.acceptance.testsuite.project.TestProjectUpdate.allowCapability;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 
@@ -27,6 +28,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.gerrit.acceptance.PushOneCommit;
 import com.google.gerrit.acceptance.TestAccount;
+import com.google.gerrit.acceptance.config.GerritConfig;
 import com.google.gerrit.acceptance.testsuite.group.GroupOperations;
 import com.google.gerrit.acceptance.testsuite.project.ProjectOperations;
 import com.google.gerrit.acceptance.testsuite.request.RequestScopeOperations;
@@ -48,6 +50,7 @@ import com.google.gerrit.plugins.checks.api.CheckInput;
 import com.google.gerrit.plugins.checks.api.CheckState;
 import com.google.gerrit.plugins.checks.api.CombinedCheckState;
 import com.google.gerrit.plugins.checks.api.RerunInput;
+import com.google.gerrit.plugins.checks.email.CombinedCheckStateUpdatedEmailSender;
 import com.google.gerrit.testing.FakeEmailSender.Message;
 import com.google.inject.Inject;
 import java.util.Arrays;
@@ -55,6 +58,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -137,7 +141,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
 
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.IN_PROGRESS);
 
-    sender.clear();
+    clearMessages();
 
     // Post a new check that changes the combined check state to FAILED.
     requestScopeOperations.setApiUser(bot.id());
@@ -150,7 +154,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     // Expect email because the combined check state was updated.
     // The email is only sent to the change owner because the new combined check state !=
     // SUCCESSFUL.
-    List<Message> messages = sender.getMessages();
+    List<Message> messages = getMessages();
     assertThat(messages).hasSize(1);
 
     Message message = messages.get(0);
@@ -168,7 +172,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
 
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.IN_PROGRESS);
 
-    sender.clear();
+    clearMessages();
 
     // Post a check that changes the combined check state to SUCCESSFUL.
     requestScopeOperations.setApiUser(bot.id());
@@ -181,7 +185,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     // Expect email because the combined check state was updated.
     // The email is only sent to all users that are involved in the change because the new combined
     // check state = SUCCESSFUL.
-    List<Message> messages = sender.getMessages();
+    List<Message> messages = getMessages();
     assertThat(messages).hasSize(1);
 
     Message message = messages.get(0);
@@ -196,6 +200,59 @@ public class ChecksEmailIT extends AbstractCheckersTest {
             watcher.getNameEmail());
   }
 
+  @Test
+  @GerritConfig(name = "plugin.checks.emailDebounceWindow", value = "5s")
+  public void combinedCheckStateUpdatesWithinDebounceWindowAreCoalesced() throws Exception {
+    // Create a required checker.
+    CheckerUuid checkerUuid =
+        checkerOperations.newChecker().repository(project).required().create();
+
+    assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.IN_PROGRESS);
+
+    clearMessages();
+
+    // Update the combined check state to FAILED and then to SUCCESSFUL.
+    postCheck(checkerUuid, CheckState.FAILED);
+    assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
+    postCheck(checkerUuid, CheckState.SUCCESSFUL);
+    assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.SUCCESSFUL);
+
+    // Expect a single email for the net update from IN_PROGRESS to SUCCESSFUL.
+    List<Message> messages = getMessages();
+    assertThat(messages).hasSize(1);
+
+    Message message = messages.get(0);
+    assertThat(message.body())
+        .contains("The combined check state has been updated to " + CombinedCheckState.SUCCESSFUL);
+    assertThat(message.rcpt())
+        .containsExactly(
+            owner.getNameEmail(),
+            reviewer.getNameEmail(),
+            starrer.getNameEmail(),
+            watcher.getNameEmail());
+  }
+
+  @Test
+  @GerritConfig(name = "plugin.checks.emailDebounceWindow", value = "5s")
+  public void noCombinedCheckUpdatedEmailIfCombinedCheckStateFlapsBackWithinDebounceWindow()
+      throws Exception {
+    // Create a required checker.
+    CheckerUuid checkerUuid =
+        checkerOperations.newChecker().repository(project).required().create();
+
+    assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.IN_PROGRESS);
+
+    clearMessages();
+
+    // Update the combined check state to FAILED and back to IN_PROGRESS.
+    postCheck(checkerUuid, CheckState.FAILED);
+    assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
+    postCheck(checkerUuid, CheckState.RUNNING);
+    assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.IN_PROGRESS);
+
+    assertThat(getMessages()).isEmpty();
+  }
+
   @Test
   public void noCombinedCheckUpdatedEmailOnCheckCreationIfCombinedCheckStateIsNotChanged()
       throws Exception {
@@ -210,7 +267,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     checkOperations.newCheck(checkKey).state(CheckState.FAILED).upsert();
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
-    sender.clear();
+    clearMessages();
 
     // Post a new check that doesn't change the combined check state..
     requestScopeOperations.setApiUser(bot.id());
@@ -221,7 +278,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
     // Expect that no email was sent because the combined check state was not updated.
-    assertThat(sender.getMessages()).isEmpty();
+    assertThat(getMessages()).isEmpty();
   }
 
   @Test
@@ -235,7 +292,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     checkOperations.newCheck(checkKey).state(CheckState.FAILED).upsert();
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
-    sender.clear();
+    clearMessages();
 
     // Update the new check so that the combined check state is changed to IN_PROGRESS.
     requestScopeOperations.setApiUser(bot.id());
@@ -248,7 +305,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     // Expect email because the combined check state was updated.
     // The email is only sent to the change owner because the new combined check state !=
     // SUCCESSFUL.
-    List<Message> messages = sender.getMessages();
+    List<Message> messages = getMessages();
     assertThat(messages).hasSize(1);
 
     Message message = messages.get(0);
@@ -269,7 +326,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     checkOperations.newCheck(checkKey).state(CheckState.FAILED).upsert();
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
-    sender.clear();
+    clearMessages();
 
     // Update the new check so that the combined check state is changed to IN_PROGRESS.
     requestScopeOperations.setApiUser(bot.id());
@@ -282,7 +339,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     // Expect email because the combined check state was updated.
     // The email is only sent to all users that are involved in the change because the new combined
     // check state = SUCCESSFUL.
-    List<Message> messages = sender.getMessages();
+    List<Message> messages = getMessages();
     assertThat(messages).hasSize(1);
 
     Message message = messages.get(0);
@@ -313,7 +370,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     checkOperations.newCheck(checkKey2).state(CheckState.FAILED).upsert();
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
-    sender.clear();
+    clearMessages();
 
     // Update one of the checks in a way so that doesn't change the combined check state.
     requestScopeOperations.setApiUser(bot.id());
@@ -324,7 +381,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
     // Expect that no email was sent because the combined check state was not updated.
-    assertThat(sender.getMessages()).isEmpty();
+    assertThat(getMessages()).isEmpty();
   }
 
   @Test
@@ -338,7 +395,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     checkOperations.newCheck(checkKey).state(CheckState.FAILED).upsert();
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
-    sender.clear();
+    clearMessages();
 
     // Rerun the check so that the combined check state is changed to IN_PROGRESS.
     requestScopeOperations.setApiUser(bot.id());
@@ -348,7 +405,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     // Expect email because the combined check state was updated.
     // The email is only sent to the change owner because the new combined check state !=
     // SUCCESSFUL.
-    List<Message> messages = sender.getMessages();
+    List<Message> messages = getMessages();
     assertThat(messages).hasSize(1);
 
     Message message = messages.get(0);
@@ -374,7 +431,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     checkOperations.newCheck(checkKey2).state(CheckState.FAILED).upsert();
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
-    sender.clear();
+    clearMessages();
 
     // Rerun only one check so that the combined check state stays FAILED.
     requestScopeOperations.setApiUser(bot.id());
@@ -382,7 +439,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
     // Expect that no email was sent because the combined check state was not updated.
-    assertThat(sender.getMessages()).isEmpty();
+    assertThat(getMessages()).isEmpty();
   }
 
   @Test
@@ -427,7 +484,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
       throws Exception {
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.IN_PROGRESS);
 
-    sender.clear();
+    clearMessages();
 
     // Post a new check that changes the combined check state to FAILED.
     requestScopeOperations.setApiUser(bot.id());
@@ -445,7 +502,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     checksApiFactory.revision(patchSetId).create(input).get();
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
-    List<Message> messages = sender.getMessages();
+    List<Message> messages = getMessages();
     if (expectedRecipients.length == 0) {
       assertThat(messages).isEmpty();
     } else {
@@ -513,7 +570,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     checkOperations.check(checkKey).forUpdate().state(CheckState.FAILED).upsert();
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
-    sender.clear();
+    clearMessages();
 
     // Post a new check that changes the combined check state to FAILED.
     requestScopeOperations.setApiUser(bot.id());
@@ -529,7 +586,7 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     checksApiFactory.revision(patchSetId).id(checkKey.checkerUuid()).rerun(rerunInput);
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.IN_PROGRESS);
 
-    List<Message> messages = sender.getMessages();
+    List<Message> messages = getMessages();
     if (expectedRecipients.length == 0) {
       assertThat(messages).isEmpty();
     } else {
@@ -555,11 +612,11 @@ public class ChecksEmailIT extends AbstractCheckersTest {
         checkerOperations.newChecker().name(checkerName).repository(project).required().create();
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.IN_PROGRESS);
 
-    sender.clear();
+    clearMessages();
     postCheck(checkerUuid, CheckState.SUCCESSFUL);
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.SUCCESSFUL);
 
-    List<Message> messages = sender.getMessages();
+    List<Message> messages = getMessages();
     assertThat(messages).hasSize(1);
 
     Message message = messages.get(0);
@@ -585,11 +642,11 @@ public class ChecksEmailIT extends AbstractCheckersTest {
         checkerOperations.newChecker().repository(project).name(checkerName).required().create();
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.IN_PROGRESS);
 
-    sender.clear();
+    clearMessages();
     postCheck(checkerUuid, CheckState.FAILED);
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
-    List<Message> messages = sender.getMessages();
+    List<Message> messages = getMessages();
     assertThat(messages).hasSize(1);
 
     Message message = messages.get(0);
@@ -634,11 +691,11 @@ public class ChecksEmailIT extends AbstractCheckersTest {
             .create();
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.IN_PROGRESS);
 
-    sender.clear();
+    clearMessages();
     postCheck(checkerUuid, CheckState.FAILED);
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
-    List<Message> messages = sender.getMessages();
+    List<Message> messages = getMessages();
     assertThat(messages).hasSize(1);
 
     Message message = messages.get(0);
@@ -680,12 +737,12 @@ public class ChecksEmailIT extends AbstractCheckersTest {
         checkerOperations.newChecker().repository(project).name(checkerName).required().create();
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.IN_PROGRESS);
 
-    sender.clear();
+    clearMessages();
     String checkMessage = "foo bar baz";
     postCheck(checkerUuid, CheckState.FAILED, checkMessage);
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
-    List<Message> messages = sender.getMessages();
+    List<Message> messages = getMessages();
     assertThat(messages).hasSize(1);
 
     Message message = messages.get(0);
@@ -727,12 +784,12 @@ public class ChecksEmailIT extends AbstractCheckersTest {
         checkerOperations.newChecker().repository(project).name(checkerName).required().create();
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.IN_PROGRESS);
 
-    sender.clear();
+    clearMessages();
     String checkUrl = "http://my-checker/12345";
     postCheck(checkerUuid, CheckState.FAILED, null, checkUrl);
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
-    List<Message> messages = sender.getMessages();
+    List<Message> messages = getMessages();
     assertThat(messages).hasSize(1);
 
     Message message = messages.get(0);
@@ -774,11 +831,11 @@ public class ChecksEmailIT extends AbstractCheckersTest {
         checkerOperations.newChecker().repository(project).name(checkerName).create();
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.IN_PROGRESS);
 
-    sender.clear();
+    clearMessages();
     postCheck(checkerUuid, CheckState.FAILED);
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.WARNING);
 
-    List<Message> messages = sender.getMessages();
+    List<Message> messages = getMessages();
     assertThat(messages).hasSize(1);
 
     Message message = messages.get(0);
@@ -827,11 +884,11 @@ public class ChecksEmailIT extends AbstractCheckersTest {
     postCheck(checkerUuidOptional, CheckState.FAILED);
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
-    sender.clear();
+    clearMessages();
     postCheck(checkerUuidRequired, CheckState.SUCCESSFUL);
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.WARNING);
 
-    List<Message> messages = sender.getMessages();
+    List<Message> messages = getMessages();
     assertThat(messages).hasSize(1);
 
     Message message = messages.get(0);
@@ -877,11 +934,11 @@ public class ChecksEmailIT extends AbstractCheckersTest {
             .required()
             .create();
 
-    sender.clear();
+    clearMessages();
     postCheck(checkerUuidFailed, CheckState.FAILED);
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
-    List<Message> messages = sender.getMessages();
+    List<Message> messages = getMessages();
     assertThat(messages).hasSize(1);
 
     Map<CheckState, List<String>> expectedCheckersByState = new HashMap<>();
@@ -951,11 +1008,11 @@ public class ChecksEmailIT extends AbstractCheckersTest {
             .required()
             .create();
 
-    sender.clear();
+    clearMessages();
     postCheck(checkerUuidFailed, CheckState.FAILED);
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
-    List<Message> messages = sender.getMessages();
+    List<Message> messages = getMessages();
     assertThat(messages).hasSize(1);
 
     Map<CheckState, List<String>> expectedCheckersByState = new HashMap<>();
@@ -1021,11 +1078,11 @@ public class ChecksEmailIT extends AbstractCheckersTest {
             .required()
             .create();
 
-    sender.clear();
+    clearMessages();
     postCheck(checkerUuidFailed, CheckState.FAILED);
     assertThat(getCombinedCheckState()).isEqualTo(CombinedCheckState.FAILED);
 
-    List<Message> messages = sender.getMessages();
+    List<Message> messages = getMessages();
     assertThat(messages).hasSize(1);
 
     Map<CheckState, List<String>> expectedCheckersByState = new HashMap<>();
@@ -1078,12 +1135,12 @@ public class ChecksEmailIT extends AbstractCheckersTest {
             change.getKey().get());
     push.to("refs/for/master").assertOkStatus();
 
-    sender.clear();
+    clearMessages();
 
     // post check on old patch set
     postCheck(checkerUuid, CheckState.SUCCESSFUL);
 
-    assertThat(sender.getMessages()).isEmpty();
+    assertThat(getMessages()).isEmpty();
   }
 
   private String combinedCheckStateUpdatedText(CombinedCheckState combinedCheckState) {
@@ -1211,6 +1268,28 @@ public class ChecksEmailIT extends AbstractCheckersTest {
         + "?usp=email";
   }
 
+  private List<Message> getMessages() throws Exception {
+    awaitPendingEmails();
+    return sender.getMessages();
+  }
+
+  private void clearMessages() throws Exception {
+    awaitPendingEmails();
+    sender.clear();
+  }
+
+  private void awaitPendingEmails() throws Exception {
+    CombinedCheckStateUpdatedEmailSender emailSender =
+        plugin.getSysInjector().getInstance(CombinedCheckStateUpdatedEmailSender.class);
+    for (List<Future<?>> pendingEmails = emailSender.getPendingEmails();
+        !pendingEmails.isEmpty();
+        pendingEmails = emailSender.getPendingEmails()) {
+      for (Future<?> pendingEmail : pendingEmails) {
+        pendingEmail.get(30, SECONDS);
+      }
+    }
+  }
+
   private CombinedCheckState getCombinedCheckState() throws Exception {
     ChangeInfo changeInfo =
         gApi.changes()
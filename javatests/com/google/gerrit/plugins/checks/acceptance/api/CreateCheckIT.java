@@ -16,9 +16,12 @@ package com.google.gerrit.plugins.checks.acceptance.api;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
 
 import com.google.gerrit.acceptance.RestResponse;
 import com.google.gerrit.acceptance.UseClockStep;
+import com.google.gerrit.acceptance.config.GerritConfig;
 import com.google.gerrit.acceptance.testsuite.request.RequestScopeOperations;
 import com.google.gerrit.entities.PatchSet;
 import com.google.gerrit.entities.Project;
@@ -28,6 +31,7 @@ import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.extensions.restapi.UnprocessableEntityException;
 import com.google.gerrit.plugins.checks.Check;
 import com.google.gerrit.plugins.checks.CheckKey;
+import com.google.gerrit.plugins.checks.CheckerRef;
 import com.google.gerrit.plugins.checks.CheckerUuid;
 import com.google.gerrit.plugins.checks.acceptance.AbstractCheckersTest;
 import com.google.gerrit.plugins.checks.acceptance.testsuite.CheckOperations.PerCheckOperations;
@@ -43,6 +47,11 @@ import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.Map;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -91,6 +100,102 @@ public class CreateCheckIT extends AbstractCheckersTest {
             noteDbContent(checkerUuid.get(), expectedCreationTimestamp, expectedCreationTimestamp));
   }
 
+  @Test
+  @GerritConfig(name = "plugin.checks.messageBlobThreshold", value = "10")
+  public void largeMessageIsStoredInSeparateBlob() throws Exception {
+    CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
+
+    String message = "a message that exceeds the threshold";
+    CheckInput input = new CheckInput();
+    input.checkerUuid = checkerUuid.get();
+    input.message = message;
+    CheckInfo info = checksApiFactory.revision(patchSetId).create(input).get();
+    assertThat(info.message).isEqualTo(message);
+    assertThat(getCheck(project, patchSetId, checkerUuid).message()).hasValue(message);
+
+    CheckKey key = CheckKey.create(project, patchSetId, checkerUuid);
+    String note = checkOperations.check(key).notesAsText().get(commitId);
+    assertThat(note).doesNotContain(message);
+    assertThat(note).contains("\"messageBlob\"");
+
+    // The blob must be reachable from the checks ref, otherwise it would be garbage collected.
+    try (Repository repo = repoManager.openRepository(project);
+        RevWalk rw = new RevWalk(repo)) {
+      RevCommit checksCommit =
+          rw.parseCommit(repo.exactRef(CheckerRef.checksRef(patchSetId.changeId())).getObjectId());
+      ObjectId messageBlob =
+          new ObjectInserter.Formatter().idFor(OBJ_BLOB, message.getBytes(UTF_8));
+      assertThat(TreeWalk.forPath(repo, "messages/" + messageBlob.name(), checksCommit.getTree()))
+          .isNotNull();
+    }
+
+    // Updates that don't touch the message keep it.
+    CheckInput updateInput = new CheckInput();
+    updateInput.state = CheckState.RUNNING;
+    checksApiFactory.revision(patchSetId).id(checkerUuid).update(updateInput);
+    assertThat(getCheck(project, patchSetId, checkerUuid).message()).hasValue(message);
+  }
+
+  @Test
+  @GerritConfig(name = "plugin.checks.checkerRateLimit", value = "1")
+  public void checkWritesAreThrottledPerChecker() throws Exception {
+    CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
+    CheckerUuid otherCheckerUuid = checkerOperations.newChecker().repository(project).create();
+
+    CheckInput input = new CheckInput();
+    input.checkerUuid = checkerUuid.get();
+    input.state = CheckState.RUNNING;
+    postCheck(input).assertOK();
+
+    input.state = CheckState.SUCCESSFUL;
+    RestResponse response = postCheck(input);
+    response.assertStatus(429);
+    assertThat(response.getEntityContent())
+        .isEqualTo(String.format("rate limit for checker %s exceeded, retry later", checkerUuid));
+    assertThat(getCheck(project, patchSetId, checkerUuid).state()).isEqualTo(CheckState.RUNNING);
+
+    // The limit of one checker doesn't affect other checkers.
+    input.checkerUuid = otherCheckerUuid.get();
+    postCheck(input).assertOK();
+  }
+
+  @Test
+  @GerritConfig(name = "plugin.checks.schemeRateLimit", value = "1")
+  public void checkWritesAreThrottledPerScheme() throws Exception {
+    CheckerUuid checkerUuid =
+        checkerOperations
+            .newChecker()
+            .uuid(CheckerUuid.parse("foo:checker-1"))
+            .repository(project)
+            .create();
+    CheckerUuid checkerUuidOfSameScheme =
+        checkerOperations
+            .newChecker()
+            .uuid(CheckerUuid.parse("foo:checker-2"))
+            .repository(project)
+            .create();
+    CheckerUuid checkerUuidOfOtherScheme =
+        checkerOperations
+            .newChecker()
+            .uuid(CheckerUuid.parse("bar:checker-1"))
+            .repository(project)
+            .create();
+
+    CheckInput input = new CheckInput();
+    input.checkerUuid = checkerUuid.get();
+    input.state = CheckState.RUNNING;
+    postCheck(input).assertOK();
+
+    input.checkerUuid = checkerUuidOfSameScheme.get();
+    RestResponse response = postCheck(input);
+    response.assertStatus(429);
+    assertThat(response.getEntityContent())
+        .isEqualTo("rate limit for checker scheme foo exceeded, retry later");
+
+    input.checkerUuid = checkerUuidOfOtherScheme.get();
+    postCheck(input).assertOK();
+  }
+
   @Test
   public void cannotCreateCheckWithoutCheckerUuid() throws Exception {
     BadRequestException thrown =
@@ -392,4 +497,12 @@ public class CreateCheckIT extends AbstractCheckersTest {
         + "  }\n"
         + "}";
   }
+
+  private RestResponse postCheck(CheckInput input) throws Exception {
+    return adminRestSession.post(
+        String.format(
+            "/changes/%d/revisions/%d/checks~checks",
+            patchSetId.changeId().get(), patchSetId.get()),
+        input);
+  }
 }
@@ -0,0 +1,107 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.gerrit.plugins.checks.acceptance.api;
+package com.google.gerrit.plugins.checks.acceptance.api;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.acceptance.RestResponse;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.plugins.checks.CheckKey;
+import com.google.gerrit.plugins.checks.CheckerUuid;
+import com.google.gerrit.plugins.checks.acceptance.AbstractCheckersTest;
+import com.google.gerrit.plugins.checks.api.ChangeChecksStorageInfo;
+import com.google.gerrit.plugins.checks.api.CheckState;
+import com.google.gerrit.plugins.checks.api.ChecksStorageInfo;
+import org.junit.Test;
+
+public class GetChecksStorageIT extends AbstractCheckersTest {
+  @Test
+  public void getChecksStorage() throws Exception {
+    CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
+    PatchSet.Id patchSetId = createChange().getPatchSetId();
+    createChange();
+    CheckKey checkKey = CheckKey.create(project, patchSetId, checkerUuid);
+    checkOperations.newCheck(checkKey).state(CheckState.RUNNING).upsert();
+    checkOperations.check(checkKey).forUpdate().state(CheckState.SUCCESSFUL).upsert();
+
+    ChecksStorageInfo info = getChecksStorage("");
+    assertThat(info.checkers).isEqualTo(1);
+    assertThat(info.checksRefs).isEqualTo(1);
+    assertThat(info.noteBytes).isGreaterThan(0);
+    assertThat(info.checkersNoteBytes).isGreaterThan(0);
+    assertThat(info.computed).isNotNull();
+
+    assertThat(info.topChangesByCommitCount).hasSize(1);
+    ChangeChecksStorageInfo change = info.topChangesByCommitCount.get(0);
+    assertThat(change.changeNumber).isEqualTo(patchSetId.changeId().get());
+    assertThat(change.commitCount).isEqualTo(2);
+    assertThat(change.noteBytes).isEqualTo(info.noteBytes);
+    assertThat(change.patchSetCount).isEqualTo(1);
+    assertThat(info.topChangesByNoteBytes).hasSize(1);
+    assertThat(info.topChangesByPatchSetCount).hasSize(1);
+  }
+
+  @Test
+  public void getChecksStorageWithLimit() throws Exception {
+    CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
+    PatchSet.Id patchSetId = createChange().getPatchSetId();
+    PatchSet.Id otherPatchSetId = createChange().getPatchSetId();
+    CheckKey checkKey = CheckKey.create(project, patchSetId, checkerUuid);
+    checkOperations.newCheck(checkKey).state(CheckState.RUNNING).upsert();
+    checkOperations.check(checkKey).forUpdate().state(CheckState.SUCCESSFUL).upsert();
+    checkOperations
+        .newCheck(CheckKey.create(project, otherPatchSetId, checkerUuid))
+        .state(CheckState.RUNNING)
+        .upsert();
+
+    ChecksStorageInfo info = getChecksStorage("?limit=1");
+    assertThat(info.checksRefs).isEqualTo(2);
+    assertThat(info.topChangesByCommitCount).hasSize(1);
+    assertThat(info.topChangesByCommitCount.get(0).changeNumber)
+        .isEqualTo(patchSetId.changeId().get());
+  }
+
+  @Test
+  public void getChecksStorageWithoutChecks() throws Exception {
+    createChange();
+
+    ChecksStorageInfo info = getChecksStorage("");
+    assertThat(info.checkers).isEqualTo(0);
+    assertThat(info.checksRefs).isEqualTo(0);
+    assertThat(info.topChangesByCommitCount).isEmpty();
+  }
+
+  @Test
+  public void cannotGetChecksStorageWithInvalidLimit() throws Exception {
+    adminRestSession.get(url("?limit=0")).assertBadRequest();
+    adminRestSession.get(url("?limit=1001")).assertBadRequest();
+    adminRestSession.get(url("?limit=" + Integer.MAX_VALUE)).assertBadRequest();
+  }
+
+  @Test
+  public void cannotGetChecksStorageWithoutAdministrateServer() throws Exception {
+    userRestSession.get(url("")).assertForbidden();
+  }
+
+  private ChecksStorageInfo getChecksStorage(String query) throws Exception {
+    RestResponse r = adminRestSession.get(url(query));
+    r.assertOK();
+    return newGson().fromJson(r.getReader(), ChecksStorageInfo.class);
+  }
+
+  private String url(String query) {
+    return "/projects/" + project.get() + "/checks~storage" + query;
+  }
+}
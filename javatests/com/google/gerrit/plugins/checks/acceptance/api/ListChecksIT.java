@@ -19,8 +19,10 @@ import static com.google.common.truth.Truth.assertThat;
 import static com.google.gerrit.extensions.client.ListChangesOption.CURRENT_REVISION;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.net.HttpHeaders;
 import com.google.gerrit.acceptance.PushOneCommit;
 import com.google.gerrit.acceptance.RestResponse;
+import com.google.gerrit.acceptance.config.GerritConfig;
 import com.google.gerrit.acceptance.testsuite.request.RequestScopeOperations;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.PatchSet;
@@ -28,6 +30,7 @@ import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.common.EditInfo;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.plugins.checks.CheckKey;
+import com.google.gerrit.plugins.checks.CheckerQueryMetrics;
 import com.google.gerrit.plugins.checks.CheckerUuid;
 import com.google.gerrit.plugins.checks.ListChecksOption;
 import com.google.gerrit.plugins.checks.acceptance.AbstractCheckersTest;
@@ -40,6 +43,8 @@ import com.google.inject.Inject;
 import java.sql.Timestamp;
 import java.util.List;
 import java.util.Optional;
+import org.apache.http.HttpStatus;
+import org.apache.http.message.BasicHeader;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -195,6 +200,65 @@ public class ListChecksIT extends AbstractCheckersTest {
     assertThat(check2.checkerStatus).isNull();
   }
 
+  @Test
+  public void listAllWithOptionsPopulatesSubmitImpactOfEachChecker() throws Exception {
+    CheckerUuid requiredCheckerUuid =
+        checkerOperations.newChecker().repository(project).required().create();
+    CheckerUuid optionalCheckerUuid = checkerOperations.newChecker().repository(project).create();
+    CheckerUuid notRelevantCheckerUuid =
+        checkerOperations.newChecker().repository(project).required().query("topic:foo").create();
+    checkOperations.newCheck(CheckKey.create(project, patchSetId, requiredCheckerUuid)).upsert();
+    checkOperations.newCheck(CheckKey.create(project, patchSetId, optionalCheckerUuid)).upsert();
+    checkOperations.newCheck(CheckKey.create(project, patchSetId, notRelevantCheckerUuid)).upsert();
+
+    List<CheckInfo> checks = checksApiFactory.revision(patchSetId).list(ListChecksOption.CHECKER);
+
+    assertThat(checks).hasSize(3);
+    for (CheckInfo check : checks) {
+      assertThat(check.submitImpact).isNotNull();
+      if (check.checkerUuid.equals(requiredCheckerUuid.get())) {
+        assertThat(check.submitImpact.required).isTrue();
+      } else {
+        assertThat(check.submitImpact.required).isNull();
+      }
+    }
+  }
+
+  @Test
+  public void listReturnsNotModifiedIfETagMatches() throws Exception {
+    CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
+    CheckKey checkKey = CheckKey.create(project, patchSetId, checkerUuid);
+    checkOperations.newCheck(checkKey).state(CheckState.RUNNING).upsert();
+    String url =
+        String.format(
+            "/changes/%s/revisions/%s/checks~checks/?o=CHECKER",
+            patchSetId.changeId().get(), patchSetId.get());
+
+    RestResponse r = adminRestSession.get(url);
+    r.assertOK();
+    String eTag = r.getHeader(HttpHeaders.ETAG);
+    assertThat(eTag).isNotNull();
+    r.consume();
+
+    r = adminRestSession.getWithHeaders(url, new BasicHeader(HttpHeaders.IF_NONE_MATCH, eTag));
+    r.assertStatus(HttpStatus.SC_NOT_MODIFIED);
+    r.consume();
+
+    // Updating the check changes the ETag.
+    checkOperations.check(checkKey).forUpdate().state(CheckState.SUCCESSFUL).upsert();
+    r = adminRestSession.getWithHeaders(url, new BasicHeader(HttpHeaders.IF_NONE_MATCH, eTag));
+    r.assertOK();
+    String newETag = r.getHeader(HttpHeaders.ETAG);
+    assertThat(newETag).isNotEqualTo(eTag);
+    r.consume();
+
+    // Updating the checker changes the ETag.
+    checkerOperations.checker(checkerUuid).forUpdate().name("new-name").update();
+    r = adminRestSession.getWithHeaders(url, new BasicHeader(HttpHeaders.IF_NONE_MATCH, newETag));
+    r.assertOK();
+    r.consume();
+  }
+
   @Test
   public void listIncludesCheckFromCheckerThatDoesNotApplyToTheProject() throws Exception {
     CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
@@ -267,6 +331,54 @@ public class ListChecksIT extends AbstractCheckersTest {
     assertThat(checksApiFactory.revision(patchSetId).list()).containsExactly(checkInfo);
   }
 
+  @Test
+  public void relevanceEvaluationIsRecordedPerChecker() throws Exception {
+    CheckerUuid checkerUuid =
+        checkerOperations.newChecker().repository(project).query("topic:" + name("topic")).create();
+    CheckerUuid otherCheckerUuid = checkerOperations.newChecker().repository(project).create();
+    CheckerQueryMetrics metrics = plugin.getSysInjector().getInstance(CheckerQueryMetrics.class);
+    long relevanceCount = metrics.getRelevanceCount(checkerUuid);
+    long otherRelevanceCount = metrics.getRelevanceCount(otherCheckerUuid);
+
+    assertThat(checksApiFactory.revision(patchSetId).list()).isEmpty();
+    assertThat(metrics.getRelevanceCount(checkerUuid)).isGreaterThan(relevanceCount);
+    assertThat(metrics.getRelevanceCount(otherCheckerUuid)).isEqualTo(otherRelevanceCount);
+  }
+
+  @Test
+  public void compiledCheckerQueryIsReusedAcrossRequests() throws Exception {
+    checkerOperations.newChecker().repository(project).query("topic:" + name("topic")).create();
+    CheckerQueryMetrics metrics = plugin.getSysInjector().getInstance(CheckerQueryMetrics.class);
+
+    assertThat(checksApiFactory.revision(patchSetId).list()).isEmpty();
+    long compilationCount = metrics.getCompilationCount();
+    assertThat(checksApiFactory.revision(patchSetId).list()).isEmpty();
+    assertThat(metrics.getCompilationCount()).isEqualTo(compilationCount);
+  }
+
+  @Test
+  public void compiledCheckerQueryWithAgeIsNotReused() throws Exception {
+    checkerOperations.newChecker().repository(project).query("age:1d").create();
+    CheckerQueryMetrics metrics = plugin.getSysInjector().getInstance(CheckerQueryMetrics.class);
+
+    assertThat(checksApiFactory.revision(patchSetId).list()).isEmpty();
+    long compilationCount = metrics.getCompilationCount();
+    assertThat(checksApiFactory.revision(patchSetId).list()).isEmpty();
+    assertThat(metrics.getCompilationCount()).isGreaterThan(compilationCount);
+  }
+
+  @Test
+  @GerritConfig(name = "plugin.checks.checkerQueryCacheSize", value = "0")
+  public void compiledCheckerQueryIsNotReusedIfCacheIsDisabled() throws Exception {
+    checkerOperations.newChecker().repository(project).query("topic:" + name("topic")).create();
+    CheckerQueryMetrics metrics = plugin.getSysInjector().getInstance(CheckerQueryMetrics.class);
+
+    assertThat(checksApiFactory.revision(patchSetId).list()).isEmpty();
+    long compilationCount = metrics.getCompilationCount();
+    assertThat(checksApiFactory.revision(patchSetId).list()).isEmpty();
+    assertThat(metrics.getCompilationCount()).isGreaterThan(compilationCount);
+  }
+
   @Test
   public void listDoesntBackfillForDisabledChecker() throws Exception {
     CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
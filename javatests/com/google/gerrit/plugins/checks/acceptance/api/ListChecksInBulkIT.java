@@ -0,0 +1,162 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.gerrit.plugins.checks.acceptance.api;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.acceptance.RestResponse;
+import com.google.gerrit.acceptance.testsuite.project.ProjectOperations;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.common.ChangeInput;
+import com.google.gerrit.plugins.checks.CheckKey;
+import com.google.gerrit.plugins.checks.CheckerUuid;
+import com.google.gerrit.plugins.checks.acceptance.AbstractCheckersTest;
+import com.google.gerrit.plugins.checks.api.BulkChecksInput;
+import com.google.gerrit.plugins.checks.api.CheckInfo;
+import com.google.gerrit.plugins.checks.api.CheckState;
+import com.google.gerrit.plugins.checks.api.CheckablePatchSetInfo;
+import com.google.gson.reflect.TypeToken;
+import com.google.inject.Inject;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ListChecksInBulkIT extends AbstractCheckersTest {
+  @Inject private ProjectOperations projectOperations;
+
+  private PatchSet.Id patchSetId;
+
+  @Before
+  public void setUp() throws Exception {
+    patchSetId = createChange().getPatchSetId();
+  }
+
+  @Test
+  public void listChecksOfMultiplePatchSets() throws Exception {
+    Project.NameKey otherProject = projectOperations.newProject().create();
+    PatchSet.Id otherPatchSetId =
+        PatchSet.id(
+            Change.id(
+                gApi.changes().create(new ChangeInput(otherProject.get(), "master", "Other")).get()
+                    ._number),
+            1);
+    CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
+    CheckerUuid otherCheckerUuid =
+        checkerOperations.newChecker().repository(otherProject).create();
+    CheckKey checkKey = CheckKey.create(project, patchSetId, checkerUuid);
+    checkOperations.newCheck(checkKey).state(CheckState.RUNNING).upsert();
+    CheckKey otherCheckKey = CheckKey.create(otherProject, otherPatchSetId, otherCheckerUuid);
+    checkOperations.newCheck(otherCheckKey).state(CheckState.FAILED).upsert();
+
+    List<CheckInfo> checks =
+        listChecksInBulk(patchSet(project, patchSetId), patchSet(otherProject, otherPatchSetId));
+
+    CheckInfo expectedCheckInfo = checkOperations.check(checkKey).asInfo();
+    expectedCheckInfo.repository = project.get();
+    CheckInfo expectedOtherCheckInfo = checkOperations.check(otherCheckKey).asInfo();
+    expectedOtherCheckInfo.repository = otherProject.get();
+    assertThat(checks).containsExactly(expectedCheckInfo, expectedOtherCheckInfo).inOrder();
+  }
+
+  @Test
+  public void listChecksInBulkBackfillsChecks() throws Exception {
+    CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
+
+    List<CheckInfo> checks = listChecksInBulk(patchSet(project, patchSetId));
+
+    assertThat(checks).hasSize(1);
+    assertThat(checks.get(0).checkerUuid).isEqualTo(checkerUuid.get());
+    assertThat(checks.get(0).state).isEqualTo(CheckState.NOT_STARTED);
+  }
+
+  @Test
+  public void listChecksInBulkWithCheckerOption() throws Exception {
+    CheckerUuid checkerUuid =
+        checkerOperations.newChecker().repository(project).name("My Checker").create();
+    checkOperations.newCheck(CheckKey.create(project, patchSetId, checkerUuid)).upsert();
+
+    RestResponse r =
+        adminRestSession.post(
+            "/plugins/checks/checks.bulk/?o=CHECKER", input(patchSet(project, patchSetId)));
+    r.assertOK();
+    List<CheckInfo> checks = parse(r);
+
+    assertThat(checks).hasSize(1);
+    assertThat(checks.get(0).checkerName).isEqualTo("My Checker");
+    assertThat(checks.get(0).submitImpact).isNotNull();
+  }
+
+  @Test
+  public void patchSetsAreRequired() throws Exception {
+    adminRestSession.post("/plugins/checks/checks.bulk/", new BulkChecksInput()).assertBadRequest();
+  }
+
+  @Test
+  public void nonExistingPatchSetIsRejected() throws Exception {
+    adminRestSession
+        .post(
+            "/plugins/checks/checks.bulk/",
+            input(patchSet(project, PatchSet.id(patchSetId.changeId(), 2))))
+        .assertUnprocessableEntity();
+  }
+
+  @Test
+  public void patchSetInWrongRepositoryIsRejected() throws Exception {
+    adminRestSession
+        .post(
+            "/plugins/checks/checks.bulk/",
+            input(patchSet(Project.nameKey("non-existing"), patchSetId)))
+        .assertUnprocessableEntity();
+  }
+
+  @Test
+  public void nonVisiblePatchSetIsRejected() throws Exception {
+    gApi.changes().id(patchSetId.changeId().get()).setPrivate(true);
+
+    userRestSession
+        .post("/plugins/checks/checks.bulk/", input(patchSet(project, patchSetId)))
+        .assertUnprocessableEntity();
+  }
+
+  private List<CheckInfo> listChecksInBulk(CheckablePatchSetInfo... patchSets) throws Exception {
+    RestResponse r = adminRestSession.post("/plugins/checks/checks.bulk/", input(patchSets));
+    r.assertOK();
+    return parse(r);
+  }
+
+  private List<CheckInfo> parse(RestResponse r) throws Exception {
+    List<CheckInfo> checks =
+        newGson().fromJson(r.getReader(), new TypeToken<List<CheckInfo>>() {}.getType());
+    r.consume();
+    return checks;
+  }
+
+  private static BulkChecksInput input(CheckablePatchSetInfo... patchSets) {
+    BulkChecksInput input = new BulkChecksInput();
+    input.patchSets = ImmutableList.copyOf(Arrays.asList(patchSets));
+    return input;
+  }
+
+  private static CheckablePatchSetInfo patchSet(Project.NameKey project, PatchSet.Id psId) {
+    CheckablePatchSetInfo patchSet = new CheckablePatchSetInfo();
+    patchSet.repository = project.get();
+    patchSet.changeNumber = psId.changeId().get();
+    patchSet.patchSetId = psId.get();
+    return patchSet;
+  }
+}
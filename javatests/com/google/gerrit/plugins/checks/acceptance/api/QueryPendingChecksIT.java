@@ -24,10 +24,15 @@ import static com.google.gerrit.testing.GerritJUnit.assertThrows;
 import com.google.common.collect.Iterables;
 import com.google.gerrit.acceptance.RestResponse;
 import com.google.gerrit.acceptance.UseClockStep;
+import com.google.gerrit.acceptance.config.GerritConfig;
 import com.google.gerrit.acceptance.testsuite.project.ProjectOperations;
 import com.google.gerrit.acceptance.testsuite.request.RequestScopeOperations;
+import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.PatchSet;
 import com.google.gerrit.entities.Permission;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.common.ChangeInfo;
+import com.google.gerrit.extensions.common.ChangeInput;
 import com.google.gerrit.extensions.restapi.BadRequestException;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.plugins.checks.CheckKey;
@@ -674,6 +679,34 @@ public class QueryPendingChecksIT extends AbstractCheckersTest {
     assertThat(pendingChecksList).isEmpty();
   }
 
+  @Test
+  @GerritConfig(name = "plugin.checks.pendingChecksCacheTtl", value = "1 min")
+  public void identicalQueriesAreServedFromCache() throws Exception {
+    CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
+    checkOperations
+        .newCheck(CheckKey.create(project, patchSetId, checkerUuid))
+        .state(CheckState.NOT_STARTED)
+        .upsert();
+    assertThat(queryPendingChecks(checkerUuid, CheckState.NOT_STARTED)).hasSize(1);
+
+    checkOperations
+        .check(CheckKey.create(project, patchSetId, checkerUuid))
+        .forUpdate()
+        .state(CheckState.SUCCESSFUL)
+        .upsert();
+
+    // The identical query is served from the cache.
+    assertThat(queryPendingChecks(checkerUuid, CheckState.NOT_STARTED)).hasSize(1);
+
+    // A different query is computed.
+    assertThat(queryPendingChecks(checkerUuid, CheckState.NOT_STARTED, CheckState.SCHEDULED))
+        .isEmpty();
+
+    // The same query by another user is computed.
+    requestScopeOperations.setApiUser(user.id());
+    assertThat(queryPendingChecks(checkerUuid, CheckState.NOT_STARTED)).isEmpty();
+  }
+
   @Test
   public void pendingChecksViaRest() throws Exception {
     CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
@@ -782,6 +815,168 @@ public class QueryPendingChecksIT extends AbstractCheckersTest {
         .containsExactly(checkerUuid2.get(), new PendingCheckInfo(CheckState.NOT_STARTED));
   }
 
+  @Test
+  @GerritConfig(name = "plugin.checks.pendingChecksParallelism", value = "2")
+  public void queryPendingChecksWithSchemeInParallel() throws Exception {
+    PatchSet.Id patchSetId2 = createChange().getPatchSetId();
+    CheckerUuid checkerUuid1 =
+        checkerOperations
+            .newChecker()
+            .uuid(CheckerUuid.parse("test:checker-1"))
+            .repository(project)
+            .create();
+    CheckerUuid checkerUuid2 =
+        checkerOperations
+            .newChecker()
+            .uuid(CheckerUuid.parse("test:checker-2"))
+            .repository(project)
+            .create();
+    CheckerUuid checkerUuid3 =
+        checkerOperations
+            .newChecker()
+            .uuid(CheckerUuid.parse("test:checker-3"))
+            .repository(project)
+            .create();
+    checkOperations
+        .newCheck(CheckKey.create(project, patchSetId, checkerUuid2))
+        .state(CheckState.SUCCESSFUL)
+        .upsert();
+
+    List<PendingChecksInfo> pendingChecksList = queryPendingChecks("test", CheckState.NOT_STARTED);
+    assertThat(pendingChecksList).hasSize(5);
+
+    // The results are ordered by checker, independently of how the checkers were processed.
+    assertThat(pendingChecksList.get(0)).hasPatchSet(patchSetId2);
+    assertThat(pendingChecksList.get(0)).hasPendingChecksMapThat().containsKey(checkerUuid1.get());
+    assertThat(pendingChecksList.get(1)).hasPatchSet(patchSetId);
+    assertThat(pendingChecksList.get(1)).hasPendingChecksMapThat().containsKey(checkerUuid1.get());
+    assertThat(pendingChecksList.get(2)).hasPatchSet(patchSetId2);
+    assertThat(pendingChecksList.get(2)).hasPendingChecksMapThat().containsKey(checkerUuid2.get());
+    assertThat(pendingChecksList.get(3)).hasPatchSet(patchSetId2);
+    assertThat(pendingChecksList.get(3)).hasPendingChecksMapThat().containsKey(checkerUuid3.get());
+    assertThat(pendingChecksList.get(4)).hasPatchSet(patchSetId);
+    assertThat(pendingChecksList.get(4)).hasPendingChecksMapThat().containsKey(checkerUuid3.get());
+  }
+
+  @Test
+  public void queryPendingChecksWithSchemeAppliesQueryOfEachCheckerInSameRepository()
+      throws Exception {
+    PatchSet.Id patchSetId2 = createChange().getPatchSetId();
+    gApi.changes().id(patchSetId2.changeId().get()).topic("foo");
+    CheckerUuid checkerUuid1 =
+        checkerOperations
+            .newChecker()
+            .uuid(CheckerUuid.parse("test:checker-1"))
+            .repository(project)
+            .query("topic:foo")
+            .create();
+    CheckerUuid checkerUuid2 =
+        checkerOperations
+            .newChecker()
+            .uuid(CheckerUuid.parse("test:checker-2"))
+            .repository(project)
+            .create();
+
+    List<PendingChecksInfo> pendingChecksList = queryPendingChecks("test", CheckState.NOT_STARTED);
+    assertThat(pendingChecksList).hasSize(3);
+
+    assertThat(pendingChecksList.get(0)).hasPatchSet(patchSetId2);
+    assertThat(pendingChecksList.get(0))
+        .hasPendingChecksMapThat()
+        .containsExactly(checkerUuid1.get(), new PendingCheckInfo(CheckState.NOT_STARTED));
+    assertThat(pendingChecksList.get(1)).hasPatchSet(patchSetId2);
+    assertThat(pendingChecksList.get(1))
+        .hasPendingChecksMapThat()
+        .containsExactly(checkerUuid2.get(), new PendingCheckInfo(CheckState.NOT_STARTED));
+    assertThat(pendingChecksList.get(2)).hasPatchSet(patchSetId);
+    assertThat(pendingChecksList.get(2))
+        .hasPendingChecksMapThat()
+        .containsExactly(checkerUuid2.get(), new PendingCheckInfo(CheckState.NOT_STARTED));
+  }
+
+  @Test
+  public void queryPendingChecksWithSchemeAppliesQueryOfEachCheckerInDifferentRepositories()
+      throws Exception {
+    Project.NameKey otherProject = projectOperations.newProject().create();
+    PatchSet.Id patchSetId2 = createChangeWithTopic(project, "foo");
+    PatchSet.Id otherPatchSetId1 = createChangeWithTopic(otherProject, "foo");
+    PatchSet.Id otherPatchSetId2 = createChangeWithTopic(otherProject, "bar");
+    CheckerUuid checkerUuid1 =
+        checkerOperations
+            .newChecker()
+            .uuid(CheckerUuid.parse("test:checker-1"))
+            .repository(project)
+            .query("topic:foo")
+            .create();
+    CheckerUuid checkerUuid2 =
+        checkerOperations
+            .newChecker()
+            .uuid(CheckerUuid.parse("test:checker-2"))
+            .repository(otherProject)
+            .query("topic:foo")
+            .create();
+    CheckerUuid checkerUuid3 =
+        checkerOperations
+            .newChecker()
+            .uuid(CheckerUuid.parse("test:checker-3"))
+            .repository(otherProject)
+            .create();
+
+    List<PendingChecksInfo> pendingChecksList = queryPendingChecks("test", CheckState.NOT_STARTED);
+    assertThat(pendingChecksList).hasSize(4);
+
+    assertThat(pendingChecksList.get(0)).hasRepository(project);
+    assertThat(pendingChecksList.get(0)).hasPatchSet(patchSetId2);
+    assertThat(pendingChecksList.get(0)).hasPendingChecksMapThat().containsKey(checkerUuid1.get());
+    assertThat(pendingChecksList.get(1)).hasRepository(otherProject);
+    assertThat(pendingChecksList.get(1)).hasPatchSet(otherPatchSetId1);
+    assertThat(pendingChecksList.get(1)).hasPendingChecksMapThat().containsKey(checkerUuid2.get());
+    assertThat(pendingChecksList.get(2)).hasRepository(otherProject);
+    assertThat(pendingChecksList.get(2)).hasPatchSet(otherPatchSetId2);
+    assertThat(pendingChecksList.get(2)).hasPendingChecksMapThat().containsKey(checkerUuid3.get());
+    assertThat(pendingChecksList.get(3)).hasRepository(otherProject);
+    assertThat(pendingChecksList.get(3)).hasPatchSet(otherPatchSetId1);
+    assertThat(pendingChecksList.get(3)).hasPendingChecksMapThat().containsKey(checkerUuid3.get());
+  }
+
+  @Test
+  @GerritConfig(name = "index.maxLimit", value = "2")
+  public void queryPendingChecksWithSchemeIsCompleteIfChangesOfAllCheckersExceedQueryLimit()
+      throws Exception {
+    // Each checker matches 2 changes, which is within the query limit, but together the checkers
+    // match 4 changes, which exceeds the query limit.
+    PatchSet.Id fooPatchSetId1 = createChangeWithTopic(project, "foo");
+    PatchSet.Id fooPatchSetId2 = createChangeWithTopic(project, "foo");
+    PatchSet.Id barPatchSetId1 = createChangeWithTopic(project, "bar");
+    PatchSet.Id barPatchSetId2 = createChangeWithTopic(project, "bar");
+    CheckerUuid checkerUuid1 =
+        checkerOperations
+            .newChecker()
+            .uuid(CheckerUuid.parse("test:checker-1"))
+            .repository(project)
+            .query("topic:foo")
+            .create();
+    CheckerUuid checkerUuid2 =
+        checkerOperations
+            .newChecker()
+            .uuid(CheckerUuid.parse("test:checker-2"))
+            .repository(project)
+            .query("topic:bar")
+            .create();
+
+    List<PendingChecksInfo> pendingChecksList = queryPendingChecks("test", CheckState.NOT_STARTED);
+    assertThat(pendingChecksList).hasSize(4);
+
+    assertThat(pendingChecksList.get(0)).hasPatchSet(fooPatchSetId2);
+    assertThat(pendingChecksList.get(0)).hasPendingChecksMapThat().containsKey(checkerUuid1.get());
+    assertThat(pendingChecksList.get(1)).hasPatchSet(fooPatchSetId1);
+    assertThat(pendingChecksList.get(1)).hasPendingChecksMapThat().containsKey(checkerUuid1.get());
+    assertThat(pendingChecksList.get(2)).hasPatchSet(barPatchSetId2);
+    assertThat(pendingChecksList.get(2)).hasPendingChecksMapThat().containsKey(checkerUuid2.get());
+    assertThat(pendingChecksList.get(3)).hasPatchSet(barPatchSetId1);
+    assertThat(pendingChecksList.get(3)).hasPendingChecksMapThat().containsKey(checkerUuid2.get());
+  }
+
   @Test
   public void queryOnlyExactSchemas() throws Exception {
     CheckerUuid checkerUuid =
@@ -800,6 +995,14 @@ public class QueryPendingChecksIT extends AbstractCheckersTest {
     assertThat(queryPendingChecks("foobar", CheckState.NOT_STARTED)).hasSize(1);
   }
 
+  private PatchSet.Id createChangeWithTopic(Project.NameKey repository, String topic)
+      throws RestApiException {
+    ChangeInput changeInput = new ChangeInput(repository.get(), "master", "Test Change");
+    changeInput.topic = topic;
+    ChangeInfo changeInfo = gApi.changes().create(changeInput).get();
+    return PatchSet.id(Change.id(changeInfo._number), 1);
+  }
+
   private void assertInvalidQuery(String query, String expectedMessage) {
     BadRequestException thrown =
         assertThrows(BadRequestException.class, () -> pendingChecksApi.query(query).get());
@@ -16,7 +16,9 @@ package com.google.gerrit.plugins.checks.acceptance.api;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static java.util.concurrent.TimeUnit.MINUTES;
 
+import com.google.common.collect.ImmutableList;
 import com.google.gerrit.acceptance.UseClockStep;
 import com.google.gerrit.acceptance.config.GerritConfig;
 import com.google.gerrit.acceptance.testsuite.project.ProjectOperations;
@@ -26,6 +28,7 @@ import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.restapi.AuthException;
 import com.google.gerrit.extensions.restapi.BadRequestException;
 import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
+import com.google.gerrit.plugins.checks.ChangeReindexScheduler;
 import com.google.gerrit.plugins.checks.CheckKey;
 import com.google.gerrit.plugins.checks.CheckerUuid;
 import com.google.gerrit.plugins.checks.acceptance.AbstractCheckersTest;
@@ -34,11 +37,19 @@ import com.google.gerrit.plugins.checks.acceptance.testsuite.CheckerTestData;
 import com.google.gerrit.plugins.checks.api.CheckInfo;
 import com.google.gerrit.plugins.checks.api.CheckInput;
 import com.google.gerrit.plugins.checks.api.CheckState;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.Operation;
 import com.google.gerrit.server.util.time.TimeUtil;
 import com.google.gerrit.testing.TestTimeUtil;
 import com.google.inject.Inject;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -68,6 +79,75 @@ public class UpdateCheckIT extends AbstractCheckersTest {
     assertThat(info.state).isEqualTo(CheckState.FAILED);
   }
 
+  @Test
+  @GerritConfig(name = "plugin.checks.reindexDelay", value = "1h")
+  public void reindexIsSavedIfReindexOfChangeIsPending() throws Exception {
+    ChangeReindexScheduler reindexScheduler =
+        plugin.getSysInjector().getInstance(ChangeReindexScheduler.class);
+    long startSavedReindexes = reindexScheduler.getSavedReindexCount();
+
+    // Both updates change the combined check state and hence request a reindex of the change.
+    CheckInput input = new CheckInput();
+    input.state = CheckState.FAILED;
+    checksApiFactory.revision(patchSetId).id(checkKey.checkerUuid()).update(input);
+    assertThat(reindexScheduler.getSavedReindexCount() - startSavedReindexes).isEqualTo(0);
+
+    input.state = CheckState.SUCCESSFUL;
+    checksApiFactory.revision(patchSetId).id(checkKey.checkerUuid()).update(input);
+    assertThat(reindexScheduler.getSavedReindexCount() - startSavedReindexes).isEqualTo(1);
+  }
+
+  @Test
+  public void concurrentUpdatesOfChecksOfSameChangeAreNotRetried() throws Exception {
+    ChecksStorageMetrics storageMetrics =
+        plugin.getSysInjector().getInstance(ChecksStorageMetrics.class);
+    ImmutableList.Builder<CheckerUuid> checkerUuidsBuilder = ImmutableList.builder();
+    checkerUuidsBuilder.add(checkKey.checkerUuid());
+    for (int i = 1; i < 4; i++) {
+      CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
+      checkOperations.newCheck(CheckKey.create(project, patchSetId, checkerUuid)).upsert();
+      checkerUuidsBuilder.add(checkerUuid);
+    }
+    ImmutableList<CheckerUuid> checkerUuids = checkerUuidsBuilder.build();
+    long startRetries = storageMetrics.getRetryCount(Operation.UPDATE);
+    long startLockFailures = storageMetrics.getLockFailureCount();
+
+    // Each thread updates the check of its own checker, all checks are stored in the checks ref of
+    // the same change.
+    ExecutorService executor = Executors.newFixedThreadPool(checkerUuids.size());
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<>();
+      for (CheckerUuid checkerUuid : checkerUuids) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  requestScopeOperations.setApiUser(admin.id());
+                  start.await();
+                  for (int i = 0; i < 20; i++) {
+                    CheckInput input = new CheckInput();
+                    input.message = "update " + i;
+                    checksApiFactory.revision(patchSetId).id(checkerUuid).update(input);
+                  }
+                  return null;
+                }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get(1, MINUTES);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(storageMetrics.getRetryCount(Operation.UPDATE) - startRetries).isEqualTo(0);
+    assertThat(storageMetrics.getLockFailureCount() - startLockFailures).isEqualTo(0);
+    for (CheckerUuid checkerUuid : checkerUuids) {
+      assertThat(checksApiFactory.revision(patchSetId).id(checkerUuid).get().message)
+          .isEqualTo("update 19");
+    }
+  }
+
   @Test
   public void cannotUpdateCheckerUuid() throws Exception {
     CheckInput input = new CheckInput();
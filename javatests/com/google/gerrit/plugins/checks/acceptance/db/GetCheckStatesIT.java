@@ -0,0 +1,104 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.acceptance.db;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.acceptance.PushOneCommit;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.plugins.checks.Check;
+import com.google.gerrit.plugins.checks.CheckKey;
+import com.google.gerrit.plugins.checks.CheckerUuid;
+import com.google.gerrit.plugins.checks.Checks;
+import com.google.gerrit.plugins.checks.acceptance.AbstractCheckersTest;
+import com.google.gerrit.plugins.checks.api.CheckState;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.inject.Inject;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GetCheckStatesIT extends AbstractCheckersTest {
+  @Inject private ChangeData.Factory changeDataFactory;
+
+  private Checks checks;
+  private PushOneCommit.Result change;
+
+  @Before
+  public void setUp() throws Exception {
+    checks = plugin.getHttpInjector().getInstance(Checks.class);
+    change = createChange();
+  }
+
+  @Test
+  public void returnsEmptyListWhenNoCheck() throws Exception {
+    assertThat(checks.getCheckStates(project, currentPatchSet())).isEmpty();
+  }
+
+  @Test
+  public void doesNotBackfillChecks() throws Exception {
+    checkerOperations.newChecker().repository(project).create();
+
+    assertThat(checks.getCheckStates(project, currentPatchSet())).isEmpty();
+  }
+
+  @Test
+  public void returnsStoredChecks() throws Exception {
+    CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
+    CheckKey checkKey = CheckKey.create(project, change.getPatchSetId(), checkerUuid);
+    checkOperations.newCheck(checkKey).state(CheckState.RUNNING).message("foo").upsert();
+
+    ImmutableList<Check> checkStates = checks.getCheckStates(project, currentPatchSet());
+    assertThat(checkStates).hasSize(1);
+    Check checkState = checkStates.get(0);
+    Check check = checkOperations.check(checkKey).get();
+    assertThat(checkState.key()).isEqualTo(checkKey);
+    assertThat(checkState.state()).isEqualTo(CheckState.RUNNING);
+    assertThat(checkState.created()).isEqualTo(check.created());
+    assertThat(checkState.updated()).isEqualTo(check.updated());
+    // The message is not cached.
+    assertThat(checkState.message()).isEmpty();
+  }
+
+  @Test
+  public void reflectsCheckUpdates() throws Exception {
+    CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
+    CheckKey checkKey = CheckKey.create(project, change.getPatchSetId(), checkerUuid);
+    checkOperations.newCheck(checkKey).state(CheckState.RUNNING).upsert();
+    assertThat(checks.getCheckStates(project, currentPatchSet()).get(0).state())
+        .isEqualTo(CheckState.RUNNING);
+
+    checkOperations.check(checkKey).forUpdate().state(CheckState.FAILED).upsert();
+    assertThat(checks.getCheckStates(project, currentPatchSet()).get(0).state())
+        .isEqualTo(CheckState.FAILED);
+  }
+
+  @Test
+  public void returnsOnlyChecksOfRequestedPatchSet() throws Exception {
+    CheckerUuid checkerUuid = checkerOperations.newChecker().repository(project).create();
+    PatchSet.Id oldPatchSetId = change.getPatchSetId();
+    checkOperations
+        .newCheck(CheckKey.create(project, oldPatchSetId, checkerUuid))
+        .state(CheckState.SUCCESSFUL)
+        .upsert();
+    amendChange(change.getChangeId()).assertOkStatus();
+
+    assertThat(checks.getCheckStates(project, currentPatchSet())).isEmpty();
+  }
+
+  private PatchSet currentPatchSet() {
+    return changeDataFactory.create(project, change.getChange().getId()).currentPatchSet();
+  }
+}
@@ -0,0 +1,42 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.acceptance.load;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/** Helpers for reporting the measurements of the load tests. */
+final class LoadMeasurements {
+  /**
+   * Returns the given percentile of sorted values, using the nearest-rank method.
+   *
+   * @param sorted the values, sorted in ascending order
+   * @param percentile the percentile, between 0 and 100
+   */
+  static long percentile(long[] sorted, int percentile) {
+    int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(index, 0)];
+  }
+
+  static double toMillis(long nanos) {
+    return (double) nanos / MILLISECONDS.toNanos(1);
+  }
+
+  static double toSeconds(long nanos) {
+    return (double) nanos / SECONDS.toNanos(1);
+  }
+
+  private LoadMeasurements() {}
+}
@@ -0,0 +1,242 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.acceptance.load;
+
+import static com.google.gerrit.plugins.checks.acceptance.load.LoadMeasurements.percentile;
+import static com.google.gerrit.plugins.checks.acceptance.load.LoadMeasurements.toMillis;
+import static com.google.gerrit.plugins.checks.acceptance.load.LoadMeasurements.toSeconds;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.acceptance.testsuite.request.RequestScopeOperations;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.plugins.checks.CheckKey;
+import com.google.gerrit.plugins.checks.CheckerUuid;
+import com.google.gerrit.plugins.checks.acceptance.AbstractCheckersTest;
+import com.google.gerrit.plugins.checks.api.CheckInput;
+import com.google.gerrit.plugins.checks.api.CheckState;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.Operation;
+import com.google.inject.Inject;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Measures how many check updates per second can be posted concurrently.
+ *
+ * <p>A number of threads post updates of existing checks through the checks API, i.e. through
+ * {@link com.google.gerrit.plugins.checks.api.PostCheck} and {@link
+ * com.google.gerrit.plugins.checks.ChecksUpdate}. Thread {@code t} posts its {@code i}-th update
+ * for change {@code (t + i) % changes} and checker {@code (t + i / changes) % checkers}, so that
+ * the threads contend on the checks refs of the same changes. The fewer changes there are compared
+ * to the number of threads, the higher the contention.
+ *
+ * <p>The test reports the throughput, the median and 99th percentile of the latency, the number of
+ * retries and lock failures of the checks storage and the bytes allocated by the posting threads
+ * per update. Allocations of other threads, e.g. of the index executors, are not included.
+ *
+ * <p>The test is tagged as manual and hence isn't run as part of {@code bazel test //...}. The
+ * workload is configured by system properties:
+ *
+ * <ul>
+ *   <li>{@code checks.load.changes}: number of changes, by default 10
+ *   <li>{@code checks.load.checkers}: number of checkers, by default 10
+ *   <li>{@code checks.load.threads}: number of posting threads, by default 4
+ *   <li>{@code checks.load.updatesPerThread}: number of measured updates per thread, by default 200
+ *   <li>{@code checks.load.warmupUpdatesPerThread}: number of updates per thread that are posted
+ *       before the measurement, by default 50
+ * </ul>
+ *
+ * <p>Example:
+ *
+ * <pre>
+ * bazel test --test_output=streamed --jvmopt=-Dchecks.load.threads=16 \
+ *   //plugins/checks/javatests/com/google/gerrit/plugins/checks/acceptance/load:check_load
+ * </pre>
+ */
+public class PostCheckThroughputIT extends AbstractCheckersTest {
+  private static final CheckState[] STATES = {
+    CheckState.SCHEDULED, CheckState.RUNNING, CheckState.SUCCESSFUL
+  };
+
+  @Inject private RequestScopeOperations requestScopeOperations;
+
+  private final int changeCount = Integer.getInteger("checks.load.changes", 10);
+  private final int checkerCount = Integer.getInteger("checks.load.checkers", 10);
+  private final int threadCount = Integer.getInteger("checks.load.threads", 4);
+  private final int updatesPerThread = Integer.getInteger("checks.load.updatesPerThread", 200);
+  private final int warmupUpdatesPerThread =
+      Integer.getInteger("checks.load.warmupUpdatesPerThread", 50);
+
+  private ImmutableList<PatchSet.Id> patchSetIds;
+  private ImmutableList<CheckerUuid> checkerUuids;
+  private ChecksStorageMetrics storageMetrics;
+
+  @Before
+  public void setUp() throws Exception {
+    ImmutableList.Builder<CheckerUuid> checkerUuidsBuilder = ImmutableList.builder();
+    for (int i = 0; i < checkerCount; i++) {
+      checkerUuidsBuilder.add(checkerOperations.newChecker().repository(project).create());
+    }
+    checkerUuids = checkerUuidsBuilder.build();
+
+    // Create all checks upfront, so that concurrent posts for the same check don't race to create
+    // it and all measured posts are updates.
+    ImmutableList.Builder<PatchSet.Id> patchSetIdsBuilder = ImmutableList.builder();
+    for (int i = 0; i < changeCount; i++) {
+      PatchSet.Id patchSetId = createChange().getPatchSetId();
+      for (CheckerUuid checkerUuid : checkerUuids) {
+        checkOperations.newCheck(CheckKey.create(project, patchSetId, checkerUuid)).upsert();
+      }
+      patchSetIdsBuilder.add(patchSetId);
+    }
+    patchSetIds = patchSetIdsBuilder.build();
+
+    storageMetrics = plugin.getSysInjector().getInstance(ChecksStorageMetrics.class);
+  }
+
+  @Test
+  public void postChecksConcurrently() throws Exception {
+    run(warmupUpdatesPerThread);
+
+    long startRetries = storageMetrics.getRetryCount(Operation.UPDATE);
+    long startLockFailures = storageMetrics.getLockFailureCount();
+    Result result = run(updatesPerThread);
+    long retries = storageMetrics.getRetryCount(Operation.UPDATE) - startRetries;
+    long lockFailures = storageMetrics.getLockFailureCount() - startLockFailures;
+
+    long[] latencies = result.latencies;
+    Arrays.sort(latencies);
+    System.out.format(
+        "PostCheck throughput: %d changes, %d checkers, %d threads, %d updates per thread%n"
+            + "  throughput:        %.1f updates/s%n"
+            + "  latency p50:       %.2f ms%n"
+            + "  latency p99:       %.2f ms%n"
+            + "  retries:           %d%n"
+            + "  lock failures:     %d%n"
+            + "  allocation:        %.1f KiB/update, %.1f MiB/s%n",
+        changeCount,
+        checkerCount,
+        threadCount,
+        updatesPerThread,
+        latencies.length / toSeconds(result.elapsedNanos),
+        toMillis(percentile(latencies, 50)),
+        toMillis(percentile(latencies, 99)),
+        retries,
+        lockFailures,
+        (double) result.allocatedBytes / latencies.length / 1024,
+        result.allocatedBytes / toSeconds(result.elapsedNanos) / (1024 * 1024));
+  }
+
+  private Result run(int updates) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<Worker>> futures = new ArrayList<>(threadCount);
+      for (int t = 0; t < threadCount; t++) {
+        Worker worker = new Worker(t, updates);
+        futures.add(executor.submit(() -> worker.run(start)));
+      }
+
+      long startNanos = System.nanoTime();
+      start.countDown();
+      Result result = new Result(threadCount * updates);
+      for (Future<Worker> future : futures) {
+        Worker worker = future.get(10, MINUTES);
+        System.arraycopy(worker.latencies, 0, result.latencies, worker.index * updates, updates);
+        if (worker.firstFailure != null && result.failures == 0) {
+          result.firstFailure = worker.firstFailure;
+        }
+        result.failures += worker.failures;
+        result.allocatedBytes += worker.allocatedBytes;
+      }
+      result.elapsedNanos = System.nanoTime() - startNanos;
+      if (result.failures > 0) {
+        throw new AssertionError(
+            result.failures + " of " + result.latencies.length + " updates failed",
+            result.firstFailure);
+      }
+      return result;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Aggregated measurements of all threads of a run. */
+  private static class Result {
+    final long[] latencies;
+    long failures;
+    Exception firstFailure;
+    long allocatedBytes;
+    long elapsedNanos;
+
+    Result(int updates) {
+      latencies = new long[updates];
+    }
+  }
+
+  /** Posts the updates of one thread and measures them. */
+  private class Worker {
+    final int index;
+    final long[] latencies;
+    long failures;
+    Exception firstFailure;
+    long allocatedBytes;
+
+    Worker(int index, int updates) {
+      this.index = index;
+      this.latencies = new long[updates];
+    }
+
+    Worker run(CountDownLatch start) throws Exception {
+      // Each thread needs its own request context to call the API.
+      requestScopeOperations.setApiUser(admin.id());
+      com.sun.management.ThreadMXBean threadMXBean =
+          (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+      long threadId = Thread.currentThread().getId();
+
+      start.await();
+      long startAllocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+      for (int i = 0; i < latencies.length; i++) {
+        PatchSet.Id patchSetId = patchSetIds.get((index + i) % changeCount);
+        CheckInput input = new CheckInput();
+        input.checkerUuid = checkerUuids.get((index + i / changeCount) % checkerCount).get();
+        input.state = STATES[i % STATES.length];
+        input.message = "update " + i + " of thread " + index;
+
+        long startNanos = System.nanoTime();
+        try {
+          checksApiFactory.revision(patchSetId).create(input);
+        } catch (Exception e) {
+          if (firstFailure == null) {
+            firstFailure = e;
+          }
+          failures++;
+        }
+        latencies[i] = System.nanoTime() - startNanos;
+      }
+      allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - startAllocatedBytes;
+      return this;
+    }
+  }
+}
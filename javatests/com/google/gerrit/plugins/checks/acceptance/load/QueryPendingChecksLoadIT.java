@@ -0,0 +1,165 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.acceptance.load;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.plugins.checks.acceptance.load.LoadMeasurements.percentile;
+import static com.google.gerrit.plugins.checks.acceptance.load.LoadMeasurements.toMillis;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.plugins.checks.CheckKey;
+import com.google.gerrit.plugins.checks.CheckerUuid;
+import com.google.gerrit.plugins.checks.acceptance.AbstractCheckersTest;
+import com.google.gerrit.plugins.checks.api.CheckState;
+import com.google.gerrit.plugins.checks.api.PendingChecksInfo;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Measures the latency and the allocations of querying pending checks on a large number of
+ * changes.
+ *
+ * <p>The test creates open changes and checkers that are spread over several schemes. All checkers
+ * apply to all changes. Each change gets checks for a few of the checkers, with states cycling
+ * through {@link #SEEDED_STATES}, so that state predicates select a part of the checks. The other
+ * checks of the changes are not started.
+ *
+ * <p>Then pending checks are queried by checker and by scheme, with and without state predicates.
+ * For each query the test reports the number of returned changes, the median and 99th percentile
+ * of the latency and the bytes allocated per query. Allocations of other threads, e.g. of the index
+ * executors, are not included.
+ *
+ * <p>The test is tagged as manual and hence isn't run as part of {@code bazel test //...}. The
+ * scenario is configured by system properties:
+ *
+ * <ul>
+ *   <li>{@code checks.pending.changes}: number of open changes, by default 2000
+ *   <li>{@code checks.pending.checkers}: number of checkers, by default 200
+ *   <li>{@code checks.pending.schemes}: number of checker schemes, by default 4
+ *   <li>{@code checks.pending.checksPerChange}: number of checks that are created per change, by
+ *       default 5
+ *   <li>{@code checks.pending.iterations}: number of measured executions of each query, by default
+ *       50
+ *   <li>{@code checks.pending.warmupIterations}: number of executions of each query before the
+ *       measurement, by default 10
+ * </ul>
+ *
+ * <p>Example:
+ *
+ * <pre>
+ * bazel test --test_output=streamed --jvmopt=-Dchecks.pending.changes=5000 \
+ *   //plugins/checks/javatests/com/google/gerrit/plugins/checks/acceptance/load:check_load
+ * </pre>
+ */
+public class QueryPendingChecksLoadIT extends AbstractCheckersTest {
+  private static final CheckState[] SEEDED_STATES = {
+    CheckState.SCHEDULED, CheckState.RUNNING, CheckState.SUCCESSFUL, CheckState.FAILED
+  };
+
+  private final int changeCount = Integer.getInteger("checks.pending.changes", 2000);
+  private final int checkerCount = Integer.getInteger("checks.pending.checkers", 200);
+  private final int schemeCount = Integer.getInteger("checks.pending.schemes", 4);
+  private final int checksPerChange = Integer.getInteger("checks.pending.checksPerChange", 5);
+  private final int iterations = Integer.getInteger("checks.pending.iterations", 50);
+  private final int warmupIterations = Integer.getInteger("checks.pending.warmupIterations", 10);
+
+  private ImmutableList<CheckerUuid> checkerUuids;
+
+  @Before
+  public void setUp() throws Exception {
+    ImmutableList.Builder<CheckerUuid> checkerUuidsBuilder = ImmutableList.builder();
+    for (int i = 0; i < checkerCount; i++) {
+      checkerUuidsBuilder.add(
+          checkerOperations
+              .newChecker()
+              .uuid(CheckerUuid.parse(scheme(i % schemeCount) + ":checker-" + i))
+              .repository(project)
+              .create());
+    }
+    checkerUuids = checkerUuidsBuilder.build();
+
+    for (int i = 0; i < changeCount; i++) {
+      PatchSet.Id patchSetId = createChange().getPatchSetId();
+      for (int j = 0; j < Math.min(checksPerChange, checkerCount); j++) {
+        CheckerUuid checkerUuid = checkerUuids.get((i + j) % checkerCount);
+        checkOperations
+            .newCheck(CheckKey.create(project, patchSetId, checkerUuid))
+            .state(SEEDED_STATES[(i + j) % SEEDED_STATES.length])
+            .upsert();
+      }
+    }
+  }
+
+  @Test
+  public void queryPendingChecks() throws Exception {
+    String checker = "checker:\"" + checkerUuids.get(0) + "\"";
+    String scheme = "scheme:" + scheme(0);
+    List<String> queries =
+        ImmutableList.of(
+            checker,
+            checker + " state:SCHEDULED",
+            checker + " (state:SCHEDULED OR state:RUNNING)",
+            scheme,
+            scheme + " state:SCHEDULED",
+            scheme + " (state:SCHEDULED OR state:RUNNING)");
+
+    System.out.format(
+        "QueryPendingChecks: %d changes, %d checkers, %d schemes, %d checks per change%n",
+        changeCount, checkerCount, schemeCount, checksPerChange);
+    for (String query : queries) {
+      measure(query);
+    }
+  }
+
+  private void measure(String query) throws Exception {
+    for (int i = 0; i < warmupIterations; i++) {
+      pendingChecksApi.query(query).get();
+    }
+
+    com.sun.management.ThreadMXBean threadMXBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long[] latencies = new long[iterations];
+    int resultSize = 0;
+    long startAllocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < iterations; i++) {
+      long startNanos = System.nanoTime();
+      List<PendingChecksInfo> result = pendingChecksApi.query(query).get();
+      latencies[i] = System.nanoTime() - startNanos;
+      resultSize = result.size();
+    }
+    long allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - startAllocatedBytes;
+
+    // Measuring a query that matches nothing would be pointless.
+    assertThat(resultSize).isGreaterThan(0);
+
+    Arrays.sort(latencies);
+    System.out.format(
+        "  %-60s %5d changes, p50 %8.2f ms, p99 %8.2f ms, %10.1f KiB/query%n",
+        query,
+        resultSize,
+        toMillis(percentile(latencies, 50)),
+        toMillis(percentile(latencies, 99)),
+        (double) allocatedBytes / iterations / 1024);
+  }
+
+  private static String scheme(int index) {
+    return "scheme" + index;
+  }
+}
@@ -0,0 +1,135 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.api;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.plugins.checks.Check;
+import com.google.gerrit.plugins.checks.CheckKey;
+import com.google.gerrit.plugins.checks.Checker;
+import com.google.gerrit.plugins.checks.CheckerUuid;
+import com.google.gerrit.plugins.checks.api.CombinedCheckState.CheckStateCount;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for counting the check states of a patch set, as it's done for the combined check
+ * state and the submit rule.
+ *
+ * <p>{@code statesAndRequiredMap} counts the states by collecting them into a multimap of states
+ * to boxed required flags first, {@code accumulator} counts them with a {@link
+ * CheckStateCount.Accumulator} while iterating over the checks. Both look up the checker of each
+ * check, but don't evaluate checker queries, which are the same for both.
+ *
+ * <p>Allocations are reported by running the benchmarks with the GC profiler, e.g. {@code bazel
+ * run //plugins/checks/javatests/com/google/gerrit/plugins/checks/api:api_benchmarks -- -prof
+ * gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CombinedCheckStateBenchmark {
+  private static final CheckState[] STATES = CheckState.values();
+
+  @Param({"1", "10", "100"})
+  public int checks;
+
+  private ImmutableList<Checker> checkers;
+  private ImmutableList<Check> checkList;
+
+  @Setup
+  public void setUp() {
+    Project.NameKey project = Project.nameKey("project");
+    PatchSet.Id patchSetId = PatchSet.id(Change.id(1), 1);
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    ImmutableList.Builder<Checker> checkersBuilder = ImmutableList.builder();
+    ImmutableList.Builder<Check> checkListBuilder = ImmutableList.builder();
+    for (int i = 0; i < checks; i++) {
+      CheckerUuid checkerUuid = CheckerUuid.parse("scheme:checker-" + i);
+      checkersBuilder.add(
+          Checker.builder()
+              .setUuid(checkerUuid)
+              .setName("checker-" + i)
+              .setRepository(project)
+              .setStatus(CheckerStatus.ENABLED)
+              .setBlockingConditions(
+                  i % 2 == 0
+                      ? ImmutableSortedSet.of(BlockingCondition.STATE_NOT_PASSING)
+                      : ImmutableSortedSet.of())
+              .setCreated(now)
+              .setUpdated(now)
+              .setRefState(ObjectId.zeroId())
+              .build());
+      checkListBuilder.add(
+          Check.builder(CheckKey.create(project, patchSetId, checkerUuid))
+              .setState(STATES[i % STATES.length])
+              .setCreated(now)
+              .setUpdated(now)
+              .build());
+    }
+    checkers = checkersBuilder.build();
+    checkList = checkListBuilder.build();
+  }
+
+  @Benchmark
+  public CombinedCheckState statesAndRequiredMap() {
+    ImmutableMap<String, Checker> checkersByUuid =
+        checkers.stream().collect(ImmutableMap.toImmutableMap(c -> c.getUuid().get(), c -> c));
+    ImmutableMap<String, Check> checksByUuid =
+        checkList.stream()
+            .collect(ImmutableMap.toImmutableMap(c -> c.key().checkerUuid().get(), c -> c));
+    ImmutableListMultimap.Builder<CheckState, Boolean> statesAndRequired =
+        ImmutableListMultimap.builder();
+    for (Map.Entry<String, Check> entry : checksByUuid.entrySet()) {
+      Checker checker = checkersByUuid.get(entry.getKey());
+      statesAndRequired.put(entry.getValue().state(), checker != null && checker.isRequired());
+    }
+    return CombinedCheckState.combine(statesAndRequired.build());
+  }
+
+  @Benchmark
+  public CombinedCheckState accumulator() {
+    ImmutableMap<CheckerUuid, Checker> checkersByUuid =
+        Maps.uniqueIndex(checkers, Checker::getUuid);
+    CheckStateCount.Accumulator checkStateCount = CheckStateCount.accumulator();
+    for (Check check : checkList) {
+      Checker checker = checkersByUuid.get(check.key().checkerUuid());
+      checkStateCount.add(check.state(), checker != null && checker.isRequired());
+    }
+    return CombinedCheckState.combine(checkStateCount.build());
+  }
+}
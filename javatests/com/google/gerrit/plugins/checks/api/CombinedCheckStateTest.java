@@ -24,6 +24,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
+import com.google.gerrit.plugins.checks.api.CombinedCheckState.CheckStateCount;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -131,6 +132,32 @@ public class CombinedCheckStateTest {
         .isEqualTo(CombinedCheckState.FAILED);
   }
 
+  @Test
+  public void accumulatorCountsLikeStateMap() {
+    ImmutableListMultimap<CheckState, Boolean> states =
+        statesBuilder()
+            .put(CheckState.FAILED, true)
+            .put(CheckState.FAILED, false)
+            .put(CheckState.FAILED, false)
+            .put(CheckState.RUNNING, true)
+            .put(CheckState.NOT_STARTED, false)
+            .put(CheckState.SCHEDULED, false)
+            .put(CheckState.SUCCESSFUL, true)
+            .put(CheckState.NOT_RELEVANT, true)
+            .build();
+    CheckStateCount.Accumulator accumulator = CheckStateCount.accumulator();
+    states.forEach(accumulator::add);
+
+    CheckStateCount checkStateCount = accumulator.build();
+    assertThat(checkStateCount).isEqualTo(CheckStateCount.create(states));
+    assertThat(checkStateCount.failedRequiredCount()).isEqualTo(1);
+    assertThat(checkStateCount.failedOptionalCount()).isEqualTo(2);
+    assertThat(checkStateCount.inProgressRequiredCount()).isEqualTo(1);
+    assertThat(checkStateCount.inProgressOptionalCount()).isEqualTo(2);
+    assertThat(checkStateCount.successfulCount()).isEqualTo(1);
+    assertThat(CombinedCheckState.combine(checkStateCount)).isEqualTo(CombinedCheckState.FAILED);
+  }
+
   private static ImmutableListMultimap.Builder<CheckState, Boolean> statesBuilder() {
     return ImmutableListMultimap.builder();
   }
@@ -0,0 +1,157 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.api;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.gerrit.index.query.Predicate;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.plugins.checks.Check;
+import com.google.gerrit.plugins.checks.index.CheckStatePredicate;
+import com.google.gerrit.plugins.checks.index.CheckerSchemePredicate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+
+public class PendingChecksCacheTest {
+  private static final Predicate<Check> SCHEME = new CheckerSchemePredicate("test");
+  private static final Predicate<Check> SCHEDULED = new CheckStatePredicate(CheckState.SCHEDULED);
+  private static final Predicate<Check> RUNNING = new CheckStatePredicate(CheckState.RUNNING);
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+  private final PendingChecksCache.Metrics metrics =
+      new PendingChecksCache.Metrics("checks", new DisabledMetricMaker());
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void normalizeIgnoresOrderOfOperands() {
+    assertThat(PendingChecksCache.normalize(Predicate.and(SCHEME, SCHEDULED)))
+        .isEqualTo(PendingChecksCache.normalize(Predicate.and(SCHEDULED, SCHEME)));
+    assertThat(PendingChecksCache.normalize(Predicate.or(RUNNING, SCHEDULED)))
+        .isEqualTo(PendingChecksCache.normalize(Predicate.or(SCHEDULED, RUNNING)));
+  }
+
+  @Test
+  public void normalizeFlattensNestedOperationsOfSameKind() {
+    assertThat(
+            PendingChecksCache.normalize(
+                Predicate.and(SCHEME, Predicate.and(SCHEDULED, Predicate.not(RUNNING)))))
+        .isEqualTo(
+            PendingChecksCache.normalize(
+                Predicate.and(Predicate.and(Predicate.not(RUNNING), SCHEME), SCHEDULED)));
+  }
+
+  @Test
+  public void normalizeKeepsDifferentQueriesApart() {
+    Predicate<Check> schemeAndScheduledOrRunning =
+        Predicate.and(SCHEME, Predicate.or(SCHEDULED, RUNNING));
+    Predicate<Check> schemeAndScheduledOrJustRunning =
+        Predicate.or(Predicate.and(SCHEME, SCHEDULED), RUNNING);
+    assertThat(PendingChecksCache.normalize(schemeAndScheduledOrRunning))
+        .isNotEqualTo(PendingChecksCache.normalize(schemeAndScheduledOrJustRunning));
+    Predicate<Check> schemeAndNotScheduled = Predicate.and(SCHEME, Predicate.not(SCHEDULED));
+    assertThat(PendingChecksCache.normalize(Predicate.and(SCHEME, SCHEDULED)))
+        .isNotEqualTo(PendingChecksCache.normalize(schemeAndNotScheduled));
+  }
+
+  @Test
+  public void identicalInFlightQueriesAreCoalescedWithoutTtl() throws Exception {
+    PendingChecksCache cache = new PendingChecksCache(metrics, 0);
+    PendingChecksCache.Key key = PendingChecksCache.Key.create(SCHEDULED, "user");
+    ImmutableList<PendingChecksInfo> result = ImmutableList.of(new PendingChecksInfo());
+
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Future<ImmutableList<PendingChecksInfo>> first =
+        executor.submit(
+            () ->
+                cache.get(
+                    key,
+                    () -> {
+                      loading.countDown();
+                      Uninterruptibles.awaitUninterruptibly(release);
+                      return result;
+                    }));
+    loading.await();
+
+    AtomicReference<Thread> secondThread = new AtomicReference<>();
+    AtomicInteger secondLoads = new AtomicInteger();
+    Future<ImmutableList<PendingChecksInfo>> second =
+        executor.submit(
+            () -> {
+              secondThread.set(Thread.currentThread());
+              return cache.get(
+                  key,
+                  () -> {
+                    secondLoads.incrementAndGet();
+                    return ImmutableList.of();
+                  });
+            });
+    // Only release the first query once the second one waits for it.
+    while (secondThread.get() == null || secondThread.get().getState() != Thread.State.WAITING) {
+      MILLISECONDS.sleep(1);
+    }
+    release.countDown();
+
+    assertThat(first.get(1, MINUTES)).isSameInstanceAs(result);
+    assertThat(second.get(1, MINUTES)).isSameInstanceAs(result);
+    assertThat(secondLoads.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void resultIsNotReusedAfterCompletionWithoutTtl() throws Exception {
+    PendingChecksCache cache = new PendingChecksCache(metrics, 0);
+    PendingChecksCache.Key key = PendingChecksCache.Key.create(SCHEDULED, "user");
+    AtomicInteger loads = new AtomicInteger();
+
+    PendingChecksCache.Loader loader =
+        () -> {
+          loads.incrementAndGet();
+          return ImmutableList.of();
+        };
+
+    cache.get(key, loader);
+    cache.get(key, loader);
+    assertThat(loads.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void resultIsReusedWithinTtl() throws Exception {
+    PendingChecksCache cache = new PendingChecksCache(metrics, MINUTES.toMillis(1));
+    AtomicInteger loads = new AtomicInteger();
+    PendingChecksCache.Loader loader =
+        () -> {
+          loads.incrementAndGet();
+          return ImmutableList.of();
+        };
+
+    cache.get(PendingChecksCache.Key.create(Predicate.and(SCHEME, SCHEDULED), "user"), loader);
+    cache.get(PendingChecksCache.Key.create(Predicate.and(SCHEDULED, SCHEME), "user"), loader);
+    assertThat(loads.get()).isEqualTo(1);
+  }
+}
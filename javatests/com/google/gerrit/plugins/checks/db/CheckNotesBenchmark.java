@@ -0,0 +1,214 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.gerrit.plugins.checks.db;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.plugins.checks.Check;
+import com.google.gerrit.plugins.checks.api.CheckState;
+import com.google.gerrit.plugins.checks.cache.proto.Cache.CheckStatesProto;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.PhaseTimings;
+import com.google.gerrit.server.notedb.ChangeNoteJson;
+import com.google.gerrit.server.util.time.TimeUtil;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.notes.NoteMap;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for parsing and serializing the check notes of a change.
+ *
+ * <p>The checks ref of a synthetic change is written to an in-memory repository. The change has
+ * {@link #patchSets} patch sets with checks, each with {@link #checkersPerRevision} checks whose
+ * messages have {@link #messageSize} characters.
+ *
+ * <p>{@code parseChecks} and {@code checkStatesFromCache} compare what {@link CheckStatesCache}
+ * saves on a cache hit: parsing the notes of the change versus converting the cached check states
+ * of a patch set. Both need to read the checks ref first, which is not included.
+ *
+ * <p>Run with {@code bazel run
+ * //plugins/checks/javatests/com/google/gerrit/plugins/checks/db:db_benchmarks}, see the build
+ * documentation of the plugin.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckNotesBenchmark {
+  @Param({"1", "10", "50"})
+  public int patchSets;
+
+  @Param({"1", "10", "100"})
+  public int checkersPerRevision;
+
+  @Param({"0", "100", "10000"})
+  public int messageSize;
+
+  private ChangeNoteJson changeNoteJson;
+  private ChecksStorageMetrics metrics;
+  private InMemoryRepository repo;
+  private Map<ObjectId, NoteDbCheckMap> notesMap;
+  private NoteDbCheckMap revisionChecks;
+  private RevCommit checksCommit;
+  private ObjectId revisionNoteId;
+  private ObjectReader reader;
+  private PatchSet patchSet;
+  private CheckStatesProto checkStates;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    changeNoteJson = new ChangeNoteJson();
+    metrics = new ChecksStorageMetrics("checks", new DisabledMetricMaker());
+    repo = new InMemoryRepository(new DfsRepositoryDescription("benchmark"));
+    notesMap = createNotesMap();
+    revisionChecks = notesMap.values().iterator().next();
+
+    try (ObjectInserter ins = repo.newObjectInserter()) {
+      CommitBuilder cb = newCommitBuilder();
+      NoteDbChecksUpdate.writeNotesMap(
+          changeNoteJson, metrics, notesMap, cb, ins, new PhaseTimings());
+      ObjectId commitId = ins.insert(cb);
+      ins.flush();
+      try (RevWalk rw = new RevWalk(repo)) {
+        checksCommit = rw.parseCommit(commitId);
+      }
+    }
+
+    reader = repo.newObjectReader();
+    NoteMap noteMap = NoteMap.read(reader, checksCommit);
+    revisionNoteId = noteMap.get(notesMap.keySet().iterator().next());
+
+    patchSet =
+        PatchSet.builder()
+            .id(PatchSet.id(Change.id(1), 1))
+            .commitId(notesMap.keySet().iterator().next())
+            .uploader(Account.id(1000))
+            .realUploader(Account.id(1000))
+            .createdOn(TimeUtil.now())
+            .build();
+    checkStates = CheckStatesCache.toProto(notesMap);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    reader.close();
+    repo.close();
+  }
+
+  private Map<ObjectId, NoteDbCheckMap> createNotesMap() {
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    String message = Strings.repeat("x", messageSize);
+    Map<ObjectId, NoteDbCheckMap> result = new HashMap<>();
+    ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+    for (int ps = 1; ps <= patchSets; ps++) {
+      NoteDbCheckMap checks = NoteDbCheckMap.empty();
+      for (int c = 0; c < checkersPerRevision; c++) {
+        NoteDbCheck check = new NoteDbCheck();
+        check.state = CheckState.values()[c % CheckState.values().length];
+        check.message = Strings.emptyToNull(message);
+        check.url = "https://ci.example.com/builds/" + ps + "/" + c;
+        check.started = now;
+        check.created = now;
+        check.updated = now;
+        checks.checks.put("test:checker-" + c, check);
+      }
+      // Stands in for the commit of the patch set, which isn't needed for the benchmark.
+      result.put(formatter.idFor(OBJ_BLOB, Integer.toString(ps).getBytes(UTF_8)), checks);
+    }
+    return result;
+  }
+
+  private static CommitBuilder newCommitBuilder() {
+    PersonIdent ident = new PersonIdent("Gerrit Code Review", "gerrit@example.com");
+    CommitBuilder cb = new CommitBuilder();
+    cb.setAuthor(ident);
+    cb.setCommitter(ident);
+    cb.setMessage("Insert checks");
+    return cb;
+  }
+
+  /** Reads and parses the note of a single patch set. */
+  @Benchmark
+  public CheckRevisionNote parseRevisionNote() throws Exception {
+    CheckRevisionNote note = new CheckRevisionNote(changeNoteJson, reader, revisionNoteId);
+    note.parse();
+    return note;
+  }
+
+  /** Reads and parses the notes of all patch sets of the change. */
+  @Benchmark
+  public CheckRevisionNoteMap parseChecks() throws Exception {
+    return CheckRevisionNoteMap.parseChecks(
+        changeNoteJson, reader, NoteMap.read(reader, checksCommit));
+  }
+
+  /** Converts the cached check states of a single patch set, as done on a cache hit. */
+  @Benchmark
+  public ImmutableList<Check> checkStatesFromCache() {
+    return CheckStatesCache.toChecks(Project.nameKey("benchmark"), patchSet, checkStates);
+  }
+
+  /** Serializes the checks of a single patch set. */
+  @Benchmark
+  public byte[] toData() throws Exception {
+    return NoteDbChecksUpdate.toData(changeNoteJson, revisionChecks);
+  }
+
+  /**
+   * Serializes the checks of all patch sets and inserts the notes and the notes tree. The inserted
+   * objects are not flushed, so that the repository doesn't grow over the iterations.
+   */
+  @Benchmark
+  public CommitBuilder writeNotesMap() throws Exception {
+    CommitBuilder cb = newCommitBuilder();
+    try (ObjectInserter ins = repo.newObjectInserter()) {
+      NoteDbChecksUpdate.writeNotesMap(
+          changeNoteJson, metrics, notesMap, cb, ins, new PhaseTimings());
+    }
+    return cb;
+  }
+}
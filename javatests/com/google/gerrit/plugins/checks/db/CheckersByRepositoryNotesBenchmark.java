@@ -0,0 +1,190 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.db;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.plugins.checks.CheckerRef;
+import com.google.gerrit.plugins.checks.CheckerUuid;
+import com.google.gerrit.server.config.AllProjectsName;
+import com.google.gerrit.server.extensions.events.GitReferenceUpdated;
+import com.google.gerrit.server.git.meta.MetaDataUpdate;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.notes.NoteMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for reading and updating the checkers by repository notes.
+ *
+ * <p>{@code refs/meta/checkers} of an in-memory repository is populated with {@link #repositories}
+ * notes of {@link #checkersPerRepository} checker UUIDs each. The benchmarks read and update the
+ * note of one of the repositories.
+ *
+ * <p>The {@code parseNote} and {@code sortedNoteLines} benchmarks compare decoding a note into a
+ * sorted set of strings, as it's still done for notes that are not sorted, with viewing it as
+ * {@link SortedNoteLines}.
+ *
+ * <p>Run with {@code bazel run
+ * //plugins/checks/javatests/com/google/gerrit/plugins/checks/db:db_benchmarks}, see the build
+ * documentation of the plugin.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckersByRepositoryNotesBenchmark {
+  @Param({"1", "1000"})
+  public int repositories;
+
+  @Param({"10", "1000", "5000"})
+  public int checkersPerRepository;
+
+  private final AllProjectsName allProjectsName = new AllProjectsName("All-Projects");
+  private final PersonIdent ident = new PersonIdent("Gerrit Server", "noreply@example.com");
+
+  private InMemoryRepository repo;
+  private ObjectId initialRevision;
+  private Project.NameKey repository;
+  private byte[] note;
+  private CheckerUuid existingChecker;
+  private byte[] existingCheckerRaw;
+  private CheckerUuid newChecker;
+
+  @Setup
+  public void setUp() throws Exception {
+    repo = new InMemoryRepository(new DfsRepositoryDescription("All-Projects"));
+    try (ObjectInserter ins = repo.newObjectInserter()) {
+      NoteMap noteMap = NoteMap.newEmptyMap();
+      for (int r = 0; r < repositories; r++) {
+        ImmutableSortedSet.Builder<String> checkerUuids = ImmutableSortedSet.naturalOrder();
+        for (int c = 0; c < checkersPerRepository; c++) {
+          checkerUuids.add(checkerUuid(c * 2).get());
+        }
+        byte[] raw = String.join("\n", checkerUuids.build()).getBytes(UTF_8);
+        noteMap.set(
+            CheckersByRepositoryNotes.computeRepositorySha1(repositoryName(r)),
+            ins.insert(OBJ_BLOB, raw));
+        if (r == 0) {
+          note = raw;
+        }
+      }
+
+      CommitBuilder cb = new CommitBuilder();
+      cb.setTreeId(noteMap.writeTree(ins));
+      cb.setAuthor(ident);
+      cb.setCommitter(ident);
+      cb.setMessage("Populate checkers by repository\n");
+      initialRevision = ins.insert(cb);
+      ins.flush();
+    }
+
+    repository = repositoryName(0);
+    // The note contains the even checker numbers, hence both checkers are in the middle of it.
+    existingChecker = checkerUuid(checkersPerRepository);
+    existingCheckerRaw = existingChecker.get().getBytes(UTF_8);
+    newChecker = checkerUuid(checkersPerRepository + 1);
+  }
+
+  @Setup(Level.Invocation)
+  public void resetRef() throws IOException {
+    RefUpdate ru = repo.updateRef(CheckerRef.REFS_META_CHECKERS);
+    ru.setNewObjectId(initialRevision);
+    ru.disableRefLog();
+    ru.forceUpdate();
+  }
+
+  @Benchmark
+  public ImmutableSortedSet<CheckerUuid> get() throws Exception {
+    return CheckersByRepositoryNotes.load(allProjectsName, repo).get(repository);
+  }
+
+  @Benchmark
+  public void insert() throws Exception {
+    CheckersByRepositoryNotes notes = CheckersByRepositoryNotes.load(allProjectsName, repo);
+    notes.insert(newChecker, repository);
+    commit(notes);
+  }
+
+  @Benchmark
+  public void remove() throws Exception {
+    CheckersByRepositoryNotes notes = CheckersByRepositoryNotes.load(allProjectsName, repo);
+    notes.remove(existingChecker, repository);
+    commit(notes);
+  }
+
+  @Benchmark
+  public void noOpInsert() throws Exception {
+    CheckersByRepositoryNotes notes = CheckersByRepositoryNotes.load(allProjectsName, repo);
+    notes.insert(existingChecker, repository);
+    commit(notes);
+  }
+
+  @Benchmark
+  public boolean parseNote() {
+    return CheckersByRepositoryNotes.parseNote(note).contains(existingChecker.get());
+  }
+
+  @Benchmark
+  public boolean sortedNoteLines() {
+    return SortedNoteLines.tryParse(note).get().indexOf(existingCheckerRaw) >= 0;
+  }
+
+  @Benchmark
+  public ImmutableSortedSet<CheckerUuid> parseCheckerUuidsFromNote() {
+    return CheckersByRepositoryNotes.parseCheckerUuidsFromNote(
+        ObjectId.zeroId(), note, ObjectId.zeroId());
+  }
+
+  private void commit(CheckersByRepositoryNotes notes) throws IOException {
+    try (MetaDataUpdate md =
+        new MetaDataUpdate(GitReferenceUpdated.DISABLED, allProjectsName, repo)) {
+      md.getCommitBuilder().setAuthor(ident);
+      md.getCommitBuilder().setCommitter(ident);
+      notes.commit(md);
+    }
+  }
+
+  private static Project.NameKey repositoryName(int index) {
+    return Project.nameKey("repository-" + index);
+  }
+
+  private static CheckerUuid checkerUuid(int index) {
+    return CheckerUuid.parse(String.format("scheme:checker-%06d", index));
+  }
+}
@@ -0,0 +1,105 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.db;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.plugins.checks.db.ChecksRefLocks.HeldLock;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.Phase;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.PhaseTimings;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Test;
+
+public class ChecksRefLocksTest {
+  private static final Project.NameKey PROJECT = Project.nameKey("test");
+  private static final Change.Id CHANGE_ID = Change.id(1);
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void lockIsHeldUntilClosed() throws Exception {
+    ChecksRefLocks locks = new ChecksRefLocks(1, 10);
+    try (HeldLock lock = locks.lock(PROJECT, CHANGE_ID, new PhaseTimings())) {
+      assertThat(lock.isHeld()).isTrue();
+      assertThat(lockInOtherThread(locks)).isFalse();
+    }
+    assertThat(lockInOtherThread(locks)).isTrue();
+  }
+
+  @Test
+  public void lockIsNotHeldIfLockingIsDisabled() {
+    ChecksRefLocks locks = new ChecksRefLocks(0, MINUTES.toMillis(1));
+    try (HeldLock lock = locks.lock(PROJECT, CHANGE_ID, new PhaseTimings())) {
+      assertThat(lock.isHeld()).isFalse();
+    }
+  }
+
+  @Test
+  public void lockIsNotHeldAfterTimeout() throws Exception {
+    ChecksRefLocks locks = new ChecksRefLocks(1, 10);
+    try (HeldLock lock = locks.lock(PROJECT, CHANGE_ID, new PhaseTimings())) {
+      Future<Long> waitNanos =
+          executor.submit(
+              () -> {
+                PhaseTimings timings = new PhaseTimings();
+                try (HeldLock otherLock = locks.lock(PROJECT, CHANGE_ID, timings)) {
+                  assertThat(otherLock.isHeld()).isFalse();
+                }
+                return timings.getNanos(Phase.LOCK);
+              });
+      assertThat(waitNanos.get(1, MINUTES)).isAtLeast(MILLISECONDS.toNanos(10));
+    }
+  }
+
+  @Test
+  public void lockIsNotHeldIfInterrupted() throws Exception {
+    ChecksRefLocks locks = new ChecksRefLocks(1, MINUTES.toMillis(1));
+    try (HeldLock lock = locks.lock(PROJECT, CHANGE_ID, new PhaseTimings())) {
+      Future<Boolean> interrupted =
+          executor.submit(
+              () -> {
+                Thread.currentThread().interrupt();
+                try (HeldLock otherLock = locks.lock(PROJECT, CHANGE_ID, new PhaseTimings())) {
+                  assertThat(otherLock.isHeld()).isFalse();
+                }
+                return Thread.interrupted();
+              });
+      assertThat(interrupted.get(1, MINUTES)).isTrue();
+    }
+  }
+
+  private boolean lockInOtherThread(ChecksRefLocks locks) throws Exception {
+    return executor
+        .submit(
+            () -> {
+              try (HeldLock lock = locks.lock(PROJECT, CHANGE_ID, new PhaseTimings())) {
+                return lock.isHeld();
+              }
+            })
+        .get(1, MINUTES);
+  }
+}
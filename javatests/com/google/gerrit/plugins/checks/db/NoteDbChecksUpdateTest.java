@@ -0,0 +1,203 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.db;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
+
+import com.google.common.base.Strings;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.plugins.checks.api.CheckState;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.PhaseTimings;
+import com.google.gerrit.server.notedb.ChangeNoteJson;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.notes.NoteMap;
+import org.eclipse.jgit.revwalk.ObjectWalk;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NoteDbChecksUpdateTest {
+  // More notes than fit into a single level of the note tree, so that the notes are fanned out.
+  private static final int REVISIONS = 300;
+  private static final int MESSAGE_BLOB_THRESHOLD = 10;
+
+  private final ChangeNoteJson changeNoteJson = new ChangeNoteJson();
+  private final ChecksStorageMetrics metrics =
+      new ChecksStorageMetrics("checks", new DisabledMetricMaker());
+  private InMemoryRepository repo;
+
+  @Before
+  public void setUp() {
+    repo = new InMemoryRepository(new DfsRepositoryDescription("test"));
+  }
+
+  @After
+  public void tearDown() {
+    repo.close();
+  }
+
+  @Test
+  public void messagesTreeIsAddedNextToFannedOutNotes() throws Exception {
+    Map<ObjectId, NoteDbCheckMap> notesMap = createNotesMap();
+    RevCommit commit = write(notesMap, null);
+
+    List<String> rootEntries = new ArrayList<>();
+    try (TreeWalk tw = new TreeWalk(repo)) {
+      tw.addTree(commit.getTree());
+      while (tw.next()) {
+        rootEntries.add(tw.getNameString());
+      }
+    }
+    assertThat(rootEntries).contains("messages");
+    for (String name : rootEntries) {
+      if (!name.equals("messages")) {
+        // Fan-out directories are named after the first two hex digits of the notes they contain.
+        assertThat(name).matches("[0-9a-f]{2}");
+      }
+    }
+
+    assertThat(parseChecks(commit).keySet()).containsExactlyElementsIn(notesMap.keySet());
+    for (String messageBlob : messageBlobs(notesMap)) {
+      try (TreeWalk tw = TreeWalk.forPath(repo, "messages/" + messageBlob, commit.getTree())) {
+        assertThat(tw).isNotNull();
+      }
+    }
+  }
+
+  @Test
+  public void updateOfChecksRefWithMessagesTreeKeepsEarlierMessagesReachable() throws Exception {
+    Map<ObjectId, NoteDbCheckMap> notesMap = createNotesMap();
+    RevCommit firstCommit = write(notesMap, null);
+    Set<String> firstMessageBlobs = messageBlobs(notesMap);
+
+    // Update a check the way NoteDbChecksUpdate does, starting from the parsed notes of the
+    // existing checks commit, which already contains the messages tree.
+    Map<ObjectId, NoteDbCheckMap> newNotesMap = new HashMap<>();
+    for (Map.Entry<ObjectId, CheckRevisionNote> e : parseChecks(firstCommit).entrySet()) {
+      newNotesMap.put(e.getKey(), e.getValue().getOnlyEntity());
+    }
+    NoteDbCheck updatedCheck = newNotesMap.values().iterator().next().checks.get("test:checker");
+    String replacedMessageBlob = updatedCheck.messageBlob;
+    updatedCheck.messageBlob = null;
+    updatedCheck.message = Strings.repeat("y", 2 * MESSAGE_BLOB_THRESHOLD);
+    try (ObjectInserter ins = repo.newObjectInserter()) {
+      updatedCheck.storeLargeMessageSeparately(MESSAGE_BLOB_THRESHOLD, ins);
+      ins.flush();
+    }
+    RevCommit secondCommit = write(newNotesMap, firstCommit);
+
+    assertThat(parseChecks(secondCommit).keySet()).containsExactlyElementsIn(notesMap.keySet());
+    try (TreeWalk tw =
+        TreeWalk.forPath(repo, "messages/" + replacedMessageBlob, secondCommit.getTree())) {
+      assertThat(tw).isNull();
+    }
+    try (TreeWalk tw =
+        TreeWalk.forPath(repo, "messages/" + updatedCheck.messageBlob, secondCommit.getTree())) {
+      assertThat(tw).isNotNull();
+    }
+
+    Set<String> reachableObjects = new HashSet<>();
+    try (ObjectWalk ow = new ObjectWalk(repo)) {
+      ow.markStart(ow.parseCommit(secondCommit));
+      for (RevCommit c = ow.next(); c != null; c = ow.next()) {
+        reachableObjects.add(c.name());
+      }
+      for (RevObject o = ow.nextObject(); o != null; o = ow.nextObject()) {
+        reachableObjects.add(o.name());
+      }
+    }
+    assertThat(reachableObjects).containsAtLeastElementsIn(firstMessageBlobs);
+    assertThat(reachableObjects).contains(updatedCheck.messageBlob);
+  }
+
+  private Map<ObjectId, NoteDbCheckMap> createNotesMap() throws Exception {
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    Map<ObjectId, NoteDbCheckMap> result = new HashMap<>();
+    ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+    try (ObjectInserter ins = repo.newObjectInserter()) {
+      for (int ps = 1; ps <= REVISIONS; ps++) {
+        NoteDbCheck check = new NoteDbCheck();
+        check.state = CheckState.RUNNING;
+        check.message = Strings.repeat("x", MESSAGE_BLOB_THRESHOLD) + ps;
+        check.created = now;
+        check.updated = now;
+        check.storeLargeMessageSeparately(MESSAGE_BLOB_THRESHOLD, ins);
+        NoteDbCheckMap checks = NoteDbCheckMap.empty();
+        checks.checks.put("test:checker", check);
+        // Stands in for the commit of the patch set, which isn't needed for the test.
+        result.put(formatter.idFor(OBJ_BLOB, Integer.toString(ps).getBytes(UTF_8)), checks);
+      }
+      ins.flush();
+    }
+    return result;
+  }
+
+  private RevCommit write(Map<ObjectId, NoteDbCheckMap> notesMap, RevCommit parent)
+      throws Exception {
+    PersonIdent ident = new PersonIdent("Gerrit Code Review", "gerrit@example.com");
+    CommitBuilder cb = new CommitBuilder();
+    if (parent != null) {
+      cb.setParentId(parent);
+    }
+    cb.setAuthor(ident);
+    cb.setCommitter(ident);
+    cb.setMessage("Update checks");
+    try (ObjectInserter ins = repo.newObjectInserter();
+        RevWalk rw = new RevWalk(repo)) {
+      NoteDbChecksUpdate.writeNotesMap(
+          changeNoteJson, metrics, notesMap, cb, ins, new PhaseTimings());
+      ObjectId commitId = ins.insert(cb);
+      ins.flush();
+      return rw.parseCommit(commitId);
+    }
+  }
+
+  private Map<ObjectId, CheckRevisionNote> parseChecks(RevCommit commit) throws Exception {
+    try (ObjectReader reader = repo.newObjectReader()) {
+      return CheckRevisionNoteMap.parseChecks(changeNoteJson, reader, NoteMap.read(reader, commit))
+          .revisionNotes;
+    }
+  }
+
+  private static Set<String> messageBlobs(Map<ObjectId, NoteDbCheckMap> notesMap) {
+    Set<String> result = new HashSet<>();
+    for (NoteDbCheckMap checks : notesMap.values()) {
+      for (NoteDbCheck check : checks.checks.values()) {
+        assertThat(check.messageBlob).isNotNull();
+        result.add(check.messageBlob);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,60 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.db;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.Phase;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.PhaseTimer;
+import com.google.gerrit.plugins.checks.db.ChecksStorageMetrics.PhaseTimings;
+import org.junit.Test;
+
+public class PhaseTimingsTest {
+  @Test
+  public void phaseIsNotRecordedIfNotStarted() {
+    PhaseTimings timings = new PhaseTimings();
+    assertThat(timings.getNanos(Phase.READ)).isEqualTo(0);
+  }
+
+  @Test
+  public void timesOfRepeatedPhaseAreAdded() throws Exception {
+    PhaseTimings timings = new PhaseTimings();
+    try (PhaseTimer timer = timings.start(Phase.INSERT)) {
+      MILLISECONDS.sleep(5);
+    }
+    try (PhaseTimer timer = timings.start(Phase.INSERT)) {
+      MILLISECONDS.sleep(5);
+    }
+    assertThat(timings.getNanos(Phase.INSERT)).isAtLeast(MILLISECONDS.toNanos(10));
+  }
+
+  @Test
+  public void timeOfNestedPhaseIsOnlyCountedForInnerPhase() throws Exception {
+    PhaseTimings timings = new PhaseTimings();
+    long start = System.nanoTime();
+    try (PhaseTimer outer = timings.start(Phase.READ)) {
+      MILLISECONDS.sleep(5);
+      try (PhaseTimer inner = timings.start(Phase.PARSE)) {
+        MILLISECONDS.sleep(5);
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+
+    assertThat(timings.getNanos(Phase.READ)).isAtLeast(MILLISECONDS.toNanos(5));
+    assertThat(timings.getNanos(Phase.PARSE)).isAtLeast(MILLISECONDS.toNanos(5));
+    assertThat(timings.getNanos(Phase.READ) + timings.getNanos(Phase.PARSE)).isAtMost(elapsed);
+  }
+}
@@ -0,0 +1,111 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.plugins.checks.db;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.junit.Test;
+
+public class SortedNoteLinesTest {
+  @Test
+  public void parseSortedLines() {
+    SortedNoteLines lines = parse("a:1\nb:2\nc:3");
+    assertThat(lines.size()).isEqualTo(3);
+    assertThat(lines.get(0)).isEqualTo("a:1");
+    assertThat(lines.get(1)).isEqualTo("b:2");
+    assertThat(lines.get(2)).isEqualTo("c:3");
+  }
+
+  @Test
+  public void cannotParseUnsortedLines() {
+    assertThat(SortedNoteLines.tryParse(bytes("b:2\na:1")).isPresent()).isFalse();
+  }
+
+  @Test
+  public void cannotParseDuplicateLines() {
+    assertThat(SortedNoteLines.tryParse(bytes("a:1\na:1")).isPresent()).isFalse();
+  }
+
+  @Test
+  public void cannotParseTrailingNewline() {
+    assertThat(SortedNoteLines.tryParse(bytes("a:1\n")).isPresent()).isFalse();
+  }
+
+  @Test
+  public void cannotParseNonAsciiLines() {
+    assertThat(SortedNoteLines.tryParse(bytes("a:1\nä:2")).isPresent()).isFalse();
+  }
+
+  @Test
+  public void prefixSortsFirst() {
+    SortedNoteLines lines = parse("a:1\na:10");
+    assertThat(lines.indexOf(bytes("a:1"))).isEqualTo(0);
+    assertThat(lines.indexOf(bytes("a:10"))).isEqualTo(1);
+    assertThat(SortedNoteLines.tryParse(bytes("a:10\na:1")).isPresent()).isFalse();
+  }
+
+  @Test
+  public void indexOf() {
+    SortedNoteLines lines = parse("b:2\nd:4\nf:6");
+    assertThat(lines.indexOf(bytes("b:2"))).isEqualTo(0);
+    assertThat(lines.indexOf(bytes("d:4"))).isEqualTo(1);
+    assertThat(lines.indexOf(bytes("f:6"))).isEqualTo(2);
+    assertThat(lines.indexOf(bytes("a:1"))).isEqualTo(-1);
+    assertThat(lines.indexOf(bytes("c:3"))).isEqualTo(-2);
+    assertThat(lines.indexOf(bytes("e:5"))).isEqualTo(-3);
+    assertThat(lines.indexOf(bytes("g:7"))).isEqualTo(-4);
+  }
+
+  @Test
+  public void insert() {
+    SortedNoteLines lines = parse("b:2\nd:4");
+    assertThat(insert(lines, "a:1")).isEqualTo("a:1\nb:2\nd:4");
+    assertThat(insert(lines, "c:3")).isEqualTo("b:2\nc:3\nd:4");
+    assertThat(insert(lines, "e:5")).isEqualTo("b:2\nd:4\ne:5");
+  }
+
+  @Test
+  public void remove() {
+    SortedNoteLines lines = parse("a:1\nb:2\nc:3");
+    assertThat(remove(lines, 0)).isEqualTo("b:2\nc:3");
+    assertThat(remove(lines, 1)).isEqualTo("a:1\nc:3");
+    assertThat(remove(lines, 2)).isEqualTo("a:1\nb:2");
+  }
+
+  @Test
+  public void insertedLineIsSortedLikeParsedNote() {
+    SortedNoteLines lines = parse("b:2\nd:4");
+    byte[] inserted = lines.insert(-(lines.indexOf(bytes("c:3")) + 1), bytes("c:3"));
+    assertThat(String.join("\n", CheckersByRepositoryNotes.parseNote(inserted)))
+        .isEqualTo(new String(inserted, UTF_8));
+  }
+
+  private static SortedNoteLines parse(String note) {
+    return SortedNoteLines.tryParse(bytes(note)).get();
+  }
+
+  private static String insert(SortedNoteLines lines, String line) {
+    return new String(lines.insert(-(lines.indexOf(bytes(line)) + 1), bytes(line)), UTF_8);
+  }
+
+  private static String remove(SortedNoteLines lines, int index) {
+    return new String(lines.remove(index), UTF_8);
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(UTF_8);
+  }
+}
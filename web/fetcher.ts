@@ -39,6 +39,15 @@ function convertStatus(check: Check): RunStatus {
   return RunStatus.RUNNABLE;
 }
 
+interface ConvertedCheck {
+  check: Check;
+  run: CheckRun;
+}
+
+function isSameCheck(a: Check, b: Check) {
+  return a === b || JSON.stringify(a) === JSON.stringify(b);
+}
+
 export class ChecksFetcher implements ChecksProvider {
   private restApi: RestPluginApi;
 
@@ -46,15 +55,64 @@ export class ChecksFetcher implements ChecksProvider {
 
   private patchsetNumber?: number;
 
+  /** The last known checks of the current patchset by checker UUID. */
+  private checks?: Map<string, Check>;
+
+  /**
+   * Whether the checks are kept up to date by the check events stream, so
+   * that they don't need to be loaded from the server on the next fetch.
+   */
+  private upToDate = false;
+
+  /**
+   * The check updates that were received while the checks are being loaded.
+   * They may not be contained in the loaded checks yet, so they are applied
+   * once loading has finished.
+   */
+  private pendingUpdates?: Check[];
+
+  /** The runs that were converted from the checks, by checker UUID. */
+  private runs = new Map<string, ConvertedCheck>();
+
+  /** Stream of check updates for the current change, if connected. */
+  private events?: EventSource;
+
   constructor(private readonly plugin: PluginApi) {
     this.restApi = plugin.restApi();
   }
 
   async fetch(changeData: ChangeData) {
     const {changeNumber, patchsetNumber} = changeData;
+    if (changeNumber !== this.changeNumber) {
+      this.unsubscribe();
+    }
+    if (
+      changeNumber !== this.changeNumber ||
+      patchsetNumber !== this.patchsetNumber
+    ) {
+      this.checks = undefined;
+      this.upToDate = false;
+      this.runs = new Map();
+    }
     this.changeNumber = changeNumber;
     this.patchsetNumber = patchsetNumber;
-    const checks = await this.apiGet('?o=CHECKER');
+    if (!this.events) this.subscribe();
+
+    if (!this.checks || !this.upToDate) {
+      const updates: Check[] = [];
+      this.pendingUpdates = updates;
+      try {
+        await this.loadChecks();
+      } finally {
+        if (this.pendingUpdates === updates) this.pendingUpdates = undefined;
+      }
+      for (const check of updates) {
+        this.checks!.set(check.checker_uuid, check);
+      }
+      // Only rely on the stream if it's connected, otherwise updates may be
+      // missed.
+      this.upToDate = this.events?.readyState === EventSource.OPEN;
+    }
     return {
       responseCode: ResponseCode.OK,
       actions: [
@@ -67,10 +125,88 @@ export class ChecksFetcher implements ChecksProvider {
           },
         },
       ],
-      runs: checks.map(check => this.convert(check)),
+      runs: this.convertAll(this.checks!),
     };
   }
 
+  /**
+   * Loads the checks of the current patchset from the server. The server
+   * requires the response to be revalidated, so the browser sends the ETag of
+   * its cached response and the checks are only sent again if they changed.
+   */
+  async loadChecks() {
+    const checks = new Map<string, Check>();
+    for (const check of await this.apiGet('?o=CHECKER')) {
+      checks.set(check.checker_uuid, check);
+    }
+    this.checks = checks;
+  }
+
+  /**
+   * Converts the checks into runs. Runs of checks that didn't change since
+   * the last conversion are reused.
+   */
+  convertAll(checks: Map<string, Check>) {
+    const runs = new Map<string, ConvertedCheck>();
+    for (const [uuid, check] of checks) {
+      const converted = this.runs.get(uuid);
+      runs.set(
+        uuid,
+        converted && isSameCheck(converted.check, check)
+          ? converted
+          : {check, run: this.convert(check)}
+      );
+    }
+    this.runs = runs;
+    return [...runs.values()].map(converted => converted.run);
+  }
+
+  /**
+   * Subscribes to the updates of the checks of the current change. Updates
+   * are applied to the checks that were last loaded, so that subsequent fetches
+   * don't need to load all checks from the server again.
+   */
+  subscribe() {
+    const events = this.createEventSource(
+      this.plugin.url(`/checks.events/${this.changeNumber}`)
+    );
+    this.events = events;
+    events.addEventListener('open', () => {
+      // Updates may have been missed while the stream was not connected.
+      this.upToDate = false;
+      this.plugin.checks().announceUpdate();
+    });
+    events.addEventListener('check', e => {
+      const check: Check = JSON.parse((e as MessageEvent).data);
+      if (check.patch_set_id !== this.patchsetNumber) return;
+      if (this.pendingUpdates) {
+        this.pendingUpdates.push(check);
+        return;
+      }
+      if (!this.upToDate || !this.checks) return;
+      this.checks.set(check.checker_uuid, check);
+      this.plugin.checks().announceUpdate();
+    });
+    events.addEventListener('error', () => {
+      this.upToDate = false;
+      if (events.readyState === EventSource.CLOSED) {
+        // The server refused the stream, fall back to loading the checks on
+        // every fetch.
+        events.close();
+      }
+    });
+  }
+
+  unsubscribe() {
+    this.events?.close();
+    this.events = undefined;
+    this.upToDate = false;
+  }
+
+  createEventSource(url: string) {
+    return new EventSource(url);
+  }
+
   async apiGet(suffix: string) {
     return await this.restApi.get<Check[]>(
       `/changes/${this.changeNumber}/revisions/${this.patchsetNumber}/checks${suffix}`
@@ -56,16 +56,45 @@ const check3: Check = {
   url: 'http://my-test-url-3.com',
 };
 
+class FakeEventSource extends EventTarget {
+  readyState: number = EventSource.CONNECTING;
+
+  open() {
+    this.readyState = EventSource.OPEN;
+    this.dispatchEvent(new Event('open'));
+  }
+
+  send(check: Check) {
+    this.dispatchEvent(
+      new MessageEvent('check', {data: JSON.stringify(check)})
+    );
+  }
+
+  close() {
+    this.readyState = EventSource.CLOSED;
+  }
+}
+
 suite('ChecksFetcher tests', () => {
   let fetcher: ChecksFetcher;
-  let getChecksResolve: (value: Check[]) => void;
+  let getChecksStub: sinon.SinonStub;
   let postChecksStub: sinon.SinonStub<string[], unknown>;
+  let announceUpdateStub: sinon.SinonStub;
+  let eventSource: FakeEventSource;
+
+  const changeData = {
+    changeNumber: 123,
+    patchsetNumber: 3,
+    patchsetSha: 'my-test-sha',
+    repo: 'my-test-repo',
+    changeInfo: {} as ChangeInfo,
+  };
 
   setup(async () => {
-    const getChecksStub = sinon.stub();
-    getChecksStub.returns(new Promise(r => (getChecksResolve = r)));
     postChecksStub = sinon.stub<string[], unknown>();
     postChecksStub.returns(Promise.resolve({}));
+    announceUpdateStub = sinon.stub();
+    getChecksStub = sinon.stub();
 
     const fakePlugin = {
       restApi: () => {
@@ -74,22 +103,109 @@ suite('ChecksFetcher tests', () => {
           post: postChecksStub,
         };
       },
+      url: (path: string) => `/plugins/checks${path}`,
+      checks: () => {
+        return {announceUpdate: announceUpdateStub};
+      },
     } as unknown as PluginApi;
     fetcher = new ChecksFetcher(fakePlugin);
+    eventSource = new FakeEventSource();
+    sinon
+      .stub(fetcher, 'createEventSource')
+      .returns(eventSource as unknown as EventSource);
   });
 
   test('fetch', async () => {
-    getChecksResolve([check1, check2, check3]);
-    const response = await fetcher.fetch({
-      changeNumber: 123,
-      patchsetNumber: 3,
-      patchsetSha: 'my-test-sha',
-      repo: 'my-test-repo',
-      changeInfo: {} as ChangeInfo,
-    });
+    getChecksStub.resolves([check1, check2, check3]);
+    const response = await fetcher.fetch(changeData);
     assert.equal(response.responseCode, ResponseCode.OK);
     assert.equal(response.actions.length, 1);
     assert.equal(response.runs.length, 3);
+    assert.equal(
+      getChecksStub.lastCall.firstArg,
+      '/changes/123/revisions/3/checks?o=CHECKER'
+    );
+  });
+
+  test('fetch reuses runs if not modified', async () => {
+    getChecksStub.callsFake(() => Promise.resolve([{...check1}]));
+    const response1 = await fetcher.fetch(changeData);
+    const response2 = await fetcher.fetch(changeData);
+    assert.isTrue(getChecksStub.calledTwice);
+    assert.strictEqual(response2.runs[0], response1.runs[0]);
+  });
+
+  test('fetch only converts changed checks', async () => {
+    const updatedCheck2 = {...check2, state: 'SUCCESSFUL'};
+    getChecksStub.onFirstCall().resolves([check1, check2]);
+    getChecksStub.onSecondCall().resolves([check1, updatedCheck2]);
+    const response1 = await fetcher.fetch(changeData);
+    const response2 = await fetcher.fetch(changeData);
+    assert.strictEqual(response2.runs[0], response1.runs[0]);
+    assert.notStrictEqual(response2.runs[1], response1.runs[1]);
+    assert.equal(response2.runs[1].status, RunStatus.COMPLETED);
+  });
+
+  test('fetch loads checks of other patchset', async () => {
+    getChecksStub.resolves([check1]);
+    await fetcher.fetch(changeData);
+    await fetcher.fetch({...changeData, patchsetNumber: 4});
+    assert.equal(
+      getChecksStub.secondCall.firstArg,
+      '/changes/123/revisions/4/checks?o=CHECKER'
+    );
+  });
+
+  test('fetch applies check events', async () => {
+    getChecksStub.resolves([check1, check2]);
+    await fetcher.fetch(changeData);
+    eventSource.open();
+    assert.isTrue(announceUpdateStub.calledOnce);
+    await fetcher.fetch(changeData);
+    assert.isTrue(getChecksStub.calledTwice);
+
+    eventSource.send({...check2, patch_set_id: 3, state: 'SUCCESSFUL'});
+    eventSource.send({...check3, patch_set_id: 3});
+    eventSource.send({...check1, patch_set_id: 2, state: 'FAILED'});
+    assert.equal(announceUpdateStub.callCount, 3);
+
+    const response = await fetcher.fetch(changeData);
+    assert.isTrue(getChecksStub.calledTwice);
+    assert.deepEqual(
+      response.runs.map(run => run.status),
+      [RunStatus.COMPLETED, RunStatus.COMPLETED, RunStatus.COMPLETED]
+    );
+    assert.equal(response.runs.length, 3);
+    assert.isUndefined(response.runs[0].results);
+  });
+
+  test('fetch applies check events received while loading', async () => {
+    getChecksStub.onFirstCall().resolves([check2]);
+    let respond: (checks: Check[]) => void = () => {};
+    getChecksStub.onSecondCall().returns(
+      new Promise<Check[]>(resolve => {
+        respond = resolve;
+      })
+    );
+    await fetcher.fetch(changeData);
+    eventSource.open();
+
+    const loading = fetcher.fetch(changeData);
+    eventSource.send({...check2, patch_set_id: 3, state: 'SUCCESSFUL'});
+    respond([check2]);
+    const response1 = await loading;
+    assert.equal(response1.runs[0].status, RunStatus.COMPLETED);
+
+    const response2 = await fetcher.fetch(changeData);
+    assert.isTrue(getChecksStub.calledTwice);
+    assert.equal(response2.runs[0].status, RunStatus.COMPLETED);
+  });
+
+  test('fetch reloads checks if not connected', async () => {
+    getChecksStub.resolves([check1]);
+    await fetcher.fetch(changeData);
+    await fetcher.fetch(changeData);
+    assert.isTrue(getChecksStub.calledTwice);
   });
 
   test('convert check1', () => {
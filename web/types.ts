@@ -17,6 +17,7 @@
 
 /** `declare` is required for preventing property renaming. */
 export declare interface Check {
+  patch_set_id?: number;
   state: string;
   checker_name: string;
   checker_description: string;